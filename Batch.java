@@ -0,0 +1,213 @@
+package gameoflife;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+  Runs a simulation without any user interface, for regression and throughput runs on machines
+  without a display. Only the grid classes are touched, so AWT is never initialized.
+
+  java gameoflife.Batch [options]
+    --engine CLASSIC|BITS|HASHLIFE|SPARSE   grid implementation, BITS by default
+    --size COLSxROWS                        board size, 1024x1024 by default
+    --generations N                         generations to run, 1000 by default
+    --threads N                             threads stepping a BITS grid, 1 by default
+    --rule B.../S...                        Life-like rule, by default the one the pattern names
+                                            or B3/S23
+    --topology DEAD|TORUS|KLEIN_BOTTLE|MIRROR
+                                            what lies beyond the edges of a BITS or CLASSIC
+                                            board, DEAD by default
+    --pattern NAME|FILE                     one of the shapes of the GUI, a pattern file
+                                            (.rle, .lif, .life, .cells, .txt), a snapshot (.gols)
+                                            or soup (default)
+    --density D                             share of living cells in a soup, 0.33 by default
+    --seed N                                seed of the soup, 42 by default
+    --on-cycle continue|stop|fast-forward   what to do once the board repeats itself; by default
+                                            the remaining generations skip all whole periods
+    --output FILE                           writes the final board as a pattern file, or as a
+                                            snapshot if the name ends in .gols
+
+  Prints the time taken, the final population and a CRC32 of the visible board. CLASSIC and BITS
+  give the same checksum for the same start, and so do HASHLIFE and SPARSE; the latter two run on an
+  unbounded plane, so they differ from the former once the pattern reaches the edge.
+*/
+public class Batch {
+  private GridEngine engine = GridEngine.BITS;
+  private int cols = 1024, rows = 1024;
+  private long generations = 1000;
+  private int threads = 1;
+  private Rule rule = null;
+  private Topology topology = Topology.DEAD;
+  private String pattern = "soup";
+  private double density = 0.33;
+  private long seed = 42;
+  private File output = null;
+  private SimulationManager.CycleAction cycleAction = SimulationManager.CycleAction.FAST_FORWARD;
+
+  public static void main(String args[]) {
+    System.setProperty("java.awt.headless", "true");
+    Batch batch = new Batch();
+    try {
+      batch.parse(args);
+    } catch(IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println("Usage: java gameoflife.Batch [--engine CLASSIC|BITS|HASHLIFE|SPARSE] [--size COLSxROWS]"
+        + " [--generations N] [--threads N] [--rule B.../S...] [--topology DEAD|TORUS|KLEIN_BOTTLE|MIRROR] [--pattern NAME|FILE|soup] [--density D] [--seed N] [--on-cycle continue|stop|fast-forward] [--output FILE]");
+      System.exit(2);
+    }
+    try {
+      System.exit(batch.run());
+    } catch(IOException e) {
+      System.err.println(e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  private void parse(String args[]) {
+    for (int i = 0; i < args.length; i++) {
+      String option = args[i];
+      if(i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + option);
+      String value = args[++i];
+      try {
+        switch(option) {
+          case "--engine":
+            engine = GridEngine.valueOf(value.toUpperCase());
+            break;
+          case "--size":
+            int x = value.indexOf('x');
+            if(x < 0) throw new IllegalArgumentException("Size must look like COLSxROWS: " + value);
+            cols = Integer.parseInt(value.substring(0, x));
+            rows = Integer.parseInt(value.substring(x + 1));
+            break;
+          case "--generations":
+            generations = Long.parseLong(value);
+            break;
+          case "--threads":
+            threads = Integer.parseInt(value);
+            break;
+          case "--rule":
+            rule = Rule.parse(value);
+            break;
+          case "--topology":
+            topology = Topology.valueOf(value.toUpperCase().replace('-', '_'));
+            break;
+          case "--pattern":
+            pattern = value;
+            break;
+          case "--density":
+            density = Double.parseDouble(value);
+            break;
+          case "--seed":
+            seed = Long.parseLong(value);
+            break;
+          case "--on-cycle":
+            cycleAction = SimulationManager.CycleAction.valueOf(value.toUpperCase().replace('-', '_'));
+            break;
+          case "--output":
+            output = new File(value);
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown option " + option);
+        }
+      } catch(NumberFormatException e) {
+        throw new IllegalArgumentException("Not a number for " + option + ": " + value);
+      }
+    }
+    if(cols <= 0 || rows <= 0) throw new IllegalArgumentException("The board must have at least one cell");
+    if(generations < 0) throw new IllegalArgumentException("Cannot run a negative number of generations");
+    if(threads <= 0) throw new IllegalArgumentException("At least one thread is needed");
+    if(topology != Topology.DEAD && (engine == GridEngine.HASHLIFE || engine == GridEngine.SPARSE)) {
+      throw new IllegalArgumentException("The " + engine + " engine has no edges");
+    }
+  }
+
+  // runs the simulation and prints the results, returns the exit status
+  private int run() throws IOException {
+    Grid grid = engine.create(cols, rows);
+    if(grid instanceof BitGrid) ((BitGrid)grid).setParallelism(threads);
+    if(grid instanceof BoundedGrid) ((BoundedGrid)grid).setTopology(topology);
+    if(pattern.equalsIgnoreCase("soup")) {
+      Random random = new Random(seed);
+      for (int i = 0; i < rows; i++) {
+        for (int j = 0; j < cols; j++) {
+          if(random.nextDouble() < density) grid.setAlive(j, i, true);
+        }
+      }
+    } else if(pattern.endsWith(SnapshotFile.EXTENSION)) {
+      // the snapshot brings its own size and generation
+      SnapshotFile.read(new File(pattern), grid);
+    } else if(new File(pattern).isFile()) {
+      PatternIO.load(new File(pattern), grid);
+    } else {
+      String error = GoLGrid.shape(grid, pattern);
+      if(error != null) {
+        System.err.println(error + ": " + pattern);
+        return 2;
+      }
+    }
+    if(rule != null) {
+      try {
+        grid.setRule(rule);
+      } catch(IllegalArgumentException e) {
+        System.err.println(e.getMessage());
+        return 2;
+      }
+    }
+
+    long start = System.nanoTime();
+    long target = grid.getGenerations() + generations;
+    CycleDetector cycleDetector = new CycleDetector();
+    if(grid instanceof HashLifeGrid) {
+      ((HashLifeGrid)grid).advance(generations);
+    } else {
+      while(grid.getGenerations() < target) {
+        grid.next();
+        if(cycleAction == SimulationManager.CycleAction.CONTINUE || cycleDetector.observe(grid) == 0) continue;
+        if(cycleAction == SimulationManager.CycleAction.STOP) break;
+        // the board repeats, only the part of the last period is left to compute
+        for (long i = cycleDetector.stepsBetween(grid.getGenerations(), target); i > 0; i--) {
+          grid.next();
+        }
+        grid.setGenerations(target);
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+
+    long[] words = GridSnapshot.copyCells(grid);
+    long population = 0;
+    CRC32 checksum = new CRC32();
+    for (long word : words) {
+      population += Long.bitCount(word);
+      for (int shift = 0; shift < 64; shift += 8) {
+        checksum.update((int)(word >>> shift));
+      }
+    }
+
+    System.out.println("Engine: " + engine + (grid instanceof BitGrid ? ", " + threads + " threads" : ""));
+    System.out.println("Board: " + grid.getColumns() + "x" + grid.getRows() + ", pattern " + pattern);
+    System.out.println("Rule: " + grid.getRule() + (topology != Topology.DEAD ? ", " + topology : ""));
+    System.out.println("Generations: " + grid.getGenerations());
+    System.out.println("Time: " + (elapsed / 1000000) + " ms");
+    if(elapsed > 0) {
+      long done = grid.getGenerations() - (target - generations);
+      System.out.println("Generations per second: " + Math.round(done * 1e9 / elapsed));
+    }
+    if(cycleDetector.getPeriod() > 0) {
+      System.out.println("Period: " + cycleDetector.getPeriod() + " since generation " + cycleDetector.getCycleStart());
+    }
+    System.out.println("Population: " + population);
+    GridStatistics statistics = grid.getStatistics();
+    if(!statistics.isEmpty()) {
+      System.out.println("Bounding box: " + statistics.getMinColumn() + "," + statistics.getMinRow()
+        + " to " + statistics.getMaxColumn() + "," + statistics.getMaxRow());
+    }
+    System.out.println("Checksum: " + String.format("%08x", checksum.getValue()));
+    if(output != null && output.getName().endsWith(SnapshotFile.EXTENSION)) {
+      SnapshotFile.write(output, grid);
+    } else if(output != null) {
+      PatternIO.save(output, grid);
+    }
+    return 0;
+  }
+}
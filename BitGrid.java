@@ -0,0 +1,875 @@
+package gameoflife;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+  Grid implementation that packs the cells into long words, 64 cells per word.
+
+  Two buffers of that layout are kept: next() writes the new generation into the back buffer and
+  swaps the references, so stepping does not allocate anything once the grid is set up.
+
+  Layout: every row is stored with one ghost word on each side, and the board has one ghost
+  row above and below. Cell (col, row) lives in word (row + 1) * stride + 1 + col / 64, bit col % 64.
+  The ghost words are dead, so the kernel can read the 8 neighbours of any word without
+  bounds checks. Bits past the last column in the last word of a row are kept dead as well.
+  With another topology than DEAD the ghost cells around the board, and the bit just past the last
+  column, are filled in from the board before every generation and the extra bit cleared after it.
+
+  The board is also cut into tiles, one word (64 columns) wide and TILE_ROWS rows high, that
+  remember whether they changed in the last generation. A tile is only computed when it or one of
+  its neighbours changed; otherwise the back buffer already holds its cells from the generation
+  before, which are the same.
+*/
+public class BitGrid implements Grid, ChangeTracking, BoundedGrid {
+  private long[] cells;     // the current generation
+  private long[] nextCells; // back buffer the next generation is written to
+  private int col, row;
+  private int wordsPerRow; // number of words that hold actual cells
+  private int stride;      // wordsPerRow + the two ghost words
+  private long lastWordMask; // valid bits of the last word in a row
+  private long generations = 0;
+  private Rule rule = Rule.CONWAY;
+  private Topology topology = Topology.DEAD;
+
+  // change tracking per tile, tiles are numbered row by row
+  public static final int TILE_ROWS = 32;
+  private int tileRows;
+  private boolean[] tileChanged;     // changed in the last generation, or edited since
+  private boolean[] nextTileChanged; // filled in while computing the next generation
+  private int activeTiles = 0;       // tiles computed in the last generation
+  private Band[] whole;              // one band of all tile rows, for the single threaded step
+
+  // CycleDetector.hashWord summed up (XOR) over all words, kept up to date with every change
+  private long boardHash = 0;
+
+  /**
+    Living cells per tile, one array per tile row, and summed up per tile row, per tile column and
+    over the board; kept up to date while stepping and editing. The statistics get the arrays of the
+    tile rows themselves, so a row that is still shared with them is copied before it changes.
+  */
+  private int[][] tilePopulation;
+  private boolean[] tileRowShared;
+  private long[] rowPopulation;
+  private long[] columnPopulation;
+  private long population = 0;
+  // births and deaths of the last generation, counted by the kernel
+  private long births = 0, deaths = 0;
+
+  // parallel stepping, the pool is only there when more than one thread is asked for
+  private int parallelism = 1;
+  private ForkJoinPool pool;
+  private Band[] bands;     // built for the current number of rows, reused every step
+  private Step step;
+  // boards with fewer words than this are not worth splitting up
+  private static final int MIN_PARALLEL_WORDS = 1 << 12;
+
+  public BitGrid(int col, int row) {
+    allocate(col, row);
+  }
+
+  private void allocate(int col, int row) {
+    this.col = col;
+    this.row = row;
+    wordsPerRow = (col + 63) >>> 6;
+    stride = wordsPerRow + 2;
+    lastWordMask = (col & 63) == 0 ? -1L : (1L << (col & 63)) - 1;
+    // the buffers are kept as long as they are large enough, but not much larger, see resize
+    int length = (row + 2) * stride;
+    if(cells == null || cells.length < length || cells.length / 4 > length) {
+      cells = new long[length];
+      nextCells = new long[length];
+    }
+    tileRows = (row + TILE_ROWS - 1) / TILE_ROWS;
+    tileChanged = new boolean[tileRows * wordsPerRow];
+    nextTileChanged = new boolean[tileChanged.length];
+    Arrays.fill(tileChanged, true); // nothing is known about the back buffer yet
+    clearCounts();
+    whole = new Band[] { new Band(0, tileRows) };
+    bands = null;
+    boardHash = 0;
+  }
+
+  // fresh arrays for the counts, the old ones may be shared with statistics handed out
+  private void clearCounts() {
+    tilePopulation = new int[tileRows][wordsPerRow];
+    tileRowShared = new boolean[tileRows];
+    rowPopulation = new long[tileRows];
+    columnPopulation = new long[wordsPerRow];
+    population = 0;
+    births = deaths = 0;
+  }
+
+  // recomputes the board hash and the counts after the cells were replaced wholesale
+  private void rehash() {
+    long hash = 0;
+    // the cells did not come from a step
+    clearCounts();
+    for (int i = 0; i < row; i++) {
+      int[] tiles = tilePopulation[i / TILE_ROWS];
+      for (int w = 0; w < wordsPerRow; w++) {
+        long word = cells[(i + 1) * stride + 1 + w];
+        hash ^= CycleDetector.hashWord(i * wordsPerRow + w, word);
+        tiles[w] += Long.bitCount(word);
+      }
+    }
+    boardHash = hash;
+    for (int i = 0; i < tileRows; i++) {
+      for (int w = 0; w < wordsPerRow; w++) {
+        rowPopulation[i] += tilePopulation[i][w];
+        columnPopulation[w] += tilePopulation[i][w];
+      }
+      population += rowPopulation[i];
+    }
+  }
+
+  // the populations of a tile row, to be changed
+  private int[] ownTileRow(int tileRow) {
+    if(tileRowShared[tileRow]) {
+      tilePopulation[tileRow] = tilePopulation[tileRow].clone();
+      tileRowShared[tileRow] = false;
+    }
+    return tilePopulation[tileRow];
+  }
+
+  // counts a cell that was born or died by an edit
+  private void countEdit(int col, int row, int change) {
+    int tileRow = row / TILE_ROWS;
+    ownTileRow(tileRow)[col >>> 6] += change;
+    rowPopulation[tileRow] += change;
+    columnPopulation[col >>> 6] += change;
+    population += change;
+  }
+
+  private void markChanged(int col, int row) {
+    tileChanged[(row / TILE_ROWS) * wordsPerRow + (col >>> 6)] = true;
+  }
+
+  private boolean isAddressValid(int col, int row) {
+    return !(col < 0 || col >= this.col || row < 0 || row >= this.row);
+  }
+
+  // index of the word holding the given cell
+  private int wordIndex(int col, int row) {
+    return (row + 1) * stride + 1 + (col >>> 6);
+  }
+
+  public int getColumns() {
+    return col;
+  }
+
+  public int getRows() {
+    return row;
+  }
+
+  public long getGenerations() {
+    return generations;
+  }
+
+  public void setGenerations(long generations) {
+    this.generations = generations;
+  }
+
+  public boolean isAlive(int col, int row) {
+    if(!isAddressValid(col, row)) return false; // out of bound
+    return (cells[wordIndex(col, row)] & (1L << col)) != 0;
+  }
+
+  public void setAlive(int col, int row, boolean alive) {
+    if(!isAddressValid(col, row)) return;
+    int index = wordIndex(col, row);
+    long old = cells[index];
+    if(alive) {
+      cells[index] |= 1L << col;
+    } else {
+      cells[index] &= ~(1L << col);
+    }
+    if(cells[index] == old) return;
+    markChanged(col, row);
+    countEdit(col, row, alive ? 1 : -1);
+    int word = row * wordsPerRow + (col >>> 6);
+    boardHash ^= CycleDetector.hashWord(word, old) ^ CycleDetector.hashWord(word, cells[index]);
+  }
+
+  /**
+    Keeps the buffers if they are large enough. The rows are then moved to their new place in
+    the same array, first to last when they get shorter and last to first when they get longer,
+    so that no row is overwritten before it was moved; whatever is left of the old layout is
+    cleared after.
+  */
+  public void resize(int cols, int rows) {
+    long[] oldCells = cells;
+    int oldStride = stride;
+    int copyRows = Math.min(row, rows);
+    allocate(cols, rows);
+
+    int copyWords = Math.min(oldStride, stride) - 2;
+    if(cells != oldCells) {
+      for (int i = 1; i <= copyRows; i++) {
+        System.arraycopy(oldCells, i * oldStride + 1, cells, i * stride + 1, copyWords);
+      }
+    } else {
+      if(stride < oldStride) {
+        for (int i = 1; i <= copyRows; i++) {
+          System.arraycopy(cells, i * oldStride + 1, cells, i * stride + 1, copyWords);
+        }
+      } else if(stride > oldStride) {
+        for (int i = copyRows; i >= 1; i--) {
+          System.arraycopy(cells, i * oldStride + 1, cells, i * stride + 1, copyWords);
+        }
+      }
+      // the ghost words and everything that was not copied
+      Arrays.fill(cells, 0, stride + 1, 0L);
+      for (int i = 1; i <= copyRows; i++) {
+        Arrays.fill(cells, i * stride + 1 + copyWords, (i + 1) * stride + 1, 0L);
+      }
+      Arrays.fill(cells, (copyRows + 1) * stride + 1, (rows + 2) * stride, 0L);
+      Arrays.fill(nextCells, 0, (rows + 2) * stride, 0L);
+    }
+    for (int i = 1; i <= copyRows; i++) {
+      // the old row may be wider, so cut off whatever is beyond the new last column
+      cells[i * stride + wordsPerRow] &= lastWordMask;
+    }
+    rehash();
+  }
+
+  /**
+    Copies the cells into a dense array without ghost words, wordsPerRow = ceil(columns / 64) words per row.
+  */
+  public void copyTo(long[] words) {
+    for (int i = 0; i < row; i++) {
+      System.arraycopy(cells, (i + 1) * stride + 1, words, i * wordsPerRow, wordsPerRow);
+    }
+  }
+
+  // one word of the cells packed like in copyTo: the columns 64 * word up to 64 * word + 63 of the row
+  public long getWord(int row, int word) {
+    return cells[(row + 1) * stride + 1 + word];
+  }
+
+  /**
+    Copies the window of cols x rows cells at (col, row) of the plane into words packed like in
+    copyTo, ceil(cols / 64) words per row; cells off the board are dead. Unless the window starts
+    on a word of the board, every word of it is put together from two words of the board.
+  */
+  public void copyWindow(long col, long row, int cols, int rows, long[] words) {
+    int windowWords = (cols + 63) >>> 6;
+    long windowMask = (cols & 63) == 0 ? -1L : (1L << (cols & 63)) - 1;
+    Arrays.fill(words, 0, windowWords * rows, 0L);
+    int fromRow = (int)Math.max(0, Math.min(rows, -row));
+    int toRow = (int)Math.max(fromRow, Math.min(rows, this.row - row));
+    int shift = (int)(col & 63);
+    for (int i = fromRow; i < toRow; i++) {
+      int rowStart = (int)(row + i + 1) * stride + 1;
+      for (int k = 0; k < windowWords; k++) {
+        // the board word the window word starts in
+        long w = (col >> 6) + k;
+        if(w < -1 || w >= wordsPerRow) continue;
+        long word = w < 0 ? 0 : cells[rowStart + (int)w] >>> shift;
+        if(shift != 0 && w + 1 < wordsPerRow) word |= cells[rowStart + (int)w + 1] << (64 - shift);
+        words[i * windowWords + k] = k == windowWords - 1 ? word & windowMask : word;
+      }
+    }
+  }
+
+  /**
+    Same as copyTo(long[]), for the rows [fromRow, toRow) into a buffer, e.g. a mapped file.
+  */
+  public void copyTo(LongBuffer words, int fromRow, int toRow) {
+    for (int i = fromRow; i < toRow; i++) {
+      words.put(cells, (i + 1) * stride + 1, wordsPerRow);
+    }
+  }
+
+  /**
+    Replaces the rows [fromRow, toRow) with cells packed like in copyTo.
+  */
+  public void copyFrom(LongBuffer words, int fromRow, int toRow) {
+    for (int i = fromRow; i < toRow; i++) {
+      words.get(cells, (i + 1) * stride + 1, wordsPerRow);
+      cells[(i + 1) * stride + wordsPerRow] &= lastWordMask;
+    }
+    Arrays.fill(tileChanged, true);
+    rehash();
+  }
+
+  public Collection<Cell> getPopulation() {
+    ArrayList<Cell> collection = new ArrayList<Cell>();
+    for (int i = 0; i < row; i++) {
+      for (int j = 0; j < col; j++) {
+        if(isAlive(j, i)) {
+          Cell cell = new Cell();
+          cell.isAlive = true;
+          collection.add(cell);
+        }
+      }
+    }
+    return collection;
+  }
+
+  public void clear() {
+    Arrays.fill(cells, 0L);
+    Arrays.fill(tileChanged, true);
+    clearCounts();
+    generations = 0;
+    boardHash = 0;
+  }
+
+  /**
+    Any Life-like rule works with the tile skipping, B0 included: a tile whose neighbourhood did not
+    change gets the same cells again under any rule. Changing the rule wakes all tiles up.
+  */
+  public void setRule(Rule rule) {
+    if(rule.equals(this.rule)) return;
+    this.rule = rule;
+    Arrays.fill(tileChanged, true);
+  }
+
+  public Rule getRule() {
+    return rule;
+  }
+
+  /**
+    The tiles along the edges are computed every generation under a wrapping topology, as their
+    neighbours on the other side of the board are not tracked.
+  */
+  public void setTopology(Topology topology) {
+    if(topology == this.topology) return;
+    this.topology = topology;
+    // the halo of the old topology must not leak into the new one
+    clearHalo(cells);
+    clearHalo(nextCells);
+    Arrays.fill(tileChanged, true);
+  }
+
+  public Topology getTopology() {
+    return topology;
+  }
+
+  // the cell at (col, row) of the board, or at most one cell outside it in the halo
+  private void setHaloCell(int col, int row, boolean alive) {
+    // counted from the left ghost word, which holds column -1 in bit 63
+    int index = (row + 1) * stride + ((col + 64) >>> 6);
+    if(alive) {
+      cells[index] |= 1L << col;
+    } else {
+      cells[index] &= ~(1L << col);
+    }
+  }
+
+  /**
+    Fills the ghost cells around the board for the topology: column -1 and column col of every row
+    (the latter in the last word when it is not full), then the ghost rows from the finished rows.
+  */
+  private void fillHalo() {
+    if(topology == Topology.DEAD || col == 0 || row == 0) return;
+    for (int i = 0; i < row; i++) {
+      setHaloCell(-1, i, isAlive(topology.sourceColumn(-1, i, col, row), i));
+      setHaloCell(col, i, isAlive(topology.sourceColumn(col, i, col, row), i));
+    }
+    if(topology == Topology.KLEIN_BOTTLE) {
+      // the ghost rows are the rows on the other side, flipped
+      for (int i = -1; i <= row; i += row + 1) {
+        int sourceRow = topology.sourceRow(i, row);
+        for (int j = -1; j <= col; j++) {
+          int sourceCol = topology.sourceColumn(j, i, col, row);
+          setHaloCell(j, i, (cells[(sourceRow + 1) * stride + ((sourceCol + 64) >>> 6)] & (1L << sourceCol)) != 0);
+        }
+      }
+    } else {
+      // whole rows including their halo cells
+      System.arraycopy(cells, (topology.sourceRow(-1, row) + 1) * stride, cells, 0, stride);
+      System.arraycopy(cells, (topology.sourceRow(row, row) + 1) * stride, cells, (row + 1) * stride, stride);
+    }
+  }
+
+  // kills all ghost cells and the bits past the last column
+  private void clearHalo(long[] words) {
+    Arrays.fill(words, 0, stride, 0L);
+    Arrays.fill(words, (row + 1) * stride, (row + 2) * stride, 0L);
+    for (int i = 1; i <= row; i++) {
+      words[i * stride] = 0;
+      words[i * stride + wordsPerRow] &= lastWordMask;
+      words[i * stride + wordsPerRow + 1] = 0;
+    }
+  }
+
+  /**
+    Sets the number of threads used by next(). With more than one thread the board is cut
+    into horizontal bands that are computed on a fork/join pool; the result is the same as
+    computing it on a single thread.
+  */
+  public void setParallelism(int parallelism) {
+    if(parallelism < 1) parallelism = 1;
+    if(parallelism == this.parallelism) return;
+    if(pool != null) pool.shutdown();
+    pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    this.parallelism = parallelism;
+    bands = null;
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+    Computes the next generation 64 cells at a time.
+    The 8 neighbours of every bit are lined up by shifting the rows above, below and the row itself,
+    then summed with full adders into a 4 bit counter (s3 s2 s1 s0) that the rule is applied to.
+  */
+  public void next() {
+    fillHalo();
+    if(pool != null && row * wordsPerRow >= MIN_PARALLEL_WORDS) {
+      if(bands == null) splitBands();
+      step.reinitialize();
+      pool.invoke(step);
+      sumUp(bands);
+    } else {
+      whole[0].compute();
+      sumUp(whole);
+    }
+    // swap the buffers, the old generation becomes the back buffer for the next step
+    long[] previous = cells;
+    cells = nextCells;
+    nextCells = previous;
+    if(topology != Topology.DEAD && lastWordMask != -1L) {
+      // the back buffer keeps the cells of skipped tiles, so it must not keep the halo bit
+      for (int i = 1; i <= row; i++) {
+        nextCells[i * stride + wordsPerRow] &= lastWordMask;
+      }
+    }
+    boolean[] previousChanged = tileChanged;
+    tileChanged = nextTileChanged;
+    nextTileChanged = previousChanged;
+    generations++;
+  }
+
+  // adds up what the bands counted while computing the generation
+  private void sumUp(Band[] bands) {
+    int active = 0;
+    long hashChange = 0;
+    births = deaths = 0;
+    for (Band band : bands) {
+      active += band.active;
+      hashChange ^= band.hashChange;
+      births += band.births;
+      deaths += band.deaths;
+      for (int w = 0; w < wordsPerRow; w++) {
+        columnPopulation[w] += band.columnChange[w];
+        band.columnChange[w] = 0;
+      }
+    }
+    activeTiles = active;
+    boardHash ^= hashChange;
+    population += births - deaths;
+  }
+
+  // a tile has to be computed if it or any tile around it changed
+  private boolean isTileAwake(int tileRow, int tileCol) {
+    if(topology == Topology.TORUS || topology == Topology.KLEIN_BOTTLE) {
+      if(tileRow == 0 || tileRow == tileRows - 1 || tileCol == 0 || tileCol == wordsPerRow - 1) return true;
+    }
+    int fromRow = Math.max(0, tileRow - 1), toRow = Math.min(tileRows - 1, tileRow + 1);
+    int fromCol = Math.max(0, tileCol - 1), toCol = Math.min(wordsPerRow - 1, tileCol + 1);
+    for (int i = fromRow; i <= toRow; i++) {
+      for (int j = fromCol; j <= toCol; j++) {
+        if(tileChanged[i * wordsPerRow + j]) return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+    Computes the tile rows of the band in the next generation, and leaves the number of tiles computed,
+    the change of the board hash and the births and deaths in the band; the populations of its tile
+    rows are updated in place. The rows are walked left to right, the scratch arrays of the band (one
+    entry per tile column) hold which tiles of the current tile row are awake and what changed in them.
+  */
+  private void computeTiles(Band band) {
+    long[] cells = this.cells;
+    long[] nextCells = this.nextCells;
+    boolean[] awake = band.awake;
+    long[] difference = band.difference;
+    int[] change = band.change;
+    int fromTileRow = band.fromTileRow, toTileRow = band.toTileRow;
+    int lastCol = wordsPerRow - 1;
+    boolean conway = rule.isConway();
+    int birth = rule.getBirth(), survival = rule.getSurvival();
+    int active = 0;
+    long hashChange = 0;
+    long births = 0, deaths = 0;
+    for (int tileRow = fromTileRow; tileRow < toTileRow; tileRow++) {
+      int tileRowStart = tileRow * wordsPerRow;
+      int awakeTiles = 0;
+      for (int tileCol = 0; tileCol < wordsPerRow; tileCol++) {
+        awake[tileCol] = isTileAwake(tileRow, tileCol);
+        difference[tileCol] = 0;
+        if(awake[tileCol]) awakeTiles++;
+      }
+      active += awakeTiles;
+      if(awakeTiles > 0) {
+        // rows of the tile, counted in the ghost-padded layout
+        int firstRow = 1 + tileRow * TILE_ROWS;
+        int lastRow = Math.min(row, (tileRow + 1) * TILE_ROWS);
+        boolean allAwake = awakeTiles == wordsPerRow;
+        for (int i = firstRow; i <= lastRow; i++) {
+          int rowStart = i * stride + 1;
+          int wordStart = (i - 1) * wordsPerRow;
+          for (int tileCol = 0; tileCol < wordsPerRow; tileCol++) {
+            if(!allAwake && !awake[tileCol]) continue;
+            int index = rowStart + tileCol;
+            long next = conway ? nextWord(cells, index, stride) : nextWord(cells, index, stride, birth, survival);
+            long old = cells[index];
+            // the last word may have picked up cells past the last column, or hold the halo bit
+            if(tileCol == lastCol) {
+              next &= lastWordMask;
+              old &= lastWordMask;
+            }
+            nextCells[index] = next;
+            if(next == old) continue;
+            hashChange ^= CycleDetector.hashWord(wordStart + tileCol, old)
+              ^ CycleDetector.hashWord(wordStart + tileCol, next);
+            difference[tileCol] |= next ^ old;
+            int born = Long.bitCount(next & ~old), died = Long.bitCount(old & ~next);
+            births += born;
+            deaths += died;
+            change[tileCol] += born - died;
+          }
+        }
+      }
+      int[] tiles = null;
+      for (int tileCol = 0; tileCol < wordsPerRow; tileCol++) {
+        nextTileChanged[tileRowStart + tileCol] = difference[tileCol] != 0;
+        if(change[tileCol] == 0) continue;
+        // the tile rows belong to the band, so it may copy them
+        if(tiles == null) tiles = ownTileRow(tileRow);
+        tiles[tileCol] += change[tileCol];
+        rowPopulation[tileRow] += change[tileCol];
+        band.columnChange[tileCol] += change[tileCol];
+        change[tileCol] = 0;
+      }
+    }
+    band.active = active;
+    band.hashChange = hashChange;
+    band.births = births;
+    band.deaths = deaths;
+  }
+
+  /**
+    Number of tiles that were computed in the last generation.
+  */
+  public int getActiveTiles() {
+    return activeTiles;
+  }
+
+  /**
+    Number of tiles that were skipped in the last generation because nothing around them changed.
+  */
+  public int getSkippedTiles() {
+    return getTileCount() - activeTiles;
+  }
+
+  /**
+    Hash of the cells, the same as CycleDetector.hash() of them. It is updated with every changed
+    word while stepping, so reading it costs nothing.
+  */
+  public long getBoardHash() {
+    return boardHash;
+  }
+
+  /**
+    Everything is counted while stepping and editing. The bounding box comes from the populations
+    per tile row and tile column: only the rows of the outermost tile rows and the words of the
+    outermost tile columns are looked at. The populations of the tile rows are shared with the
+    statistics rather than copied.
+  */
+  public GridStatistics getStatistics() {
+    int minCol = 0, minRow = 0, maxCol = 0, maxRow = 0;
+    if(population > 0) {
+      int minTileRow = 0, maxTileRow = tileRows - 1, minTileCol = 0, maxTileCol = wordsPerRow - 1;
+      while(rowPopulation[minTileRow] == 0) minTileRow++;
+      while(rowPopulation[maxTileRow] == 0) maxTileRow--;
+      while(columnPopulation[minTileCol] == 0) minTileCol++;
+      while(columnPopulation[maxTileCol] == 0) maxTileCol--;
+      minRow = minTileRow * TILE_ROWS;
+      while(isRowEmpty(minRow)) minRow++;
+      maxRow = Math.min(row, (maxTileRow + 1) * TILE_ROWS) - 1;
+      while(isRowEmpty(maxRow)) maxRow--;
+      long west = 0, east = 0;
+      for (int i = minRow; i <= maxRow; i++) {
+        west |= cells[(i + 1) * stride + 1 + minTileCol];
+        east |= cells[(i + 1) * stride + 1 + maxTileCol];
+      }
+      minCol = (minTileCol << 6) + Long.numberOfTrailingZeros(west);
+      maxCol = (maxTileCol << 6) + 63 - Long.numberOfLeadingZeros(east);
+    }
+    Arrays.fill(tileRowShared, true);
+    return new GridStatistics(generations, population, births, deaths, minCol, minRow, maxCol, maxRow,
+      col, row, 64, TILE_ROWS, tilePopulation.clone());
+  }
+
+  private boolean isRowEmpty(int row) {
+    int rowStart = (row + 1) * stride + 1;
+    for (int w = 0; w < wordsPerRow; w++) {
+      if(cells[rowStart + w] != 0) return false;
+    }
+    return true;
+  }
+
+  /**
+    Blocks at least a word wide are made of whole tiles, whose populations are kept anyway, so the
+    cells are not looked at. Narrower blocks are counted in the word like the first steps of a
+    popcount, which leave the count of every 2, 4, ... bits in their place, skipping empty tiles.
+    The counts of the rows of a block are summed up in these fields before they are taken apart, as
+    long as the fields are wide enough. The window is aligned to the blocks, so no block reaches
+    into two words.
+  */
+  public void countBlocks(long col, long row, int level, int cols, int rows, int[] counts) {
+    Arrays.fill(counts, 0, cols * rows, 0);
+    if(level >= 6) {
+      countTiles(col, row, level, cols, rows, counts);
+      return;
+    }
+    // the part of the window that is on the board
+    int fromCol = (int)Math.min(this.col, Math.max(0, col));
+    int toCol = (int)Math.max(fromCol, Math.min(this.col, col + ((long)cols << level)));
+    int fromRow = (int)Math.min(this.row, Math.max(0, row));
+    int toRow = (int)Math.max(fromRow, Math.min(this.row, row + ((long)rows << level)));
+    if(fromCol == toCol) return;
+    int fromWord = fromCol >>> 6, toWord = (toCol - 1) >>> 6;
+    long firstMask = -1L << fromCol, lastMask = -1L >>> (63 - ((toCol - 1) & 63));
+    long[] sums = new long[toWord - fromWord + 1];
+    // the 2 and 4 bit fields of the smallest blocks would overflow with more than one row
+    int rowsPerSum = level >= 3 ? 1 << level : 1;
+    for (int i = fromRow; i < toRow; i++) {
+      int rowStart = (i + 1) * stride + 1;
+      int[] tiles = tilePopulation[i / TILE_ROWS];
+      for (int w = fromWord; w <= toWord; w++) {
+        if(tiles[w] == 0) continue;
+        long word = cells[rowStart + w];
+        if(w == fromWord) word &= firstMask;
+        if(w == toWord) word &= lastMask;
+        sums[w - fromWord] += level >= 6 ? Long.bitCount(word) : fold(word, level);
+      }
+      if(i + 1 == toRow || ((i + 1 - row) & (rowsPerSum - 1)) == 0) {
+        addBlocks(sums, (int)((i - row) >> level) * cols, col, level, fromCol, toCol, counts);
+      }
+    }
+  }
+
+  // blocks of whole tiles: the window starts on a multiple of 2^level >= 64 columns and rows
+  private void countTiles(long col, long row, int level, int cols, int rows, int[] counts) {
+    int fromTileCol = (int)Math.min(wordsPerRow, Math.max(0, col >> 6));
+    int toTileCol = (int)Math.max(fromTileCol, Math.min(wordsPerRow, (col + ((long)cols << level)) >> 6));
+    int fromTileRow = (int)Math.min(tileRows, Math.max(0, row / TILE_ROWS));
+    int toTileRow = (int)Math.max(fromTileRow, Math.min(tileRows, (row + ((long)rows << level)) / TILE_ROWS));
+    for (int i = fromTileRow; i < toTileRow; i++) {
+      if(rowPopulation[i] == 0) continue;
+      int[] tiles = tilePopulation[i];
+      int blockRow = (int)(((long)i * TILE_ROWS - row) >> level) * cols;
+      for (int j = fromTileCol; j < toTileCol; j++) {
+        if(tiles[j] != 0) counts[blockRow + (int)((((long)j << 6) - col) >> level)] += tiles[j];
+      }
+    }
+  }
+
+  // the counts of every 2^level bits of a word, in their place
+  private static long fold(long word, int level) {
+    if(level >= 1) word -= (word >>> 1) & 0x5555555555555555L;
+    if(level >= 2) word = (word & 0x3333333333333333L) + ((word >>> 2) & 0x3333333333333333L);
+    if(level >= 3) word = (word + (word >>> 4)) & 0x0f0f0f0f0f0f0f0fL;
+    if(level >= 4) word = (word + (word >>> 8)) & 0x00ff00ff00ff00ffL;
+    if(level >= 5) word = (word + (word >>> 16)) & 0x0000ffff0000ffffL;
+    return word;
+  }
+
+  // adds the summed up words of a row of blocks to the counts and clears them
+  private static void addBlocks(long[] sums, int blockRow, long col, int level, int fromCol, int toCol, int[] counts) {
+    int fromWord = fromCol >>> 6, toWord = (toCol - 1) >>> 6;
+    int blockWidth = 1 << level;
+    long fieldMask = level >= 6 ? -1L : (1L << blockWidth) - 1;
+    for (int w = fromWord; w <= toWord; w++) {
+      long sum = sums[w - fromWord];
+      if(sum == 0) continue;
+      sums[w - fromWord] = 0;
+      // the block of the first bit, left of the window if the word starts before it
+      int block = blockRow + (int)(((long)w * 64 - col) >> level);
+      if(level >= 6) {
+        counts[block] += (int)sum;
+        continue;
+      }
+      int from = w == fromWord ? fromCol & 63 : 0, to = w == toWord ? ((toCol - 1) & 63) + 1 : 64;
+      for (int b = from; b < to; b += blockWidth) {
+        counts[block + (b >> level)] += (int)((sum >>> b) & fieldMask);
+      }
+    }
+  }
+
+  public int getTileCount() {
+    return tileChanged.length;
+  }
+
+  public int getTileWidth() {
+    return 64;
+  }
+
+  public int getTileHeight() {
+    return TILE_ROWS;
+  }
+
+  public boolean isTileChanged(int tileCol, int tileRow) {
+    if(tileCol < 0 || tileCol >= wordsPerRow || tileRow < 0 || tileRow >= tileRows) return false;
+    return tileChanged[tileRow * wordsPerRow + tileCol];
+  }
+
+  // cut the board into about 4 bands per thread, so that uneven bands still balance out
+  private void splitBands() {
+    int numBands = Math.max(1, Math.min(parallelism * 4, tileRows));
+    bands = new Band[numBands];
+    for (int i = 0; i < numBands; i++) {
+      bands[i] = new Band((int)((long)tileRows * i / numBands), (int)((long)tileRows * (i + 1) / numBands));
+    }
+    step = new Step();
+  }
+
+  // a horizontal band of tile rows; the tasks are reinitialized and reused every generation
+  private class Band extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final int fromTileRow, toTileRow;
+    private final boolean[] awake = new boolean[wordsPerRow];
+    private final long[] difference = new long[wordsPerRow];
+    private final int[] change = new int[wordsPerRow];
+    // the change of the tile column populations, added up by sumUp()
+    private final long[] columnChange = new long[wordsPerRow];
+    private int active;
+    private long hashChange;
+    private long births, deaths;
+
+    Band(int fromTileRow, int toTileRow) {
+      this.fromTileRow = fromTileRow;
+      this.toTileRow = toTileRow;
+    }
+
+    @Override
+    protected void compute() {
+      computeTiles(this);
+    }
+  }
+
+  // one generation: all the bands at once
+  private class Step extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void compute() {
+      for (Band band : bands) {
+        band.reinitialize();
+      }
+      invokeAll(bands);
+    }
+  }
+
+  // the next state of the 64 cells held in cells[index] under Conway's rule
+  private static long nextWord(long[] cells, int index, int stride) {
+    int up = index - stride;
+    int down = index + stride;
+
+    long u = cells[up];
+    long uw = (u << 1) | (cells[up - 1] >>> 63);
+    long ue = (u >>> 1) | (cells[up + 1] << 63);
+
+    long c = cells[index];
+    long cw = (c << 1) | (cells[index - 1] >>> 63);
+    long ce = (c >>> 1) | (cells[index + 1] << 63);
+
+    long d = cells[down];
+    long dw = (d << 1) | (cells[down - 1] >>> 63);
+    long de = (d >>> 1) | (cells[down + 1] << 63);
+
+    // the three neighbours above, as a 2 bit number
+    long a0 = uw ^ u ^ ue;
+    long a1 = (uw & u) | (ue & (uw ^ u));
+    // the three neighbours below
+    long b0 = dw ^ d ^ de;
+    long b1 = (dw & d) | (de & (dw ^ d));
+    // the two neighbours on the side
+    long m0 = cw ^ ce;
+    long m1 = cw & ce;
+
+    // add the three 2 bit numbers
+    long s0 = a0 ^ b0 ^ m0;
+    long carry = (a0 & b0) | (m0 & (a0 ^ b0));
+    long t = a1 ^ b1 ^ m1;
+    long t2 = (a1 & b1) | (m1 & (a1 ^ b1));
+    long s1 = t ^ carry;
+    long t3 = t & carry;
+    long s2 = t2 ^ t3;
+    long s3 = t2 & t3;
+
+    // alive with exactly 3 neighbours, or exactly 2 neighbours and already alive
+    return s1 & ~s2 & ~s3 & (s0 | c);
+  }
+
+  /**
+    The same for any Life-like rule, birth and survival as in Rule. The counter is built the same way;
+    then the cells with each neighbour count the rule names are picked out of it. Kept apart from the
+    Conway kernel so that one stays small enough to be inlined.
+  */
+  private static long nextWord(long[] cells, int index, int stride, int birth, int survival) {
+    int up = index - stride;
+    int down = index + stride;
+
+    long u = cells[up];
+    long uw = (u << 1) | (cells[up - 1] >>> 63);
+    long ue = (u >>> 1) | (cells[up + 1] << 63);
+
+    long c = cells[index];
+    long cw = (c << 1) | (cells[index - 1] >>> 63);
+    long ce = (c >>> 1) | (cells[index + 1] << 63);
+
+    long d = cells[down];
+    long dw = (d << 1) | (cells[down - 1] >>> 63);
+    long de = (d >>> 1) | (cells[down + 1] << 63);
+
+    long a0 = uw ^ u ^ ue;
+    long a1 = (uw & u) | (ue & (uw ^ u));
+    long b0 = dw ^ d ^ de;
+    long b1 = (dw & d) | (de & (dw ^ d));
+    long m0 = cw ^ ce;
+    long m1 = cw & ce;
+
+    long s0 = a0 ^ b0 ^ m0;
+    long carry = (a0 & b0) | (m0 & (a0 ^ b0));
+    long t = a1 ^ b1 ^ m1;
+    long t2 = (a1 & b1) | (m1 & (a1 ^ b1));
+    long s1 = t ^ carry;
+    long t3 = t & carry;
+    long s2 = t2 ^ t3;
+    long s3 = t2 & t3;
+
+    long born = 0, survives = 0;
+    for (int count = 0, counts = birth | survival; counts != 0; count++, counts >>>= 1) {
+      if((counts & 1) == 0) continue;
+      long exactly = ((count & 1) != 0 ? s0 : ~s0) & ((count & 2) != 0 ? s1 : ~s1)
+        & ((count & 4) != 0 ? s2 : ~s2) & ((count & 8) != 0 ? s3 : ~s3);
+      if((birth & (1 << count)) != 0) born |= exactly;
+      if((survival & (1 << count)) != 0) survives |= exactly;
+    }
+    return (born & ~c) | (survives & c);
+  }
+
+  public String toString() {
+    StringBuilder rep = new StringBuilder((col + 1) * row);
+    for (int i = 0; i < row; i++) {
+      for (int j = 0; j < col; j++) {
+        rep.append(isAlive(j, i) ? 'X' : '.');
+      }
+      rep.append('\n'); // new line for a new row.
+    }
+    return rep.toString();
+  }
+}
@@ -0,0 +1,23 @@
+package gameoflife;
+
+/**
+ * Implemented by grids whose board has edges, so that what lies beyond them can be chosen.
+ * Unbounded grids have no edges and do not implement it.
+ */
+public interface BoundedGrid {
+
+    /**
+     * Sets what lies beyond the edges of the board from the next generation on.
+     *
+     * @param topology The topology, DEAD by default.
+     */
+    void setTopology(Topology topology);
+
+    /**
+     * Gets what lies beyond the edges of the board.
+     *
+     * @return The topology.
+     */
+    Topology getTopology();
+
+}
@@ -0,0 +1,319 @@
+package gameoflife;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+  Tally of the objects boards settle into, e.g. the soups of a SoupSearch.
+
+  A settled board is split into objects: the cells that are alive in any generation of one period
+  are grouped by touching neighbours, so that the phases of an oscillator and the track of a
+  spaceship stay together. Each object is then run on its own until it comes back to its shape, and
+  is named by its apgcode, as Catagolue names objects: xs<cells> for still lifes, xp<period> for
+  oscillators and xq<period> for spaceships, followed by the shortest extended Wechsler encoding of
+  its phases in all 8 orientations, e.g. xs4_33 for the block.
+
+  Objects that do not come back within MAX_PERIOD generations on their own, e.g. ones that only
+  live off a neighbour they touch in no generation, are counted as UNKNOWN.
+*/
+public class Census {
+  public static final int MAX_PERIOD = 64;
+  public static final String UNKNOWN = "zz_UNKNOWN";
+
+  private static final String DIGITS = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+  // common objects under Conway's rule
+  private static final HashMap<String, String> NAMES = new HashMap<String, String>() {{
+    put("xs4_33", "block");
+    put("xs6_696", "beehive");
+    put("xs7_2596", "loaf");
+    put("xs5_253", "boat");
+    put("xs6_356", "ship");
+    put("xs4_252", "tub");
+    put("xs8_6996", "pond");
+    put("xs6_25a4", "barge");
+    put("xs7_25ac", "long boat");
+    put("xp2_7", "blinker");
+    put("xp2_7e", "toad");
+    put("xp2_318c", "beacon");
+    put("xq4_153", "glider");
+  }};
+
+  private final Rule rule;
+  private final HashMap<String, Long> counts = new HashMap<String, Long>();
+  private long boards = 0;
+  private long objects = 0;
+
+  public Census(Rule rule) {
+    this.rule = rule;
+  }
+
+  public Rule getRule() {
+    return rule;
+  }
+
+  // counts the objects of a board that repeats itself
+  public void addBoard(Grid grid, long period) {
+    addBoard(survey(grid, period));
+  }
+
+  // counts the objects found by survey()
+  public void addBoard(List<String> codes) {
+    for (String code : codes) add(code, 1);
+    boards++;
+  }
+
+  /**
+    Finds the objects of a board that repeats itself, without counting them. The grid is run for one
+    more period on the way.
+
+    @param grid The board, run with the rule of the census.
+    @param period The period of the board, as found by a CycleDetector.
+    @return The apgcodes of the objects, UNKNOWN for those that could not be named.
+  */
+  public List<String> survey(Grid grid, long period) {
+    long[] phase = livingCells(grid);
+    LongHashSet alive = new LongHashSet(phase.length);
+    LongHashSet union = new LongHashSet(phase.length);
+    for (long key : phase) {
+      alive.add(key);
+      union.add(key);
+    }
+    for (long i = 1; i < period; i++) {
+      grid.next();
+      for (long key : livingCells(grid)) union.add(key);
+    }
+    grid.next(); // back to the phase that was looked at
+
+    // touching cells of the union belong to the same object
+    List<String> codes = new ArrayList<String>();
+    LongHashSet seen = new LongHashSet(union.size());
+    long[] stack = new long[16];
+    long[] cells = new long[16];
+    for (int slot = union.firstSlot(); slot >= 0; slot = union.nextSlot(slot)) {
+      if(!seen.add(union.keyAt(slot))) continue;
+      int size = 0, count = 0;
+      stack[size++] = union.keyAt(slot);
+      while(size > 0) {
+        long key = stack[--size];
+        if(alive.contains(key)) {
+          if(count == cells.length) cells = Arrays.copyOf(cells, 2 * count);
+          cells[count++] = key;
+        }
+        int col = SparseGrid.colOf(key), row = SparseGrid.rowOf(key);
+        for (int i = -1; i <= 1; i++) {
+          for (int j = -1; j <= 1; j++) {
+            long neighbour = SparseGrid.pack(col + j, row + i);
+            if(!union.contains(neighbour) || !seen.add(neighbour)) continue;
+            if(size == stack.length) stack = Arrays.copyOf(stack, 2 * size);
+            stack[size++] = neighbour;
+          }
+        }
+      }
+      if(count > 0) codes.add(classify(Arrays.copyOf(cells, count), rule));
+    }
+    return codes;
+  }
+
+  // counts a board that is not looked into, e.g. one that did not settle
+  public void addBoard() {
+    boards++;
+  }
+
+  private void add(String code, long count) {
+    Long current = counts.get(code);
+    counts.put(code, current == null ? count : current + count);
+    objects += count;
+  }
+
+  public void merge(Census other) {
+    for (String code : other.counts.keySet()) {
+      add(code, other.counts.get(code));
+    }
+    boards += other.boards;
+  }
+
+  public long getBoards() {
+    return boards;
+  }
+
+  public long getObjects() {
+    return objects;
+  }
+
+  public long getCount(String code) {
+    Long count = counts.get(code);
+    return count == null ? 0 : count;
+  }
+
+  // the apgcodes found, the most frequent first
+  public List<String> getCodes() {
+    List<String> codes = new ArrayList<String>(counts.keySet());
+    Collections.sort(codes, new Comparator<String>() {
+      public int compare(String a, String b) {
+        int byCount = Long.compare(counts.get(b), counts.get(a));
+        return byCount != 0 ? byCount : a.compareTo(b);
+      }
+    });
+    return codes;
+  }
+
+  // the common name of an object under Conway's rule, or null
+  public static String getName(String code) {
+    return NAMES.get(code);
+  }
+
+  // the living cells of a grid, packed like SparseGrid.pack(); bounded grids only have their board
+  static long[] livingCells(Grid grid) {
+    if(grid instanceof SparseGrid) return ((SparseGrid)grid).getCellKeys();
+    GridStatistics statistics = grid.getStatistics();
+    long[] keys = new long[(int)statistics.getPopulation()];
+    int count = 0;
+    if(statistics.isEmpty()) return keys;
+    for (long i = statistics.getMinRow(); i <= statistics.getMaxRow() && count < keys.length; i++) {
+      for (long j = statistics.getMinColumn(); j <= statistics.getMaxColumn(); j++) {
+        if(grid.isAlive((int)j, (int)i)) keys[count++] = SparseGrid.pack((int)j, (int)i);
+      }
+    }
+    return keys;
+  }
+
+  /**********************
+    Classification
+  */
+  /**
+    Runs an object on its own until it comes back to its shape.
+
+    @param cells The cells of one phase, packed like SparseGrid.pack().
+    @return The apgcode of the object, or UNKNOWN.
+  */
+  public static String classify(long[] cells, Rule rule) {
+    SparseGrid grid = new SparseGrid(0, 0);
+    grid.setRule(rule);
+    for (long key : cells) {
+      grid.setAlive(SparseGrid.colOf(key), SparseGrid.rowOf(key), true);
+    }
+    int[] origin = new int[2], offset = new int[2];
+    long[] start = normalize(cells, origin);
+    List<long[]> phases = new ArrayList<long[]>();
+    phases.add(start);
+    for (int generation = 1; generation <= MAX_PERIOD; generation++) {
+      grid.next();
+      long[] now = grid.getCellKeys();
+      // dies or grows without the rest of the board
+      if(now.length == 0 || now.length > 4 * cells.length + 16) break;
+      long[] shape = normalize(now, offset);
+      if(Arrays.equals(shape, start)) {
+        String prefix;
+        if(offset[0] != origin[0] || offset[1] != origin[1]) {
+          prefix = "xq" + generation;
+        } else {
+          prefix = generation == 1 ? "xs" + cells.length : "xp" + generation;
+        }
+        return prefix + "_" + encode(phases);
+      }
+      phases.add(shape);
+    }
+    return UNKNOWN;
+  }
+
+  // moves the cells to the top left corner, which is returned in offset, and sorts them
+  private static long[] normalize(long[] cells, int[] offset) {
+    int minCol = Integer.MAX_VALUE, minRow = Integer.MAX_VALUE;
+    for (long key : cells) {
+      minCol = Math.min(minCol, SparseGrid.colOf(key));
+      minRow = Math.min(minRow, SparseGrid.rowOf(key));
+    }
+    long[] shape = new long[cells.length];
+    for (int i = 0; i < cells.length; i++) {
+      shape[i] = SparseGrid.pack(SparseGrid.colOf(cells[i]) - minCol, SparseGrid.rowOf(cells[i]) - minRow);
+    }
+    Arrays.sort(shape);
+    offset[0] = minCol;
+    offset[1] = minRow;
+    return shape;
+  }
+
+  // the shortest encoding of all phases in all orientations, the first in alphabetical order of those
+  private static String encode(List<long[]> phases) {
+    String best = null;
+    for (long[] phase : phases) {
+      for (int orientation = 0; orientation < 8; orientation++) {
+        String code = wechsler(phase, orientation);
+        if(best == null || code.length() < best.length()
+          || (code.length() == best.length() && code.compareTo(best) < 0)) {
+          best = code;
+        }
+      }
+    }
+    return best;
+  }
+
+  /**
+    Extended Wechsler format: the rows are cut into strips of 5, which are separated by z. Each
+    column of a strip is a digit of base 32 with the top row as the lowest bit. Trailing zeros of a
+    strip are dropped, and runs of zeros are shortened: w for 2, x for 3, y and a digit for 4 to 39.
+  */
+  private static String wechsler(long[] cells, int orientation) {
+    int n = cells.length;
+    int[] xs = new int[n], ys = new int[n];
+    int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+    for (int i = 0; i < n; i++) {
+      int x = SparseGrid.colOf(cells[i]), y = SparseGrid.rowOf(cells[i]);
+      // bit 2 swaps the axes, bits 0 and 1 mirror them
+      if((orientation & 4) != 0) {
+        int swap = x;
+        x = y;
+        y = swap;
+      }
+      if((orientation & 1) != 0) x = -x;
+      if((orientation & 2) != 0) y = -y;
+      xs[i] = x;
+      ys[i] = y;
+      minX = Math.min(minX, x);
+      minY = Math.min(minY, y);
+      maxX = Math.max(maxX, x);
+      maxY = Math.max(maxY, y);
+    }
+    int width = maxX - minX + 1, strips = (maxY - minY) / 5 + 1;
+    int[] columns = new int[strips * width];
+    for (int i = 0; i < n; i++) {
+      int y = ys[i] - minY;
+      columns[(y / 5) * width + xs[i] - minX] |= 1 << (y % 5);
+    }
+    StringBuilder code = new StringBuilder();
+    for (int strip = 0; strip < strips; strip++) {
+      if(strip > 0) code.append('z');
+      int end = width;
+      while(end > 0 && columns[strip * width + end - 1] == 0) end--;
+      int zeros = 0;
+      for (int j = 0; j < end; j++) {
+        int column = columns[strip * width + j];
+        if(column == 0) {
+          zeros++;
+          continue;
+        }
+        appendZeros(code, zeros);
+        zeros = 0;
+        code.append(DIGITS.charAt(column));
+      }
+    }
+    return code.toString();
+  }
+
+  private static void appendZeros(StringBuilder code, int zeros) {
+    for (; zeros >= 40; zeros -= 39) code.append("yz");
+    if(zeros == 1) {
+      code.append('0');
+    } else if(zeros == 2) {
+      code.append('w');
+    } else if(zeros == 3) {
+      code.append('x');
+    } else if(zeros >= 4) {
+      code.append('y').append(DIGITS.charAt(zeros - 4));
+    }
+  }
+}
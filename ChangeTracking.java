@@ -0,0 +1,33 @@
+package gameoflife;
+
+/**
+ * Implemented by grids that know which parts of the board changed in the last generation,
+ * so that views only need to redraw those parts.
+ * The board is divided into tiles of getTileWidth() x getTileHeight() cells, numbered from the top left.
+ */
+public interface ChangeTracking {
+
+    /**
+     * Gets the width of a tile.
+     *
+     * @return Number of columns per tile.
+     */
+    int getTileWidth();
+
+    /**
+     * Gets the height of a tile.
+     *
+     * @return Number of rows per tile.
+     */
+    int getTileHeight();
+
+    /**
+     * Whether any cell of a tile changed in the last generation, or was set since.
+     *
+     * @param tileCol x-position of the tile.
+     * @param tileRow y-position of the tile.
+     * @return Changed or not.
+     */
+    boolean isTileChanged(int tileCol, int tileRow);
+
+}
@@ -1,5 +1,6 @@
 package gameoflife;
 import java.awt.*;
+import java.io.File;
 import java.util.HashMap;
 import javax.swing.*;
 
@@ -9,6 +10,17 @@ public class Configuration {
     SMALL, MEDIUM, LARGE
   }
 
+  // as many cells as fit into the window, or a fixed board the canvas zooms and pans over;
+  // SNAPSHOT is the size of the last snapshot restored, if it is none of the others
+  enum BoardSize {
+    WINDOW, SMALL, MEDIUM, LARGE, SNAPSHOT
+  }
+
+  // how the grid is drawn: a button per cell, or everything on one canvas
+  enum RenderMode {
+    BUTTONS, CANVAS
+  }
+
 
   public static final HashMap<Configuration.CellSize, Dimension> cellSizeDict = new HashMap<Configuration.CellSize, Dimension>() {{
     put(Configuration.CellSize.SMALL, new Dimension(15, 15));
@@ -16,18 +28,61 @@ public class Configuration {
     put(Configuration.CellSize.LARGE, new Dimension(35, 35));
   }};
 
+  public static final HashMap<Configuration.BoardSize, Dimension> boardSizeDict = new HashMap<Configuration.BoardSize, Dimension>() {{
+    put(Configuration.BoardSize.SMALL, new Dimension(1024, 1024));
+    put(Configuration.BoardSize.MEDIUM, new Dimension(4096, 4096));
+    put(Configuration.BoardSize.LARGE, new Dimension(16384, 16384));
+  }};
+
+  // the classic grid keeps an object per cell, larger boards do not fit into memory
+  public static final int MAX_CLASSIC_BOARD = 4096;
+
   public static int CELL_BORDER_WIDTH = 1;
   public static Color COLOR_CELL_ALIVE = new Color(255, 255, 0);
   public static Color COLOR_CELL_DEAD = new Color(128, 128, 128);
+  public static Color COLOR_CELL_BORDER = new Color(238, 238, 238);
+
+  // how often the view picks up the latest generation
+  public static final int FRAMES_PER_SECOND = 60;
+
+  // the board is resized once the window was left alone for this many milliseconds
+  public static final int RESIZE_DELAY = 150;
+
+  // jumps beyond this many generations are only allowed with HashLife
+  public static final long MAX_STEPPED_JUMP = 10000;
+
+  // whether generations are recorded for stepping back, the History check box
+  public static boolean RECORD_HISTORY = true;
+  // memory the recorded history may take, older generations are dropped beyond it
+  public static final long HISTORY_MEMORY = 64L << 20;
+  // if set, older generations are moved to this file instead of being dropped, see Shell --history-spill
+  public static File HISTORY_SPILL_FILE = null;
 
   // values that are supposed to be changed
   public static CellSize CELL_SIZE = Configuration.CellSize.SMALL;
+  public static BoardSize BOARD_SIZE = Configuration.BoardSize.WINDOW;
+  public static RenderMode RENDER_MODE = Configuration.RenderMode.CANVAS;
 
   // inferencing methods
   public static Dimension cellDimension() {
     return cellSizeDict.get(CELL_SIZE);
   }
 
+  // the size of the board, null if it follows the window
+  public static Dimension boardDimension() {
+    return boardSizeDict.get(BOARD_SIZE);
+  }
+
+  // the board size for a board of the given size, SNAPSHOT (taking the size) if no other fits
+  public static BoardSize boardSizeFor(int col, int row) {
+    for (BoardSize boardSize : BoardSize.values()) {
+      Dimension dimension = boardSizeDict.get(boardSize);
+      if(boardSize != BoardSize.SNAPSHOT && dimension != null && dimension.width == col && dimension.height == row) return boardSize;
+    }
+    boardSizeDict.put(BoardSize.SNAPSHOT, new Dimension(col, row));
+    return BoardSize.SNAPSHOT;
+  }
+
   public static Color getCellColor(boolean isAlive) {
     return isAlive?COLOR_CELL_ALIVE:COLOR_CELL_DEAD;
   }
@@ -37,14 +92,33 @@ public class Configuration {
   */
   public static SpinnerNumberModel speedSpinnerModel() {
     return new SpinnerNumberModel(
-      60, 1, 60 * 4, 1
+      60, 1, 60 * 1000, 1
+    );
+  }
+
+  /**
+    Get the spinner model for the number of generations to jump ahead.
+  */
+  public static SpinnerNumberModel jumpSpinnerModel() {
+    return new SpinnerNumberModel(
+      Long.valueOf(1000), Long.valueOf(1), Long.valueOf(Long.MAX_VALUE), Long.valueOf(1)
+    );
+  }
+
+  /**
+    Get the spinner model for the number of threads computing a generation.
+  */
+  public static SpinnerNumberModel parallelismSpinnerModel() {
+    return new SpinnerNumberModel(
+      1, 1, Runtime.getRuntime().availableProcessors(), 1
     );
   }
 
+  // ticks per minute to nanoseconds between two ticks
   public static long convertSpeedValueToLongInterval(double value) {
     // number of ticks per second?
     double numTicksPerSecond = value / 60;
-    return Math.round(1000 / numTicksPerSecond);
+    return Math.round(1e9 / numTicksPerSecond);
   }
 
   public static long getDefaultSpeedInterval() {
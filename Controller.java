@@ -1,11 +1,16 @@
 // bridge between the GUI and the model (GoLGrid)
 package gameoflife;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Set;
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.stream.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.*;
 import javax.swing.event.*;
@@ -14,16 +19,51 @@ import java.awt.event.*;
 
 public class Controller {
   // model classes
-  private GoLGrid grid;
+  private Grid grid;
+  private GridEngine engine = GridEngine.BITS;
+  // kept here as well, the unbounded engines have no edges to apply it to
+  private Topology topology = Topology.DEAD;
   private SimulationManager simulationManager;
   private GridDragManager gridDragManager;
+  // notices when the board starts repeating itself
+  private final CycleDetector cycleDetector = new CycleDetector();
+  // cell edits from the view, applied by whoever owns the grid between two generations
+  private final EditQueue edits = new EditQueue();
+  // earlier generations, for stepping back
+  private final GenerationRecorder recorder =
+    new GenerationRecorder(Configuration.HISTORY_MEMORY, Configuration.HISTORY_SPILL_FILE);
+  // cells were edited since the last generation was recorded, so it cannot be recorded as a plain step
+  private boolean editedSinceRecord = false;
   // reference to the View
   private GUI gui;
 
+  // hand-over of generations to the render loop, which takes at most one per frame
+  private final AtomicReference<GridSnapshot> latestSnapshot = new AtomicReference<GridSnapshot>();
+  private final AtomicBoolean snapshotRequested = new AtomicBoolean(true);
+  private final AtomicLong snapshotSequence = new AtomicLong();
+  // the last snapshot published, which the render loop may already have taken
+  private volatile GridSnapshot publishedSnapshot;
+  // the part of the plane the canvas shows, null if the snapshots hold the whole board
+  private volatile Viewport viewport;
+  private final AtomicBoolean viewportChanged = new AtomicBoolean(false);
+  // the size the grid is to be resized to, handed over like the edits, null if it is up to date
+  private final AtomicReference<Dimension> pendingSize = new AtomicReference<Dimension>();
+  // tiles changed since the last snapshot published by next(), only touched by the stepping thread
+  private boolean[] changedSinceSnapshot;
+  private long lastSteppedSnapshot = -1;
+  // dragging the window edge fires a resize per pixel, the board follows once it comes to rest
+  private final Timer resizeTimer;
+
   // configuration object
   public Controller() {
     simulationManager = new SimulationManager(this);
     gridDragManager = new GridDragManager(this);
+    resizeTimer = new Timer(Configuration.RESIZE_DELAY, new ActionListener() {
+        public void actionPerformed(ActionEvent e) {
+          refreshGridDimension();
+        }
+    });
+    resizeTimer.setRepeats(false);
   }
 
   public void setGUI(GUI gui) {
@@ -31,13 +71,65 @@ public class Controller {
     refreshGridDimension();
   }
 
+  /**
+    Threads: the grid is only changed between two generations. Generations are computed under the
+    lock of the controller, and so is everything that replaces or reads the whole grid from the
+    outside. Cell edits, resizing and a new viewport do not take the lock, they are handed over to
+    the simulation thread, which makes them before its next generation, or made by the event thread
+    while the simulation is stopped. The view itself only reads the snapshots handed over to it.
+  */
   // methods for GUI
-  public boolean isAlive(int col, int row) {
-    return grid.isAlive(col, row);
+  public void setAlive(int col, int row, boolean alive) {
+    submitEdits(new long[] { SparseGrid.pack(col, row) }, 1, alive);
   }
 
-  public void setAlive(int col, int row, boolean alive) {
-    grid.setAlive(col, row, alive);
+  // queues cells to be set, packed like SparseGrid.pack(); the array must not be changed afterwards
+  public void submitEdits(long[] cells, int count, boolean alive) {
+    edits.add(cells, count, alive);
+  }
+
+  // applies the queued edits, returns whether any cell changed
+  private synchronized boolean applyEdits() {
+    boolean changed = false;
+    for (EditQueue.Batch batch = edits.takeAll(); batch != null; batch = batch.getNext()) {
+      for (int i = 0; i < batch.getCount(); i++) {
+        int col = SparseGrid.colOf(batch.getCell(i)), row = SparseGrid.rowOf(batch.getCell(i));
+        if(!isOnBoard(col, row) || grid.isAlive(col, row) == batch.isAlive()) continue;
+        grid.setAlive(col, row, batch.isAlive());
+        markEdited(col, row);
+        changed = true;
+      }
+    }
+    if(changed) {
+      cycleDetector.reset();
+      editedSinceRecord = true;
+    }
+    return changed;
+  }
+
+  /**
+    The grid only reports the tiles that changed in its last step, and the step after the edits may
+    leave an edited tile as it is; so the tile is marked for the next snapshot right away.
+  */
+  private void markEdited(int col, int row) {
+    if(changedSinceSnapshot == null || !(grid instanceof ChangeTracking)) return;
+    ChangeTracking tracking = (ChangeTracking)grid;
+    int tileCols = (grid.getColumns() + tracking.getTileWidth() - 1) / tracking.getTileWidth();
+    int tileRows = (grid.getRows() + tracking.getTileHeight() - 1) / tracking.getTileHeight();
+    // tiles of another board size, the next snapshot comes without hints anyway
+    if(changedSinceSnapshot.length != tileCols * tileRows) return;
+    changedSinceSnapshot[(row / tracking.getTileHeight()) * tileCols + col / tracking.getTileWidth()] = true;
+  }
+
+  // whether a cell can be edited, the unbounded grids have no edges
+  public boolean isOnBoard(int col, int row) {
+    if(!(grid instanceof BoundedGrid)) return true;
+    return col >= 0 && col < grid.getColumns() && row >= 0 && row < grid.getRows();
+  }
+
+  // the period the board repeats with, 0 if it does not (yet)
+  public long getPeriod() {
+    return cycleDetector.getPeriod();
   }
 
   // listeners
@@ -45,7 +137,7 @@ public class Controller {
     return new ComponentListener() {
 
         public void componentResized(ComponentEvent e) {
-          refreshGridDimension();
+          resizeTimer.restart();
         }
 
         public void componentHidden(ComponentEvent e) {}
@@ -56,59 +148,279 @@ public class Controller {
     };
   }
 
+  // fits the board to the window or the board size, the view follows right away and the grid soon
   public void refreshGridDimension() {
     Dimension dim = gui.getGolGridDimension();
     resizeCellWithDiemension(dim);
+    handOver();
+  }
+
+  // leaves the board changes to the simulation thread while it runs, or makes them right away
+  private void handOver() {
+    if(simulationManager.isSimulationRunning.get()) {
+      simulationManager.wake();
+    } else {
+      applyBoardChanges();
+    }
   }
 
-  public MouseAdapter cellClickListener(int col, int row, CellButton cellButton) {
-    return new MouseAdapter() {
-      // helper for invoking listeners from the parent
-      // public void propagateEvent(MouseEvent e) {
-      //   // dispatch events to higher level
-      //   Component component = (Component)e.getSource();
-      //   component.getParent().dispatchEvent(e);
-      // }
+  /**
+    Resizes the grid and publishes the viewport, if they were asked for. Called by the simulation
+    thread between two generations, and by the event thread while the simulation is stopped.
+  */
+  void applyBoardChanges() {
+    if(pendingSize.get() == null && !viewportChanged.get()) return;
+    synchronized(this) {
+      Dimension size = pendingSize.getAndSet(null);
+      if(size != null) {
+        grid.resize(size.width, size.height);
+        // the grid was changed from the outside, history goes on from here
+        record(false);
+        cycleDetector.reset();
+      }
+      if(viewportChanged.getAndSet(false) || size != null) publishSnapshot();
+    }
+  }
 
-      @Override
-      public void mouseClicked(MouseEvent e) {
-        boolean isCurrentlyAlive = grid.isAlive(col, row);
-        grid.setAlive(col, row, !isCurrentlyAlive);
-        // change the color
-        Color color = Configuration.getCellColor(!isCurrentlyAlive);
+  // trigger the next from the model, and set everything for the UI;
+  // the view may take a snapshot in between generations, but not in the middle of one
+  public synchronized void next() {
+    applyBoardChanges();
+    applyEdits();
+    if(grid instanceof BitGrid) {
+      // switch the stepping mode here, so that it never changes in the middle of a generation
+      ((BitGrid)grid).setParallelism(simulationManager.getParallelism());
+    }
+    if(cycleDetector.getPeriod() == 1 && simulationManager.getCycleAction() == SimulationManager.CycleAction.FAST_FORWARD) {
+      // a still board, counting the generations is all that is left to do
+      grid.setGenerations(grid.getGenerations() + 1);
+    } else {
+      grid.next(); // trigger groundtruth on model side
+    }
+    record(true);
+    collectChanges();
+    cycleDetector.observe(grid);
+
+    // the view only gets a copy when it asked for one, every other generation is skipped
+    if(snapshotRequested.compareAndSet(true, false)) {
+      publishSteppedSnapshot();
+    }
+  }
+
+  // keeps the current generation for stepping back, unless the history is switched off
+  private void record(boolean stepped) {
+    if(!Configuration.RECORD_HISTORY) return;
+    if(stepped && !editedSinceRecord) {
+      recorder.recordStep(grid);
+    } else {
+      recorder.record(grid);
+    }
+    editedSinceRecord = false;
+  }
 
-        cellButton.setColor(color);
+  // remember which tiles changed, so that the view can compare just those against what it shows
+  private void collectChanges() {
+    if(!(grid instanceof ChangeTracking)) {
+      changedSinceSnapshot = null;
+      return;
+    }
+    ChangeTracking tracking = (ChangeTracking)grid;
+    int tileCols = (grid.getColumns() + tracking.getTileWidth() - 1) / tracking.getTileWidth();
+    int tileRows = (grid.getRows() + tracking.getTileHeight() - 1) / tracking.getTileHeight();
+    if(changedSinceSnapshot == null || changedSinceSnapshot.length != tileCols * tileRows) {
+      changedSinceSnapshot = new boolean[tileCols * tileRows];
+      lastSteppedSnapshot = -1; // nothing to compare against
+    }
+    for (int i = 0; i < tileRows; i++) {
+      for (int j = 0; j < tileCols; j++) {
+        if(tracking.isTileChanged(j, i)) changedSinceSnapshot[i * tileCols + j] = true;
       }
+    }
+  }
+
+  private void publishSteppedSnapshot() {
+    long sequence = snapshotSequence.incrementAndGet();
+    GridSnapshot snapshot;
+    if(changedSinceSnapshot != null && lastSteppedSnapshot >= 0) {
+      ChangeTracking tracking = (ChangeTracking)grid;
+      snapshot = GridSnapshot.of(grid, sequence, viewport, changedSinceSnapshot.clone(),
+        tracking.getTileWidth(), tracking.getTileHeight(), lastSteppedSnapshot);
+    } else {
+      snapshot = GridSnapshot.of(grid, sequence, viewport, null, 0, 0, -1);
+    }
+    if(changedSinceSnapshot != null) Arrays.fill(changedSinceSnapshot, false);
+    lastSteppedSnapshot = sequence;
+    publish(snapshot);
+  }
+
+  // publish the whole grid after it was changed from the outside (resized, cleared, ...)
+  public synchronized void publishSnapshot() {
+    publish(GridSnapshot.of(grid, snapshotSequence.incrementAndGet(), viewport, null, 0, 0, -1));
+  }
+
+  private void publish(GridSnapshot snapshot) {
+    publishedSnapshot = snapshot;
+    latestSnapshot.set(snapshot);
+  }
+
+  /**
+    Whether a cell is alive in the last published generation, without waiting for the one being
+    computed. Cells the snapshot does not hold, outside the window or drawn as blocks, are dead.
+  */
+  public boolean isPublishedAlive(int col, int row) {
+    GridSnapshot snapshot = publishedSnapshot;
+    return snapshot != null && snapshot.isAlive(col, row);
+  }
+
+  /**
+    Sets the part of the plane the canvas shows, or null for snapshots of the whole board. A running
+    simulation publishes it between two generations, the event thread never waits for one.
+  */
+  public void setViewport(Viewport viewport) {
+    this.viewport = viewport;
+    viewportChanged.set(true);
+    handOver();
+  }
+
+  /**
+    Called by the render loop once per frame: hands over the latest generation, or null if there
+    is nothing new, and asks for the next one.
+  */
+  public GridSnapshot takeSnapshot() {
+    GridSnapshot snapshot = latestSnapshot.getAndSet(null);
+    snapshotRequested.set(true);
+    return snapshot;
+  }
+
+  public ActionListener renderTickListener() {
+    return new ActionListener(){
 
       @Override
-      public void mousePressed(MouseEvent e) {
-        if (e.getButton() == MouseEvent.BUTTON1) {
-          gridDragManager.startTracking(grid.isAlive(col, row));
+      public void actionPerformed(ActionEvent e) {
+        // the cells drawn since the last frame, the simulation applies them itself if it runs
+        gridDragManager.applyEdits();
+        if(!simulationManager.isSimulationRunning.get()) {
+          // what the simulation left behind when it stopped
+          applyBoardChanges();
+          if(!edits.isEmpty() && applyEdits()) publishSnapshot();
         }
-
+        GridSnapshot snapshot = takeSnapshot();
+        if(snapshot != null) {
+          gui.showSnapshot(snapshot);
+        }
+        gui.setGenerationsPerSecond(simulationManager.getGenerationsPerSecond());
+        gui.setTimeline(recorder.getFirstGeneration(), recorder.getLastGeneration());
+        gui.setPeriod(cycleDetector.getPeriod());
+        // the simulation may have stopped by itself
+        gui.setSimulationRunning(simulationManager.isSimulationRunning.get());
       }
+    };
+  }
 
-      @Override
-      public void mouseEntered(MouseEvent e) {
-        gridDragManager.reportMouseOver(col, row);
+  /**
+    Jumps ahead; called on the simulation thread by SimulationManager.startJump(), stopping the
+    simulation cuts it short. HashLife does it in one go, the other grids step one generation at a
+    time like a running simulation, so the view follows and the lock is let go in between.
+  */
+  void advance(long generations) {
+    if(grid instanceof HashLifeGrid) {
+      synchronized(this) {
+        applyEdits();
+        ((HashLifeGrid)grid).advance(generations);
+        jumped();
+      }
+      return;
+    }
+    long target = grid.getGenerations() + generations;
+    boolean fastForward = simulationManager.getCycleAction() == SimulationManager.CycleAction.FAST_FORWARD;
+    while(simulationManager.isSimulationRunning.get()) {
+      synchronized(this) {
+        if(grid.getGenerations() >= target) return;
+        if(fastForward && cycleDetector.getPeriod() > 0) {
+          // the board repeats, only the part of the last period is left to compute
+          for (long i = cycleDetector.stepsBetween(grid.getGenerations(), target); i > 0; i--) {
+            grid.next();
+          }
+          grid.setGenerations(target);
+          jumped();
+          return;
+        }
+        next();
       }
+    }
+  }
+
+  // the generations in between were not recorded, history goes on from here
+  private void jumped() {
+    record(false);
+    cycleDetector.reset();
+    publishSnapshot();
+  }
+
+  public ActionListener jumpClickListener(JSpinner spinner) {
+    return new ActionListener(){
 
       @Override
-      public void mouseReleased(MouseEvent e) {
-        if (e.getButton() == MouseEvent.BUTTON1) {
-          gridDragManager.stopTracking();
+      public void actionPerformed(ActionEvent e) {
+        long generations = ((Number)spinner.getValue()).longValue();
+        if(!(grid instanceof HashLifeGrid) && generations > Configuration.MAX_STEPPED_JUMP) {
+          gui.showErrorMessage("Switch to the HASHLIFE engine to jump more than "
+            + Configuration.MAX_STEPPED_JUMP + " generations");
+          return;
         }
+        simulationManager.startJump(generations);
+        gui.setSimulationRunning(true);
       }
     };
   }
 
+  // show a recorded generation again, the simulation goes on from there when restarted
+  public void rewindTo(long generation) {
+    if(!(grid instanceof BoundedGrid)) {
+      gui.showErrorMessage("The " + engine + " engine keeps no history, switch to BITS or CLASSIC to step back");
+      return;
+    }
+    simulationManager.stopSimulation();
+    gui.setSimulationRunning(false);
+    String errorMessage = null;
+    synchronized(this) {
+      try {
+        if(recorder.restore(generation, grid)) {
+          cycleDetector.reset();
+          publishSnapshot();
+        } else {
+          errorMessage = "Generation " + generation + " is not recorded anymore";
+        }
+      } catch(IOException exception) {
+        errorMessage = "Cannot read the history: " + exception.getMessage();
+      }
+    }
+    if(errorMessage != null) gui.showErrorMessage(errorMessage);
+  }
 
-  // trigger the next from the model, and set everything for the UI
-  public void next() {
-    grid.next(); // trigger groundtruth on model side
+  public ActionListener backClickListener() {
+    return new ActionListener(){
 
-    gui.setGeneration(grid.getGenerations());
-    refreshGridDimension();
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        if(grid.getGenerations() > 0) {
+          rewindTo(grid.getGenerations() - 1);
+        }
+      }
+    };
+  }
+
+  public ChangeListener timelineChangeListener(JSlider slider) {
+    return new ChangeListener() {
+        @Override
+        public void stateChanged(ChangeEvent e) {
+          // the slider counts from the first recorded generation
+          if(gui.isTimelineUpdating() || recorder.getFirstGeneration() < 0) return;
+          long generation = recorder.getFirstGeneration() + slider.getValue();
+          if(generation == grid.getGenerations()) return;
+          rewindTo(generation);
+        }
+    };
   }
 
   public ActionListener nextClickListener() {
@@ -152,17 +464,92 @@ public class Controller {
     };
   }
 
+  public ChangeListener parallelismChangeListener(JSpinner spinner) {
+    return new ChangeListener() {
+        @Override
+        public void stateChanged(ChangeEvent e) {
+          SpinnerNumberModel model = (SpinnerNumberModel)spinner.getModel();
+          simulationManager.setParallelism(model.getNumber().intValue());
+        }
+    };
+  }
+
+  public ItemListener maxSpeedListener(JCheckBox checkBox) {
+    return new ItemListener(){
+      @Override
+      public void itemStateChanged(ItemEvent ie) {
+        simulationManager.setMode(
+          checkBox.isSelected() ? SimulationManager.Mode.MAX_SPEED : SimulationManager.Mode.FIXED_RATE
+        );
+      }
+    };
+  }
+
+  // without history nothing is recorded, and what was recorded is dropped
+  public ItemListener historyListener(JCheckBox checkBox) {
+    return new ItemListener(){
+      @Override
+      public void itemStateChanged(ItemEvent ie) {
+        synchronized(Controller.this) {
+          Configuration.RECORD_HISTORY = checkBox.isSelected();
+          recorder.clear();
+          record(false);
+        }
+      }
+    };
+  }
+
+  public ItemListener cycleActionListener(JComboBox<SimulationManager.CycleAction> dropbox) {
+    return new ItemListener(){
+      @Override
+      public void itemStateChanged(ItemEvent ie) {
+        if(ie.getStateChange() == ItemEvent.SELECTED) {
+          simulationManager.setCycleAction((SimulationManager.CycleAction)dropbox.getSelectedItem());
+        }
+      }
+    };
+  }
+
   public ItemListener cellSizeChangeListener(JComboBox dropbox) {
     return new ItemListener(){
       @Override
       public void itemStateChanged(ItemEvent ie) {
         if(ie.getStateChange() == ItemEvent.SELECTED) { // make sure that it is called once only
           Configuration.CellSize selectedSize = (Configuration.CellSize)dropbox.getSelectedItem();
-          // to prevent uneven sizing, if that would ever occur...
-          synchronized(this) {
-            Configuration.CELL_SIZE = selectedSize;
-            refreshGridDimension();
+          Configuration.CELL_SIZE = selectedSize;
+          refreshGridDimension();
+        }
+      }
+    };
+  }
+
+  public ItemListener boardSizeChangeListener(JComboBox<Configuration.BoardSize> dropbox) {
+    return new ItemListener(){
+      @Override
+      public void itemStateChanged(ItemEvent ie) {
+        if(ie.getStateChange() == ItemEvent.SELECTED) {
+          Configuration.BoardSize boardSize = (Configuration.BoardSize)dropbox.getSelectedItem();
+          if(boardSize == Configuration.BOARD_SIZE) return;
+          Dimension boardDimension = Configuration.boardSizeDict.get(boardSize);
+          if(engine == GridEngine.CLASSIC && boardDimension != null && boardDimension.width > Configuration.MAX_CLASSIC_BOARD) {
+            gui.showErrorMessage("The CLASSIC engine cannot hold a board this large, switch to BITS first");
+            dropbox.setSelectedItem(Configuration.BOARD_SIZE);
+            return;
           }
+          Configuration.BOARD_SIZE = boardSize;
+          refreshGridDimension();
+        }
+      }
+    };
+  }
+
+  public ItemListener renderModeChangeListener(JComboBox<Configuration.RenderMode> dropbox) {
+    return new ItemListener(){
+      @Override
+      public void itemStateChanged(ItemEvent ie) {
+        if(ie.getStateChange() == ItemEvent.SELECTED) {
+          gui.setRenderMode((Configuration.RenderMode)dropbox.getSelectedItem());
+          refreshGridDimension();
         }
       }
     };
@@ -174,15 +561,235 @@ public class Controller {
       public void itemStateChanged(ItemEvent ie) {
         if(ie.getStateChange() == ItemEvent.SELECTED) {
           GoLGrid.Shape selectedShape = (GoLGrid.Shape)dropbox.getSelectedItem();
-          // to prevent uneven sizing, if that would ever occur...
-          synchronized(this) {
-            String errorMessage = grid.shape(selectedShape.name());
-            if(errorMessage != null) {
-              gui.showErrorMessage(errorMessage);
-            } else {
-              refreshGridDimension();
+          String errorMessage;
+          synchronized(Controller.this) {
+            errorMessage = GoLGrid.shape(grid, selectedShape.name());
+          }
+          if(errorMessage != null) {
+            gui.showErrorMessage(errorMessage);
+          } else {
+            refreshGridDimension();
+          }
+        }
+      }
+    };
+  }
+
+  public ItemListener ruleChangeListener(JComboBox<String> dropbox) {
+    return new ItemListener(){
+      @Override
+      public void itemStateChanged(ItemEvent ie) {
+        if(ie.getStateChange() != ItemEvent.SELECTED) return;
+        Rule rule;
+        try {
+          rule = Rule.parse(String.valueOf(dropbox.getSelectedItem()));
+        } catch(IllegalArgumentException exception) {
+          gui.showErrorMessage(exception.getMessage());
+          gui.setRule(grid.getRule());
+          return;
+        }
+        if(rule.equals(grid.getRule())) return;
+        simulationManager.stopSimulation();
+        gui.setSimulationRunning(false);
+        String errorMessage = null;
+        synchronized(Controller.this) {
+          try {
+            grid.setRule(rule);
+          } catch(IllegalArgumentException exception) {
+            errorMessage = exception.getMessage() + ", switch to the BITS or CLASSIC engine";
+          }
+          // a cycle under the old rule says nothing about the new one
+          cycleDetector.reset();
+        }
+        if(errorMessage != null) gui.showErrorMessage(errorMessage);
+        gui.setRule(grid.getRule());
+      }
+    };
+  }
+
+  public ItemListener topologyChangeListener(JComboBox<Topology> dropbox) {
+    return new ItemListener(){
+      @Override
+      public void itemStateChanged(ItemEvent ie) {
+        if(ie.getStateChange() == ItemEvent.SELECTED) {
+          simulationManager.stopSimulation();
+          gui.setSimulationRunning(false);
+          topology = (Topology)dropbox.getSelectedItem();
+          applyTopology();
+        }
+      }
+    };
+  }
+
+  private void applyTopology() {
+    if(grid instanceof BoundedGrid) {
+      synchronized(this) {
+        ((BoundedGrid)grid).setTopology(topology);
+        cycleDetector.reset();
+      }
+    } else if(topology != Topology.DEAD) {
+      gui.showErrorMessage("The " + engine + " engine has no edges, switch to BITS or CLASSIC for " + topology);
+    }
+  }
+
+  public ItemListener engineChangeListener(JComboBox<GridEngine> dropbox) {
+    return new ItemListener(){
+      @Override
+      public void itemStateChanged(ItemEvent ie) {
+        if(ie.getStateChange() == ItemEvent.SELECTED) {
+          GridEngine selected = (GridEngine)dropbox.getSelectedItem();
+          if(selected == engine) return;
+          if(selected == GridEngine.CLASSIC && grid.getColumns() > Configuration.MAX_CLASSIC_BOARD) {
+            gui.showErrorMessage("The CLASSIC engine cannot hold a board this large, pick a smaller board first");
+            dropbox.setSelectedItem(engine);
+            return;
+          }
+          simulationManager.stopSimulation();
+          gui.setSimulationRunning(false);
+          switchEngine(selected);
+        }
+      }
+    };
+  }
+
+  // replace the grid with one of the given engine, keeping the visible cells
+  private void switchEngine(GridEngine engine) {
+    this.engine = engine;
+    String errorMessage = null;
+    synchronized(this) {
+      Grid newGrid = engine.create(grid.getColumns(), grid.getRows());
+      try {
+        newGrid.setRule(grid.getRule());
+      } catch(IllegalArgumentException exception) {
+        errorMessage = exception.getMessage() + ", going on with " + newGrid.getRule();
+      }
+      for (int i = 0; i < grid.getRows(); i++) {
+        for (int j = 0; j < grid.getColumns(); j++) {
+          if(grid.isAlive(j, i)) newGrid.setAlive(j, i, true);
+        }
+      }
+      // the threads of a parallel BitGrid would outlive it
+      if(grid instanceof BitGrid) ((BitGrid)grid).setParallelism(1);
+      grid = newGrid;
+    }
+    if(errorMessage != null) {
+      gui.showErrorMessage(errorMessage);
+      gui.setRule(grid.getRule());
+    }
+    applyTopology();
+    refreshGridDimension();
+  }
+
+  public ActionListener openPatternListener() {
+    return new ActionListener(){
+
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        File file = gui.choosePatternFile(false);
+        if(file == null) return;
+        simulationManager.stopSimulation();
+        gui.setSimulationRunning(false);
+        String errorMessage = null;
+        synchronized(Controller.this) {
+          try {
+            PatternIO.Bounds bounds = PatternIO.load(file, grid);
+            if(bounds.getWidth() > grid.getColumns() || bounds.getHeight() > grid.getRows()) {
+              errorMessage = "The pattern is " + bounds.getWidth() + " x " + bounds.getHeight()
+                + " cells, only the middle of it is visible";
             }
+          } catch(IOException exception) {
+            errorMessage = "Cannot read " + file.getName() + ": " + exception.getMessage();
+          }
+        }
+        if(errorMessage != null) gui.showErrorMessage(errorMessage);
+        gui.setRule(grid.getRule());
+        refreshGridDimension();
+      }
+    };
+  }
+
+  public ActionListener savePatternListener() {
+    return new ActionListener(){
+
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        File file = gui.choosePatternFile(true);
+        if(file == null) return;
+        if(PatternIO.Format.forFileName(file.getName()) == null) {
+          file = new File(file.getPath() + ".rle");
+        }
+        // the simulation waits while the board is written out
+        try {
+          synchronized(Controller.this) {
+            PatternIO.save(file, grid);
+          }
+        } catch(IOException exception) {
+          gui.showErrorMessage("Cannot write " + file.getName() + ": " + exception.getMessage());
+        }
+      }
+    };
+  }
+
+  public ActionListener restoreSnapshotListener() {
+    return new ActionListener(){
+
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        File file = gui.chooseSnapshotFile(false);
+        if(file == null) return;
+        SnapshotFile.Header header;
+        try {
+          header = SnapshotFile.readHeader(file);
+        } catch(IOException exception) {
+          gui.showErrorMessage("Cannot restore " + file.getName() + ": " + exception.getMessage());
+          return;
+        }
+        int col = header.getColumns(), row = header.getRows();
+        if(engine == GridEngine.CLASSIC && Math.max(col, row) > Configuration.MAX_CLASSIC_BOARD) {
+          gui.showErrorMessage("The CLASSIC engine cannot hold a board of " + col + "x" + row + ", switch to BITS first");
+          return;
+        }
+        if(Configuration.RENDER_MODE == Configuration.RenderMode.BUTTONS
+          && (col > grid.getColumns() || row > grid.getRows())) {
+          gui.showErrorMessage("A board of " + col + "x" + row + " does not fit the cell buttons, switch to the canvas first");
+          return;
+        }
+        simulationManager.stopSimulation();
+        gui.setSimulationRunning(false);
+        try {
+          synchronized(Controller.this) {
+            SnapshotFile.read(file, grid);
           }
+        } catch(IOException exception) {
+          gui.showErrorMessage("Cannot restore " + file.getName() + ": " + exception.getMessage());
+        }
+        gui.setRule(grid.getRule());
+        // the board keeps the size of the snapshot; the cell buttons always follow the window
+        if(Configuration.RENDER_MODE == Configuration.RenderMode.CANVAS) {
+          Configuration.BOARD_SIZE = Configuration.boardSizeFor(col, row);
+          gui.setBoardSize(Configuration.BOARD_SIZE);
+        }
+        refreshGridDimension();
+      }
+    };
+  }
+
+  public ActionListener saveSnapshotListener() {
+    return new ActionListener(){
+
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        File file = gui.chooseSnapshotFile(true);
+        if(file == null) return;
+        if(!file.getName().endsWith(SnapshotFile.EXTENSION)) {
+          file = new File(file.getPath() + SnapshotFile.EXTENSION);
+        }
+        try {
+          synchronized(Controller.this) {
+            SnapshotFile.write(file, grid);
+          }
+        } catch(IOException exception) {
+          gui.showErrorMessage("Cannot write " + file.getName() + ": " + exception.getMessage());
         }
       }
     };
@@ -193,10 +800,11 @@ public class Controller {
 
       @Override
       public void actionPerformed(ActionEvent e) {
-        synchronized(this) {
+        simulationManager.stopSimulation();
+        synchronized(Controller.this) {
+          // cells painted before do not outlive the clearing
+          edits.takeAll();
           grid.clear();
-
-          simulationManager.stopSimulation();
           refreshGridDimension();
         }
       }
@@ -217,15 +825,20 @@ public class Controller {
     // now calculate how many cells should there be on each row and col respectively.
     int numCols = dim.width / cellDimension.width;
     int numRows = dim.height / cellDimension.height;
+    // the canvas can zoom out to boards larger than the window
+    Dimension boardDimension = Configuration.boardDimension();
+    if(boardDimension != null && Configuration.RENDER_MODE == Configuration.RenderMode.CANVAS) {
+      numCols = boardDimension.width;
+      numRows = boardDimension.height;
+    }
 
     if (grid == null) {
-      grid = new GoLGrid(numCols, numRows);
+      grid = engine.create(numCols, numRows);
     } else {
-      // now set the model.
-      grid.resize(numCols, numRows);
-
       gui.reloadGridCells(numCols, numRows);
     }
+    // now set the model.
+    pendingSize.set(new Dimension(numCols, numRows));
 
   }
 
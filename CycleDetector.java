@@ -0,0 +1,202 @@
+package gameoflife;
+import java.util.Arrays;
+
+/**
+  Notices when a board keeps repeating itself: a still life (period 1), an oscillator, or a board
+  whose every part is either.
+
+  Every generation the hash of the board is compared with the hashes of the generations before it,
+  which are kept in a ring. When a hash comes back after p generations, the cells are copied and
+  compared exactly with the board p generations later; only if they are equal the period counts as
+  found, so colliding hashes never stop a simulation. From then on the board repeats every p
+  generations, until it is changed from the outside and reset() is called.
+
+  BITS, CLASSIC and SPARSE grids keep their hash up to date while stepping and editing, so only a
+  match costs a copy of the cells. On HASHLIFE and SPARSE grids the whole unbounded plane is compared, not just the visible window:
+  every living cell of a SparseGrid, and the universe of a HashLifeGrid trimmed to the part that is
+  not empty. A board whose window repeats while a glider flies off beyond it does not count, so
+  skipping periods and stopping never lose anything that is going on outside of the window.
+*/
+public class CycleDetector {
+  public static final int DEFAULT_HISTORY = 1024;
+
+  // hashes of the last generations, hashes[generation % length]
+  private final long[] hashes;
+  private int count = 0;             // valid entries in the ring
+  private long lastGeneration = -1;  // the generation of the newest entry
+
+  // a period that still has to be confirmed by comparing the cells
+  private long candidatePeriod = 0;
+  private long candidateGeneration = -1;
+  private long[] candidateCells = new long[0];
+  private long[] cells = new long[0];
+  // the same for a HashLifeGrid, whose universe is compared node by node instead
+  private HashLifeGrid.Node candidateUniverse;
+
+  private long period = 0;
+  private long cycleStart = -1;
+
+  public CycleDetector() {
+    this(DEFAULT_HISTORY);
+  }
+
+  /**
+    @param history Number of generations looked back, i.e. the longest period that is found.
+  */
+  public CycleDetector(int history) {
+    if(history < 1) throw new IllegalArgumentException("History must hold at least one generation: " + history);
+    hashes = new long[history];
+  }
+
+  /**********************
+    Hashing: every word of packed cells (GridSnapshot layout) is multiplied by an odd number picked
+    by its index, and the products are XORed together, so that a change of one word updates the hash
+    with two multiplications. Words without living cells add nothing. The low bits of such a hash mix
+    poorly, which is acceptable because matches are confirmed by comparing the cells.
+  */
+  public static long hashWord(int index, long word) {
+    return word * (((long)index * 0x9e3779b97f4a7c15L) | 1);
+  }
+
+  public static long hash(long[] words) {
+    long hash = 0;
+    for (int i = 0; i < words.length; i++) {
+      if(words[i] != 0) hash ^= hashWord(i, words[i]);
+    }
+    return hash;
+  }
+
+  /**
+    The grids that keep cells rather than words, SPARSE and CLASSIC, hash every living cell packed
+    like SparseGrid.pack() on its own (murmur3 finalizer) and XOR the hashes, so that a cell that is
+    born or dies updates the hash whatever the order.
+  */
+  public static long hashCell(long cell) {
+    cell ^= cell >>> 33;
+    cell *= 0xff51afd7ed558ccdL;
+    cell ^= cell >>> 33;
+    cell *= 0xc4ceb9fe1a85ec53L;
+    return cell ^ (cell >>> 33);
+  }
+
+  /**********************
+    Detection
+  */
+  /**
+    Looks at the current generation of the grid; call it after every step.
+
+    @return The period of the board, or 0 while none was found.
+  */
+  public synchronized long observe(Grid grid) {
+    if(period > 0) return period;
+    long generation = grid.getGenerations();
+    if(generation != lastGeneration + 1) {
+      // only consecutive generations can be compared
+      count = 0;
+      candidatePeriod = 0;
+    }
+    long hash;
+    HashLifeGrid.Node universe = null;
+    if(grid instanceof BitGrid) {
+      hash = ((BitGrid)grid).getBoardHash();
+    } else if(grid instanceof HashLifeGrid) {
+      universe = ((HashLifeGrid)grid).getUniverse();
+      hash = HashLifeGrid.hash(universe);
+    } else if(grid instanceof SparseGrid) {
+      hash = ((SparseGrid)grid).getCellHash();
+    } else if(grid instanceof GoLGrid) {
+      hash = ((GoLGrid)grid).getCellHash();
+    } else {
+      copyCells(grid);
+      hash = hash(cells);
+    }
+
+    if(candidatePeriod > 0 && generation == candidateGeneration + candidatePeriod) {
+      if(isCandidate(grid, universe)) {
+        period = candidatePeriod;
+        cycleStart = candidateGeneration;
+      }
+      candidatePeriod = 0;
+      candidateUniverse = null;
+    }
+    if(period == 0 && candidatePeriod == 0) {
+      // the most recent match is the shortest period
+      for (int p = 1; p <= count; p++) {
+        if(hashes[(int)((generation - p) % hashes.length)] == hash) {
+          keepCandidate(grid, universe);
+          candidatePeriod = p;
+          candidateGeneration = generation;
+          break;
+        }
+      }
+    }
+
+    hashes[(int)(generation % hashes.length)] = hash;
+    count = Math.min(count + 1, hashes.length);
+    lastGeneration = generation;
+    return period;
+  }
+
+  // keeps the exact state of the generation whose hash came back, to compare it after one period
+  private void keepCandidate(Grid grid, HashLifeGrid.Node universe) {
+    if(universe != null) {
+      candidateUniverse = universe;
+      return;
+    }
+    takeCells(grid);
+    long[] swap = candidateCells;
+    candidateCells = cells;
+    cells = swap;
+  }
+
+  private boolean isCandidate(Grid grid, HashLifeGrid.Node universe) {
+    if(universe != null) return HashLifeGrid.isSameUniverse(universe, candidateUniverse);
+    takeCells(grid);
+    return Arrays.equals(cells, candidateCells);
+  }
+
+  // the exact cells, sorted for a SparseGrid, whose cells are in no particular order
+  private void takeCells(Grid grid) {
+    if(grid instanceof SparseGrid) {
+      cells = ((SparseGrid)grid).getCellKeys();
+      Arrays.sort(cells);
+    } else {
+      copyCells(grid);
+    }
+  }
+
+  private void copyCells(Grid grid) {
+    int length = GridSnapshot.wordsPerRow(grid.getColumns()) * grid.getRows();
+    if(cells.length != length) cells = new long[length];
+    GridSnapshot.copyCells(grid, cells);
+  }
+
+  // the period found, 0 if there is none (yet)
+  public synchronized long getPeriod() {
+    return period;
+  }
+
+  // a generation from which on the board repeats, -1 if no period was found
+  public synchronized long getCycleStart() {
+    return cycleStart;
+  }
+
+  /**
+    Number of generations that still have to be computed to get from the given generation to the
+    target, which is fewer than the difference once the period is known.
+  */
+  public synchronized long stepsBetween(long generation, long target) {
+    if(period == 0 || generation < cycleStart) return target - generation;
+    return (target - generation) % period;
+  }
+
+  // forget everything, e.g. after the board was edited
+  public synchronized void reset() {
+    count = 0;
+    lastGeneration = -1;
+    candidatePeriod = 0;
+    candidateUniverse = null;
+    period = 0;
+    cycleStart = -1;
+  }
+}
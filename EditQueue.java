@@ -0,0 +1,80 @@
+package gameoflife;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+  Cell edits on their way from the threads that make them to the thread that owns the grid.
+  Any number of threads add edits without locking, each batch is pushed onto a stack with a single
+  compare-and-set. The one thread that owns the grid takes all of them at once between two
+  generations, and gets them back in the order they were added.
+
+  Cells are packed into a long like SparseGrid.pack(), the column in the upper and the row in the
+  lower half.
+*/
+public final class EditQueue {
+  // cells that are set to the same state, e.g. the part of a stroke drawn in one frame
+  public static final class Batch {
+    private final long[] cells;
+    private final int count;
+    private final boolean alive;
+    // towards the older batches while on the stack, towards the newer ones once taken
+    private Batch next;
+
+    private Batch(long[] cells, int count, boolean alive) {
+      this.cells = cells;
+      this.count = count;
+      this.alive = alive;
+    }
+
+    public long getCell(int index) {
+      return cells[index];
+    }
+
+    public int getCount() {
+      return count;
+    }
+
+    public boolean isAlive() {
+      return alive;
+    }
+
+    public Batch getNext() {
+      return next;
+    }
+  }
+
+  private final AtomicReference<Batch> top = new AtomicReference<Batch>();
+
+  /**
+    Adds the first count cells of the array, which must not be changed afterwards.
+  */
+  public void add(long[] cells, int count, boolean alive) {
+    Batch batch = new Batch(cells, count, alive);
+    Batch current;
+    do {
+      current = top.get();
+      batch.next = current;
+    } while(!top.compareAndSet(current, batch));
+  }
+
+  public boolean isEmpty() {
+    return top.get() == null;
+  }
+
+  /**
+    Takes all batches added so far, only to be called by the thread that owns the grid.
+
+    @return The oldest batch, followed by the newer ones, or null if there are none.
+  */
+  public Batch takeAll() {
+    Batch batch = top.getAndSet(null);
+    // the stack has the newest on top, turn it around
+    Batch oldest = null;
+    while(batch != null) {
+      Batch older = batch.next;
+      batch.next = oldest;
+      oldest = batch;
+      batch = older;
+    }
+    return oldest;
+  }
+}
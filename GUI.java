@@ -3,11 +3,13 @@ package gameoflife;
 
 import javax.swing.*;
 import javax.swing.border.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.event.*;
 
 import javax.management.RuntimeErrorException;
 import java.lang.Error;
+import java.io.File;
 import java.util.ArrayList;
 
 public class GUI {
@@ -19,13 +21,29 @@ public class GUI {
   JFrame frame;
   Container golGridContainer;
   JLabel generationLabel;
+  JLabel rateLabel;
+  JLabel periodLabel;
+  JLabel populationLabel;
 
   JButton simulationButton;
+  JButton backButton;
   JButton nextButton;
+  JButton jumpButton;
 
   ArrayList<ArrayList<CellButton> > cellButtons = new ArrayList<>();
+  GridCanvas gridCanvas;
+  // one listener paints cells on all the cell buttons and the canvas
+  GridDragManager dragManager;
+  long shownSequence = -1; // snapshot the cell buttons show, -1 if they were set from the model
+  long shownGeneration = 0;
+  Timer renderTimer;
+
+  JSlider timeline;
+  boolean isTimelineUpdating = false; // set while the slider is moved by the program, not the user
 
   JComboBox<GoLGrid.Shape> shapeDropdownBox;
+  private JComboBox<String> ruleDropdownBox;
+  private JComboBox<Configuration.BoardSize> boardSizeBox;
   int col = 0;
   int row = 0;
 
@@ -44,36 +62,91 @@ public class GUI {
     Container contentPane = frame.getContentPane();
 
     // make the grid having the ability to handle the dragging
-
+    dragManager = controller.getGridDragManager(this);
 
     // init the grid panel
     golGridContainer = initGoLGrid(controller);
-    GridDragManager manager = controller.getGridDragManager(this);
-    golGridContainer.addMouseListener(manager);
-    golGridContainer.addMouseMotionListener(manager);
     contentPane.add(golGridContainer, BorderLayout.CENTER);
 
 
+    frame.setJMenuBar(initMenuBar(controller));
+
     // init panel
     JPanel controlPanel = initButtonPanel(controller);
-    contentPane.add(controlPanel, BorderLayout.SOUTH);
+    JPanel southPanel = new JPanel(new BorderLayout());
+    southPanel.add(initTimeline(controller), BorderLayout.NORTH);
+    southPanel.add(controlPanel, BorderLayout.SOUTH);
+    contentPane.add(southPanel, BorderLayout.SOUTH);
 
 
     controller.setGUI(this);
 
+    // the render loop, picks up the latest generation from the simulation
+    renderTimer = new Timer(1000 / Configuration.FRAMES_PER_SECOND, controller.renderTickListener());
+    renderTimer.start();
+
     frame.setVisible(true);
   }
 
   private Container initGoLGrid(Controller controller) {
     // get the width and height of
     Container container = new JPanel();
-    container.setLayout(new FlowLayout(FlowLayout.CENTER, 0, 0));
+    gridCanvas = new GridCanvas(controller);
+    gridCanvas.addMouseListener(dragManager);
+    gridCanvas.addMouseMotionListener(dragManager);
+    layoutGoLGrid(container);
     // make the grid having the ability to handle the resizing
     container.addComponentListener(controller.gridResizeListener());
 
     return container;
   }
 
+  // puts either the canvas or the (yet to be created) cell buttons into the grid container
+  private void layoutGoLGrid(Container container) {
+    container.removeAll();
+    cellButtons.clear();
+    if(Configuration.RENDER_MODE == Configuration.RenderMode.CANVAS) {
+      container.setLayout(new BorderLayout());
+      container.add(gridCanvas, BorderLayout.CENTER);
+    } else {
+      container.setLayout(new FlowLayout(FlowLayout.CENTER, 0, 0));
+    }
+  }
+
+  private JMenuBar initMenuBar(Controller controller) {
+    JMenuBar menuBar = new JMenuBar();
+    JMenu fileMenu = new JMenu("File");
+
+    JMenuItem openItem = new JMenuItem("Open pattern...");
+    openItem.addActionListener(controller.openPatternListener());
+    fileMenu.add(openItem);
+
+    JMenuItem saveItem = new JMenuItem("Save pattern...");
+    saveItem.addActionListener(controller.savePatternListener());
+    fileMenu.add(saveItem);
+
+    fileMenu.addSeparator();
+
+    JMenuItem restoreItem = new JMenuItem("Restore snapshot...");
+    restoreItem.addActionListener(controller.restoreSnapshotListener());
+    fileMenu.add(restoreItem);
+
+    JMenuItem snapshotItem = new JMenuItem("Save snapshot...");
+    snapshotItem.addActionListener(controller.saveSnapshotListener());
+    fileMenu.add(snapshotItem);
+
+    menuBar.add(fileMenu);
+    return menuBar;
+  }
+
+  // scrubbing through the recorded generations
+  private JSlider initTimeline(Controller controller) {
+    timeline = new JSlider(0, 0, 0);
+    timeline.setToolTipText("Recorded generations");
+    timeline.addChangeListener(controller.timelineChangeListener(timeline));
+    return timeline;
+  }
+
   private JPanel initButtonPanel(Controller controller) {
     JPanel panel = new JPanel();
     panel.setLayout(new BoxLayout(panel, BoxLayout.X_AXIS));
@@ -85,12 +158,44 @@ public class GUI {
 
     panel.add(Box.createHorizontalGlue());
 
+    // any B/S rule can be typed in, the list only holds the well known ones
+    ruleDropdownBox = new JComboBox<>(Rule.PRESETS);
+    ruleDropdownBox.setEditable(true);
+    ruleDropdownBox.setToolTipText("Birth/survival neighbour counts, e.g. B36/S23");
+    ruleDropdownBox.addItemListener(controller.ruleChangeListener(ruleDropdownBox));
+    panel.add(new JLabel("Rule"));
+    panel.add(ruleDropdownBox);
+
+    panel.add(Box.createHorizontalGlue());
+
+    JComboBox<GridEngine> engineDropdownBox = new JComboBox<>(GridEngine.values());
+    engineDropdownBox.setSelectedItem(GridEngine.BITS);
+    engineDropdownBox.addItemListener(controller.engineChangeListener(engineDropdownBox));
+    panel.add(new JLabel("Engine"));
+    panel.add(engineDropdownBox);
+
+    JComboBox<Topology> topologyBox = new JComboBox<>(Topology.values());
+    topologyBox.setToolTipText("What lies beyond the edges of the board");
+    topologyBox.addItemListener(controller.topologyChangeListener(topologyBox));
+    panel.add(new JLabel("Edges"));
+    panel.add(topologyBox);
+
+    panel.add(Box.createHorizontalGlue());
+
     JButton clearButton = new JButton("Clear");
     clearButton.addActionListener(controller.clearListener());
     panel.add(clearButton);
 
     panel.add(Box.createHorizontalGlue());
 
+    backButton = new JButton("Back");
+    backButton.addActionListener(controller.backClickListener());
+    panel.add(backButton);
+
+    JCheckBox historyBox = new JCheckBox("History", Configuration.RECORD_HISTORY);
+    historyBox.addItemListener(controller.historyListener(historyBox));
+    panel.add(historyBox);
+
     // the next button configuration
     nextButton = new JButton("Next");
     nextButton.addActionListener(controller.nextClickListener());
@@ -98,6 +203,14 @@ public class GUI {
     // spacing in between
     panel.add(Box.createHorizontalGlue());
 
+    JSpinner jumpSpinner = new JSpinner(Configuration.jumpSpinnerModel());
+    jumpButton = new JButton("Jump");
+    jumpButton.addActionListener(controller.jumpClickListener(jumpSpinner));
+    panel.add(jumpSpinner);
+    panel.add(jumpButton);
+
+    panel.add(Box.createHorizontalGlue());
+
     simulationButton = new JButton("Start");
     simulationButton.addActionListener(controller.startClickListener());
     panel.add(simulationButton);
@@ -109,6 +222,24 @@ public class GUI {
     panel.add(new JLabel("Simulation Speed (ticks per minute)"));
     panel.add(speedSpinner);
 
+    JCheckBox maxSpeedBox = new JCheckBox("Max speed");
+    maxSpeedBox.addItemListener(controller.maxSpeedListener(maxSpeedBox));
+    panel.add(maxSpeedBox);
+
+    panel.add(Box.createHorizontalGlue());
+
+    JComboBox<SimulationManager.CycleAction> cycleActionBox = new JComboBox<>(SimulationManager.CycleAction.values());
+    cycleActionBox.addItemListener(controller.cycleActionListener(cycleActionBox));
+    panel.add(new JLabel("When settled"));
+    panel.add(cycleActionBox);
+
+    panel.add(Box.createHorizontalGlue());
+
+    JSpinner parallelismSpinner = new JSpinner(Configuration.parallelismSpinnerModel());
+    parallelismSpinner.addChangeListener(controller.parallelismChangeListener(parallelismSpinner));
+    panel.add(new JLabel("Threads"));
+    panel.add(parallelismSpinner);
+
     panel.add(Box.createHorizontalGlue());
 
     JComboBox<Configuration.CellSize> cellSizeBox = new JComboBox<Configuration.CellSize>(
@@ -118,11 +249,44 @@ public class GUI {
     panel.add(new JLabel("Cell size"));
     panel.add(cellSizeBox);
 
+    boardSizeBox = new JComboBox<Configuration.BoardSize>(
+      Configuration.BoardSize.values()
+    );
+    boardSizeBox.setToolTipText("Cells on the board; the canvas zooms with the mouse wheel and pans with the right button");
+    boardSizeBox.addItemListener(controller.boardSizeChangeListener(boardSizeBox));
+    panel.add(new JLabel("Board"));
+    panel.add(boardSizeBox);
+
+    panel.add(Box.createHorizontalGlue());
+
+    JComboBox<Configuration.RenderMode> renderModeBox = new JComboBox<Configuration.RenderMode>(
+      Configuration.RenderMode.values()
+    );
+    renderModeBox.setSelectedItem(Configuration.RENDER_MODE);
+    renderModeBox.addItemListener(controller.renderModeChangeListener(renderModeBox));
+    panel.add(new JLabel("Renderer"));
+    panel.add(renderModeBox);
+
     panel.add(Box.createHorizontalGlue());
 
     generationLabel = new JLabel("Generation 0");
     panel.add(generationLabel);
 
+    panel.add(Box.createHorizontalStrut(10));
+
+    populationLabel = new JLabel("");
+    panel.add(populationLabel);
+
+    panel.add(Box.createHorizontalStrut(10));
+
+    rateLabel = new JLabel("");
+    panel.add(rateLabel);
+
+    panel.add(Box.createHorizontalStrut(10));
+
+    periodLabel = new JLabel("");
+    panel.add(periodLabel);
+
     return panel;
   }
 
@@ -132,13 +296,12 @@ public class GUI {
 
     cellButton.setPreferredSize(Configuration.cellDimension());
 
-    boolean isAlive = controller.isAlive(col, row);
+    boolean isAlive = controller.isPublishedAlive(col, row);
     Color color = Configuration.getCellColor(isAlive); // get the color of a dead cell
 
     cellButton.setColor(color);
-    MouseAdapter listener = controller.cellClickListener(col, row, cellButton);
-    cellButton.addMouseListener(listener);
-    cellButton.addMouseMotionListener(listener);
+    cellButton.addMouseListener(dragManager);
+    cellButton.addMouseMotionListener(dragManager);
     return cellButton;
   }
   /**********************
@@ -152,26 +315,117 @@ public class GUI {
     );
   }
 
+  // asks for a pattern file, returns null if the dialog was cancelled
+  public File choosePatternFile(boolean save) {
+    return chooseFile(save, new FileNameExtensionFilter(
+      "Patterns (*.rle, *.lif, *.life, *.cells, *.txt)", "rle", "lif", "life", "cells", "txt"
+    ));
+  }
+
+  // asks for a snapshot file, returns null if the dialog was cancelled
+  public File chooseSnapshotFile(boolean save) {
+    return chooseFile(save, new FileNameExtensionFilter("Snapshots (*.gols)", "gols"));
+  }
+
+  private File chooseFile(boolean save, FileNameExtensionFilter filter) {
+    JFileChooser chooser = new JFileChooser();
+    chooser.setFileFilter(filter);
+    int option = save ? chooser.showSaveDialog(frame) : chooser.showOpenDialog(frame);
+    return option == JFileChooser.APPROVE_OPTION ? chooser.getSelectedFile() : null;
+  }
+
   public Dimension getGolGridDimension() {
     return golGridContainer.getSize();
   }
   // when the grid does not move and you want to update the cell...
   public void repaintCells() {
+    if(Configuration.RENDER_MODE == Configuration.RenderMode.CANVAS) {
+      return; // the canvas only draws snapshots, the controller publishes one after every change
+    }
     synchronized(this) {
+      shownSequence = -1;
       for(int i = 0; i < row; i++) {
         for(int j = 0; j < col; j++) {
           CellButton cellButton = cellButtons.get(i).get(j);
           cellButton.setColor(
             Configuration.getCellColor(
-              controller.isAlive(j, i)
+              controller.isPublishedAlive(j, i)
+            )
+          );
+        }
+      }
+    }
+  }
+  // show a generation handed over by the render loop
+  public void showSnapshot(GridSnapshot snapshot) {
+    setGeneration(snapshot.getGenerations());
+    setStatistics(snapshot.getStatistics());
+    if(Configuration.RENDER_MODE == Configuration.RenderMode.CANVAS) {
+      gridCanvas.show(snapshot);
+      return;
+    }
+    synchronized(this) {
+      // the hints are only good if the buttons show the snapshot they are relative to
+      boolean useHints = snapshot.hasChangeHints() && snapshot.getBasis() == shownSequence;
+      int rows = Math.min(cellButtons.size(), snapshot.getRows());
+      for(int i = 0; i < rows; i++) {
+        ArrayList<CellButton> buttonRow = cellButtons.get(i);
+        int cols = Math.min(buttonRow.size(), snapshot.getColumns());
+        for(int j = 0; j < cols; j++) {
+          if(useHints && !snapshot.isTileChanged(j / snapshot.getTileWidth(), i / snapshot.getTileHeight())) continue;
+          buttonRow.get(j).setColor(
+            Configuration.getCellColor(
+              snapshot.isAlive(j, i)
             )
           );
         }
       }
+      shownSequence = snapshot.getSequence();
     }
   }
+
+  /**
+    The cell at a point of the grid container, or null if there is none. The cell buttons are laid
+    out in rows of equal buttons, so the cell follows from the position of the first one.
+  */
+  public Point cellAt(int x, int y) {
+    if(Configuration.RENDER_MODE == Configuration.RenderMode.CANVAS) {
+      return gridCanvas.cellAt(x - gridCanvas.getX(), y - gridCanvas.getY());
+    }
+    synchronized(this) {
+      if(cellButtons.isEmpty() || cellButtons.get(0).isEmpty()) return null;
+      Rectangle first = cellButtons.get(0).get(0).getBounds();
+      if(first.width == 0 || first.height == 0) return null;
+      int j = Math.floorDiv(x - first.x, first.width), i = Math.floorDiv(y - first.y, first.height);
+      if(i < 0 || i >= cellButtons.size() || j < 0 || j >= cellButtons.get(i).size()) return null;
+      return new Point(j, i);
+    }
+  }
+
+  // show cells that were just painted, packed like SparseGrid.pack()
+  public void showEdits(long[] cells, int count, boolean alive) {
+    if(Configuration.RENDER_MODE == Configuration.RenderMode.CANVAS) {
+      gridCanvas.showEdits(cells, count, alive);
+      return;
+    }
+    synchronized(this) {
+      Color color = Configuration.getCellColor(alive);
+      for (int k = 0; k < count; k++) {
+        int j = SparseGrid.colOf(cells[k]), i = SparseGrid.rowOf(cells[k]);
+        if(i >= 0 && i < cellButtons.size() && j >= 0 && j < cellButtons.get(i).size()) cellButtons.get(i).get(j).setColor(color);
+      }
+    }
+  }
+
   // methods that triggers reloading of the grids
   public void reloadGridCells(int col, int row) {
+    if(Configuration.RENDER_MODE == Configuration.RenderMode.CANVAS) {
+      // the canvas decides itself whether its view has to go back to the board
+      this.col = col;
+      this.row = row;
+      gridCanvas.setGridSize(col, row);
+      return;
+    }
     if(col == this.col && row == this.row) {
       // just repaint, don't reload
       repaintCells();
@@ -185,6 +439,7 @@ public class GUI {
     synchronized(this) {
       golGridContainer.removeAll();
       cellButtons.clear();
+      shownSequence = -1;
 
       for (int i = 0; i < row; i++){
         ArrayList<CellButton> buttonRow = new ArrayList<>();
@@ -204,9 +459,77 @@ public class GUI {
     golGridContainer.repaint();
   }
 
-  public void setGeneration(int generation) {
+  // swap between cell buttons and the canvas, the cells are rebuilt on the next refresh
+  public void setRenderMode(Configuration.RenderMode renderMode) {
+    synchronized(this) {
+      Configuration.RENDER_MODE = renderMode;
+      layoutGoLGrid(golGridContainer);
+      col = 0;
+      row = 0;
+    }
+    // the buttons show the whole board
+    controller.setViewport(renderMode == Configuration.RenderMode.CANVAS ? gridCanvas.getViewport() : null);
+    golGridContainer.revalidate();
+    golGridContainer.repaint();
+  }
+
+  public void setGeneration(long generation) {
     String text = "Generation " + generation;
     generationLabel.setText(text);
+    shownGeneration = generation;
+  }
+
+  // population, with births and deaths where the engine knows them
+  public void setStatistics(GridStatistics statistics) {
+    String text = "Population " + statistics.getPopulation();
+    if(statistics.getBirths() != GridStatistics.UNKNOWN) {
+      text += " (+" + statistics.getBirths() + " -" + statistics.getDeaths() + ")";
+    }
+    populationLabel.setText(text);
+  }
+
+  // the range of recorded generations, the knob follows the generation on screen
+  public void setTimeline(long firstGeneration, long lastGeneration) {
+    if(timeline.getValueIsAdjusting()) return; // the user is dragging it
+    int maximum = (int)Math.min(Integer.MAX_VALUE, Math.max(0, lastGeneration - firstGeneration));
+    int value = (int)Math.max(0, Math.min(maximum, shownGeneration - firstGeneration));
+    if(timeline.getMaximum() == maximum && timeline.getValue() == value) return;
+    isTimelineUpdating = true;
+    timeline.setMaximum(maximum);
+    timeline.setValue(value);
+    isTimelineUpdating = false;
+  }
+
+  public boolean isTimelineUpdating() {
+    return isTimelineUpdating;
+  }
+
+  // the rate the simulation actually achieves, hidden while it is not running
+  public void setGenerationsPerSecond(double generationsPerSecond) {
+    String text = isSimulationRunning ? String.format("%.0f gen/s", generationsPerSecond) : "";
+    if(!text.equals(rateLabel.getText())) {
+      rateLabel.setText(text);
+    }
+  }
+
+  // the period the board repeats with, hidden while there is none
+  public void setPeriod(long period) {
+    String text = period == 0 ? "" : period == 1 ? "Still" : "Period " + period;
+    if(!text.equals(periodLabel.getText())) {
+      periodLabel.setText(text);
+    }
+  }
+
+  // shows the board size the grid has, e.g. after a snapshot brought its own
+  public void setBoardSize(Configuration.BoardSize boardSize) {
+    if(boardSizeBox.getSelectedItem() != boardSize) boardSizeBox.setSelectedItem(boardSize);
+  }
+
+  // shows the rule the grid runs, e.g. after a pattern brought its own
+  public void setRule(Rule rule) {
+    if(!rule.toString().equals(ruleDropdownBox.getSelectedItem())) {
+      ruleDropdownBox.setSelectedItem(rule.toString());
+    }
   }
 
   public Container getGridContainer() {
@@ -217,6 +540,7 @@ public class GUI {
     return frame;
   }
   public void setSimulationRunning(boolean isRunning) {
+    if(isRunning == isSimulationRunning) return;
     isSimulationRunning = isRunning;
     //
     if(isRunning) {
@@ -225,7 +549,9 @@ public class GUI {
       simulationButton.setText("Start");
     }
 
+    backButton.setEnabled(!isRunning);
     nextButton.setEnabled(!isRunning);
+    jumpButton.setEnabled(!isRunning);
 
   }
 }
@@ -0,0 +1,439 @@
+package gameoflife;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+  Keeps the history of the visible cells so that earlier generations can be shown again. Only grids
+  with edges are recorded: the unbounded ones have cells beyond the visible board, which a restored
+  generation would lose.
+
+  The history is split into segments. Each segment starts with a keyframe and holds one record per
+  generation; a record lists the words (packed like GridSnapshot) that differ from the generation
+  before it, as XOR masks. A keyframe is a record against the empty board. Any recorded generation
+  is rebuilt by applying the records of its segment up to it.
+
+  Comparing the whole board costs as much as the area, so a generation a BitGrid was stepped to from
+  the one recorded before it only compares the tiles the grid reports as changed in that step.
+
+  Once the records take more than the memory budget, the oldest segments are dropped, or written
+  to a spill file if one was given. The segment that is being recorded always stays in memory; if it
+  takes the budget by itself, the next generation starts a new segment, so that it can go as well.
+  The recorder is used from the simulation thread and from the GUI, so all methods are synchronized.
+*/
+public class GenerationRecorder {
+  public static final int DEFAULT_KEYFRAME_INTERVAL = 64;
+  // bytes counted for every record and segment on top of the encoded words
+  private static final int RECORD_OVERHEAD = 16;
+  private static final int SEGMENT_OVERHEAD = 64;
+
+  private static final class Segment {
+    final long firstGeneration;
+    // the encoded records, null once the segment is spilled
+    ArrayList<byte[]> records = new ArrayList<byte[]>();
+    int[] spilledLengths;
+    long spillOffset = -1;
+    // no more records are added, the next generation starts a new segment
+    boolean closed = false;
+
+    Segment(long firstGeneration) {
+      this.firstGeneration = firstGeneration;
+    }
+
+    int size() {
+      return records != null ? records.size() : spilledLengths.length;
+    }
+
+    long lastGeneration() {
+      return firstGeneration + size() - 1;
+    }
+
+    long memory() {
+      if(records == null) return SEGMENT_OVERHEAD;
+      long memory = SEGMENT_OVERHEAD;
+      for (byte[] record : records) memory += record.length + RECORD_OVERHEAD;
+      return memory;
+    }
+  }
+
+  private final int keyframeInterval;
+  private final long maxMemory;
+  private final File spillFile;
+  private RandomAccessFile spill;
+
+  private final ArrayList<Segment> segments = new ArrayList<Segment>();
+  private long memory = 0;
+  private int col = -1, row = -1;
+
+  // the board of generation previousGeneration, to diff the next one against
+  private long[] previous = new long[0];
+  private long[] current = new long[0];
+  private long previousGeneration = -1;
+  // scratch for encoding a record
+  private byte[] encoded = new byte[1024];
+  // scratch for the changed tiles of one tile row
+  private int[] changedTiles = new int[0];
+
+  /**
+    @param maxMemory Bytes the records may take in memory.
+    @param spillFile File the oldest segments are moved to instead of being dropped, or null.
+  */
+  public GenerationRecorder(long maxMemory, File spillFile) {
+    this(DEFAULT_KEYFRAME_INTERVAL, maxMemory, spillFile);
+  }
+
+  public GenerationRecorder(int keyframeInterval, long maxMemory, File spillFile) {
+    if(keyframeInterval < 1) throw new IllegalArgumentException("Keyframe interval must be positive: " + keyframeInterval);
+    this.keyframeInterval = keyframeInterval;
+    this.maxMemory = maxMemory;
+    this.spillFile = spillFile;
+  }
+
+  /**
+    Records the current generation of the grid. Recording a generation that is already in the
+    history forgets it and everything after it first, e.g. after stepping back and going on from there.
+    An unbounded grid is not recorded, and the history is cleared.
+  */
+  public synchronized void record(Grid grid) {
+    if(!(grid instanceof BoundedGrid)) {
+      clear();
+      return;
+    }
+    long generation = grid.getGenerations();
+    if(grid.getColumns() != col || grid.getRows() != row) {
+      // the records only make sense for one board size
+      clear();
+      col = grid.getColumns();
+      row = grid.getRows();
+      previous = new long[GridSnapshot.wordsPerRow(col) * row];
+      current = new long[previous.length];
+    }
+    truncate(generation);
+
+    GridSnapshot.copyCells(grid, current);
+    Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+    boolean continues = last != null && last.lastGeneration() == generation - 1
+      && previousGeneration == generation - 1;
+    if(!continues || last.size() >= keyframeInterval || last.records == null || last.closed) {
+      // a keyframe, against the empty board
+      Arrays.fill(previous, 0L);
+      last = new Segment(generation);
+      segments.add(last);
+      memory += SEGMENT_OVERHEAD;
+    }
+    byte[] record = encode(previous, current);
+    last.records.add(record);
+    memory += record.length + RECORD_OVERHEAD;
+
+    long[] swap = previous;
+    previous = current;
+    current = swap;
+    previousGeneration = generation;
+
+    evict();
+  }
+
+  /**
+    Records the generation the grid was stepped to from the generation recorded last, without any
+    other change in between. On a BitGrid only the tiles that changed in the step are compared,
+    anything else is recorded like record() does.
+  */
+  public synchronized void recordStep(Grid grid) {
+    long generation = grid.getGenerations();
+    Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+    if(!(grid instanceof BitGrid) || grid.getColumns() != col || grid.getRows() != row
+      || previousGeneration != generation - 1 || last == null || last.lastGeneration() != generation - 1
+      || last.records == null || last.size() >= keyframeInterval || last.closed) {
+      record(grid);
+      return;
+    }
+    byte[] record = encodeStep((BitGrid)grid);
+    last.records.add(record);
+    memory += record.length + RECORD_OVERHEAD;
+    previousGeneration = generation;
+    evict();
+  }
+
+  public synchronized boolean isRecorded(long generation) {
+    return findSegment(generation) != null;
+  }
+
+  // the oldest generation that can be rebuilt, or -1 if nothing is recorded
+  public synchronized long getFirstGeneration() {
+    return segments.isEmpty() ? -1 : segments.get(0).firstGeneration;
+  }
+
+  // the newest generation that can be rebuilt, or -1 if nothing is recorded
+  public synchronized long getLastGeneration() {
+    return segments.isEmpty() ? -1 : segments.get(segments.size() - 1).lastGeneration();
+  }
+
+  // bytes the records take in memory
+  public synchronized long getMemoryUsage() {
+    return memory;
+  }
+
+  /**
+    Rebuilds a recorded generation, packed like GridSnapshot.
+
+    @return The cells, or null if the generation is not recorded.
+  */
+  public synchronized long[] reconstruct(long generation) throws IOException {
+    Segment segment = findSegment(generation);
+    if(segment == null) return null;
+    long[] words = new long[GridSnapshot.wordsPerRow(col) * row];
+    int count = (int)(generation - segment.firstGeneration) + 1;
+    if(segment.records != null) {
+      for (int i = 0; i < count; i++) {
+        byte[] record = segment.records.get(i);
+        decode(record, 0, record.length, words);
+      }
+      return words;
+    }
+    int length = 0;
+    for (int i = 0; i < count; i++) length += segment.spilledLengths[i];
+    byte[] bytes = new byte[length];
+    spill.seek(segment.spillOffset);
+    spill.readFully(bytes);
+    for (int i = 0, offset = 0; i < count; offset += segment.spilledLengths[i], i++) {
+      decode(bytes, offset, segment.spilledLengths[i], words);
+    }
+    return words;
+  }
+
+  /**
+    Puts a recorded generation back into the grid, which must have edges and still have the recorded size.
+    The generations after it stay recorded until a different one is recorded in their place.
+
+    @return Whether the generation was recorded.
+  */
+  public synchronized boolean restore(long generation, Grid grid) throws IOException {
+    if(!(grid instanceof BoundedGrid) || grid.getColumns() != col || grid.getRows() != row) return false;
+    long[] words = reconstruct(generation);
+    if(words == null) return false;
+    if(grid instanceof BitGrid) {
+      ((BitGrid)grid).copyFrom(LongBuffer.wrap(words), 0, row);
+    } else {
+      grid.clear();
+      int wordsPerRow = GridSnapshot.wordsPerRow(col);
+      for (int i = 0; i < row; i++) {
+        for (int w = 0; w < wordsPerRow; w++) {
+          for (long word = words[i * wordsPerRow + w]; word != 0; word &= word - 1) {
+            grid.setAlive((w << 6) + Long.numberOfTrailingZeros(word), i, true);
+          }
+        }
+      }
+    }
+    grid.setGenerations(generation);
+    // the next generation is diffed against this one
+    previous = words;
+    previousGeneration = generation;
+    return true;
+  }
+
+  public synchronized void clear() {
+    segments.clear();
+    memory = 0;
+    previousGeneration = -1;
+    if(spill != null) {
+      try {
+        spill.setLength(0);
+      } catch(IOException e) {
+        closeSpill();
+      }
+    }
+  }
+
+  // forgets the given generation and everything after it
+  private void truncate(long generation) {
+    while(!segments.isEmpty()) {
+      Segment last = segments.get(segments.size() - 1);
+      if(last.lastGeneration() < generation) return;
+      if(last.firstGeneration >= generation) {
+        segments.remove(segments.size() - 1);
+        memory -= last.memory();
+        if(last.spillOffset >= 0) shrinkSpill(last.spillOffset);
+        continue;
+      }
+      // the generation is in the middle of a segment in memory, cut it there
+      if(last.records == null) {
+        // spilled segments are not cut, drop the whole one
+        segments.remove(segments.size() - 1);
+        memory -= last.memory();
+        shrinkSpill(last.spillOffset);
+        continue;
+      }
+      while(last.lastGeneration() >= generation) {
+        byte[] record = last.records.remove(last.records.size() - 1);
+        memory -= record.length + RECORD_OVERHEAD;
+      }
+      return;
+    }
+  }
+
+  // moves or drops the oldest segments in memory until the records fit into the budget
+  private void evict() {
+    for (int i = 0; memory > maxMemory && i < segments.size() - 1; i++) {
+      Segment segment = segments.get(i);
+      if(segment.records == null) continue;
+      long freed = segment.memory() - SEGMENT_OVERHEAD;
+      if(spillFile != null && spill(segment)) {
+        memory -= freed;
+      } else {
+        segments.remove(i--);
+        memory -= freed + SEGMENT_OVERHEAD;
+      }
+    }
+    // the segment being recorded is over the budget on its own, it goes once the next one is started
+    if(memory > maxMemory && !segments.isEmpty()) segments.get(segments.size() - 1).closed = true;
+  }
+
+  private boolean spill(Segment segment) {
+    try {
+      if(spill == null) {
+        spill = new RandomAccessFile(spillFile, "rw");
+        spill.setLength(0);
+      }
+      int[] lengths = new int[segment.records.size()];
+      long offset = spill.length();
+      spill.seek(offset);
+      for (int i = 0; i < lengths.length; i++) {
+        byte[] record = segment.records.get(i);
+        spill.write(record);
+        lengths[i] = record.length;
+      }
+      segment.spillOffset = offset;
+      segment.spilledLengths = lengths;
+      segment.records = null;
+      return true;
+    } catch(IOException e) {
+      // without a working spill file the history just gets shorter
+      closeSpill();
+      return false;
+    }
+  }
+
+  private void shrinkSpill(long length) {
+    try {
+      if(spill != null) spill.setLength(length);
+    } catch(IOException e) {
+      closeSpill();
+    }
+  }
+
+  private void closeSpill() {
+    try {
+      if(spill != null) spill.close();
+    } catch(IOException e) {
+      // nothing left to do with it
+    }
+    spill = null;
+    // segments that were in the file cannot be read anymore
+    for (int i = segments.size() - 1; i >= 0; i--) {
+      if(segments.get(i).records == null) memory -= segments.remove(i).memory();
+    }
+  }
+
+  private Segment findSegment(long generation) {
+    int low = 0, high = segments.size() - 1;
+    while(low <= high) {
+      int middle = (low + high) >>> 1;
+      Segment segment = segments.get(middle);
+      if(generation < segment.firstGeneration) {
+        high = middle - 1;
+      } else if(generation > segment.lastGeneration()) {
+        low = middle + 1;
+      } else {
+        return segment;
+      }
+    }
+    return null;
+  }
+
+  /**********************
+    Records: for every word that differs, the distance to the previous such word as a varint,
+    followed by the XOR of the two words, low byte first, without its leading zero bytes.
+    The number of bytes of the XOR is kept in the low 3 bits of the distance.
+  */
+  private byte[] encode(long[] from, long[] to) {
+    int length = 0;
+    int last = -1;
+    for (int i = 0; i < to.length; i++) {
+      long difference = from[i] ^ to[i];
+      if(difference == 0) continue;
+      length = put(length, i - last, difference);
+      last = i;
+    }
+    return Arrays.copyOf(encoded, length);
+  }
+
+  // the words of the changed tiles against previous, which is brought up to date on the way
+  private byte[] encodeStep(BitGrid grid) {
+    int wordsPerRow = GridSnapshot.wordsPerRow(col);
+    int tileHeight = grid.getTileHeight();
+    if(changedTiles.length < wordsPerRow) changedTiles = new int[wordsPerRow];
+    int length = 0;
+    int last = -1;
+    for (int tileRow = 0; tileRow * tileHeight < row; tileRow++) {
+      // a tile is one word wide
+      int changed = 0;
+      for (int w = 0; w < wordsPerRow; w++) {
+        if(grid.isTileChanged(w, tileRow)) changedTiles[changed++] = w;
+      }
+      if(changed == 0) continue;
+      for (int i = tileRow * tileHeight; i < Math.min(row, (tileRow + 1) * tileHeight); i++) {
+        for (int t = 0; t < changed; t++) {
+          int index = i * wordsPerRow + changedTiles[t];
+          long word = grid.getWord(i, changedTiles[t]);
+          long difference = previous[index] ^ word;
+          if(difference == 0) continue;
+          previous[index] = word;
+          length = put(length, index - last, difference);
+          last = index;
+        }
+      }
+    }
+    return Arrays.copyOf(encoded, length);
+  }
+
+  // appends one changed word to the record being encoded, returns its new length
+  private int put(int length, int distance, long difference) {
+    if(encoded.length - length < 20) encoded = Arrays.copyOf(encoded, encoded.length * 2);
+    int bytes = 8 - Long.numberOfLeadingZeros(difference) / 8;
+    long header = ((long)distance << 3) | (bytes - 1);
+    for (; header >= 0x80; header >>>= 7) {
+      encoded[length++] = (byte)(header | 0x80);
+    }
+    encoded[length++] = (byte)header;
+    for (int b = 0; b < bytes; b++) {
+      encoded[length++] = (byte)(difference >>> (b * 8));
+    }
+    return length;
+  }
+
+  // applies the record of the given length at offset to the words
+  private static void decode(byte[] record, int offset, int length, long[] words) {
+    int end = offset + length;
+    int index = -1;
+    for (int position = offset; position < end; ) {
+      long header = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = record[position++];
+        header |= (long)(b & 0x7f) << shift;
+        shift += 7;
+      } while(b < 0);
+      index += (int)(header >>> 3);
+      int bytes = (int)(header & 7) + 1;
+      long difference = 0;
+      for (int i = 0; i < bytes; i++) {
+        difference |= (record[position++] & 0xffL) << (i * 8);
+      }
+      words[index] ^= difference;
+    }
+  }
+}
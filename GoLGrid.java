@@ -5,15 +5,28 @@ import java.util.HashMap;
 import java.util.Set;
 import java.util.Arrays;
 
-public class GoLGrid implements Grid {
+public class GoLGrid implements Grid, BoundedGrid {
   private ArrayList< ArrayList<Cell> > grid;
   private int col, row;
-  private int generations = 0;
+  private long generations = 0;
+  private Rule rule = Rule.CONWAY;
+  private Topology topology = Topology.DEAD;
+  // status of every cell in the next round, kept between calls of next()
+  private boolean shouldCellSurviveNextRound[][];
+  // the current round with a ring of halo cells around it, cell (col, row) is at [row + 1][col + 1]
+  private boolean halo[][];
+  // living cells, on the board and per tile of TILE_WIDTH x TILE_HEIGHT, and what changed last round
+  private static final int TILE_WIDTH = 64, TILE_HEIGHT = 32;
+  private long population = 0;
+  private int tilePopulation[];
+  private long births = 0, deaths = 0;
+  // CycleDetector.hashCell of every living cell XORed together, kept up to date like the population
+  private long cellHash = 0;
 
 
   // Grid construction methods.
   private void addRow() {
-    ArrayList<Cell> column = new ArrayList<Cell>();
+    ArrayList<Cell> column = new ArrayList<Cell>(col);
     for (int i = 0; i < col; i++) {
       column.add(new Cell());
     }
@@ -29,16 +42,16 @@ public class GoLGrid implements Grid {
     return grid.get(row).get(col);
   }
 
+  // counted in the halo, so the neighbours of edge cells need no bounds checks
   private int numAliveNeighbours(int col, int row) {
+    boolean[] above = halo[row], middle = halo[row + 1], below = halo[row + 2];
     int count = 0;
-    for (int di = -1; di <= 1; di++) {
-      for(int dj = -1; dj <= 1; dj++) {
-        if(di == 0 && dj == 0) continue; // the cell itself doens't count.
-        Cell cell = cellAt(col + di, row + dj);
-        // increment the count if a neighbour is found and that it is alive
-        if(cell != null && cell.isAlive) count++;
-      }
+    for (int dj = 0; dj <= 2; dj++) {
+      if(above[col + dj]) count++;
+      if(below[col + dj]) count++;
     }
+    if(middle[col]) count++;
+    if(middle[col + 2]) count++;
     return count;
   }
 
@@ -46,17 +59,45 @@ public class GoLGrid implements Grid {
   // true means this cell is life this round; false otherwise.
   private boolean cellStatusNextRound(int col, int row) {
     int numAlive = numAliveNeighbours(col, row);
-    Cell cell = cellAt(col, row);
-    // the life -> life situation
-    if(cell.isAlive && (numAlive == 2 || numAlive == 3)) {
-      return true;
+    // life -> life if the rule lets it survive, death -> life if it lets it be born
+    return rule.next(halo[row + 1][col + 1], numAlive);
+  }
+
+  // copy the round into the halo buffer and fill the ring around it for the topology
+  private void fillHalo() {
+    for (int i = 0; i < row; i++) {
+      ArrayList<Cell> cells = grid.get(i);
+      boolean[] status = halo[i + 1];
+      for (int j = 0; j < col; j++) {
+        status[j + 1] = cells.get(j).isAlive;
+      }
     }
-    // the death -> life situation
-    if(!cell.isAlive && (numAlive == 3)) {
-      return true;
+    if(row == 0 || col == 0) return;
+    for (int i = -1; i <= row; i++) {
+      // the whole top and bottom row, only the two ends of the others
+      int step = i < 0 || i == row ? 1 : col + 1;
+      for (int j = -1; j <= col; j += step) {
+        int sourceRow = topology.sourceRow(i, row);
+        int sourceCol = topology.sourceColumn(j, i, col, row);
+        halo[i + 1][j + 1] = sourceRow >= 0 && sourceCol >= 0 && grid.get(sourceRow).get(sourceCol).isAlive;
+      }
     }
-    // the cell dies in the next round otherwise.
-    return false;
+  }
+
+  public void setTopology(Topology topology) {
+    this.topology = topology;
+  }
+
+  public Topology getTopology() {
+    return topology;
+  }
+
+  public void setRule(Rule rule) {
+    this.rule = rule;
+  }
+
+  public Rule getRule() {
+    return rule;
   }
 
   public int getColumns() {
@@ -66,44 +107,180 @@ public class GoLGrid implements Grid {
   public int getRows() {
     return row;
   }
-  public int getGenerations() {
+  public long getGenerations() {
     return generations;
   }
+
+  public void setGenerations(long generations) {
+    this.generations = generations;
+  }
   /**
-    Strategy: generate the new grid, copy status from the old one, and replace the reference.
+    Strategy: resize the lists in place, so only the cells that come in are created. The cells that
+    are cut off are taken from the counts first, and the tile counts of the part that stays are
+    moved to where the new tile layout has them.
   */
   public void resize(int cols, int rows) {
-    ArrayList< ArrayList<Cell> > newGrid = new ArrayList< ArrayList<Cell> >();
-    for (int i = 0; i < rows; i++) {
-      ArrayList<Cell> column = new ArrayList<Cell>();
-      for (int j = 0; j < cols; j++) {
-        Cell cell = new Cell();
-        cell.isAlive = isAlive(j,i); // copy status of the old count.
-        column.add(cell);
+    int copyRows = Math.min(row, rows), copyCols = Math.min(col, cols);
+    for (int i = 0; i < row; i++) {
+      ArrayList<Cell> cells = grid.get(i);
+      for (int j = i < copyRows ? copyCols : 0; j < col; j++) {
+        if(cells.get(j).isAlive) {
+          population--;
+          tilePopulation[tileIndex(j, i)]--;
+          cellHash ^= CycleDetector.hashCell(SparseGrid.pack(j, i));
+        }
+      }
+    }
+    int oldTileCols = (col + TILE_WIDTH - 1) / TILE_WIDTH;
+
+    if(rows < row) grid.subList(rows, row).clear();
+    for (ArrayList<Cell> cells : grid) {
+      if(cols < col) {
+        cells.subList(cols, col).clear();
+      } else {
+        cells.ensureCapacity(cols);
+        for (int j = col; j < cols; j++) {
+          cells.add(new Cell());
+        }
       }
-      newGrid.add(column);
     }
-    // replace reference
-    grid = newGrid;
-    // .. and the marked dimensions
     col = cols;
+    for (int i = row; i < rows; i++) {
+      addRow();
+    }
     row = rows;
+
+    int tileCols = (col + TILE_WIDTH - 1) / TILE_WIDTH;
+    int tileRows = (row + TILE_HEIGHT - 1) / TILE_HEIGHT;
+    if(tileCols != oldTileCols || tilePopulation.length != tileCols * tileRows) {
+      int[] tiles = new int[tileCols * tileRows];
+      int copyTileRows = Math.min(tileRows, tilePopulation.length / Math.max(1, oldTileCols));
+      for (int i = 0; i < copyTileRows; i++) {
+        System.arraycopy(tilePopulation, i * oldTileCols, tiles, i * tileCols, Math.min(oldTileCols, tileCols));
+      }
+      tilePopulation = tiles;
+    }
+    births = deaths = 0;
+  }
+
+  private int tileIndex(int col, int row) {
+    return (row / TILE_HEIGHT) * ((this.col + TILE_WIDTH - 1) / TILE_WIDTH) + col / TILE_WIDTH;
+  }
+
+  // counts the living cells from scratch, after the board was replaced
+  private void countPopulation() {
+    tilePopulation = new int[((col + TILE_WIDTH - 1) / TILE_WIDTH) * ((row + TILE_HEIGHT - 1) / TILE_HEIGHT)];
+    population = births = deaths = 0;
+    cellHash = 0;
+    for (int i = 0; i < row; i++) {
+      for (int j = 0; j < col; j++) {
+        if(grid.get(i).get(j).isAlive) {
+          population++;
+          tilePopulation[tileIndex(j, i)]++;
+          cellHash ^= CycleDetector.hashCell(SparseGrid.pack(j, i));
+        }
+      }
+    }
   }
 
+  // the living cells only
   public Collection<Cell> getPopulation() {
-    ArrayList<Cell> collection = new ArrayList<Cell>();
+    ArrayList<Cell> collection = new ArrayList<Cell>((int)population);
     for (ArrayList<Cell> row : grid) {
       for(Cell cell: row) {
-        collection.add(cell);
+        if(cell.isAlive) collection.add(cell);
       }
     }
     return collection;
   }
 
+  /**
+    The bounding box is searched from the outermost tiles that have living cells.
+  */
+  public GridStatistics getStatistics() {
+    int minCol = 0, minRow = 0, maxCol = 0, maxRow = 0;
+    if(population > 0) {
+      int tileCols = (col + TILE_WIDTH - 1) / TILE_WIDTH;
+      int minTileRow = Integer.MAX_VALUE, maxTileRow = -1, minTileCol = Integer.MAX_VALUE, maxTileCol = -1;
+      for (int tile = 0; tile < tilePopulation.length; tile++) {
+        if(tilePopulation[tile] == 0) continue;
+        minTileRow = Math.min(minTileRow, tile / tileCols);
+        maxTileRow = tile / tileCols;
+        minTileCol = Math.min(minTileCol, tile % tileCols);
+        maxTileCol = Math.max(maxTileCol, tile % tileCols);
+      }
+      minRow = minTileRow * TILE_HEIGHT;
+      while(!isRowAlive(minRow)) minRow++;
+      maxRow = Math.min(row, (maxTileRow + 1) * TILE_HEIGHT) - 1;
+      while(!isRowAlive(maxRow)) maxRow--;
+      minCol = minTileCol * TILE_WIDTH;
+      while(!isColumnAlive(minCol, minRow, maxRow)) minCol++;
+      maxCol = Math.min(col, (maxTileCol + 1) * TILE_WIDTH) - 1;
+      while(!isColumnAlive(maxCol, minRow, maxRow)) maxCol--;
+    }
+    return new GridStatistics(generations, population, births, deaths, minCol, minRow, maxCol, maxRow,
+      col, row, TILE_WIDTH, TILE_HEIGHT, tilePopulation.clone());
+  }
+
+  /**
+    Blocks of whole tiles are added up from the tile populations, smaller ones cell by cell.
+  */
+  public void countBlocks(long col, long row, int level, int cols, int rows, int[] counts) {
+    Arrays.fill(counts, 0, cols * rows, 0);
+    // the part of the window that is on the board
+    int fromCol = (int)Math.min(this.col, Math.max(0, col));
+    int toCol = (int)Math.max(fromCol, Math.min(this.col, col + ((long)cols << level)));
+    int fromRow = (int)Math.min(this.row, Math.max(0, row));
+    int toRow = (int)Math.max(fromRow, Math.min(this.row, row + ((long)rows << level)));
+    if(fromCol == toCol || fromRow == toRow) return; // the tile of the board edge may lie left of the window
+    if((1 << level) >= TILE_WIDTH) {
+      // the window is aligned to the blocks, so every tile in it lies in one block
+      int tileCols = (this.col + TILE_WIDTH - 1) / TILE_WIDTH;
+      for (int i = fromRow / TILE_HEIGHT; i * TILE_HEIGHT < toRow; i++) {
+        int blockRow = (int)(((long)i * TILE_HEIGHT - row) >> level) * cols;
+        for (int j = fromCol / TILE_WIDTH; j * TILE_WIDTH < toCol; j++) {
+          counts[blockRow + (int)(((long)j * TILE_WIDTH - col) >> level)] += tilePopulation[i * tileCols + j];
+        }
+      }
+      return;
+    }
+    for (int i = fromRow; i < toRow; i++) {
+      ArrayList<Cell> cells = grid.get(i);
+      int blockRow = (int)((i - row) >> level) * cols;
+      for (int j = fromCol; j < toCol; j++) {
+        if(cells.get(j).isAlive) counts[blockRow + (int)((j - col) >> level)]++;
+      }
+    }
+  }
+
+  private boolean isRowAlive(int row) {
+    for (Cell cell : grid.get(row)) {
+      if(cell.isAlive) return true;
+    }
+    return false;
+  }
+
+  private boolean isColumnAlive(int col, int fromRow, int toRow) {
+    for (int i = fromRow; i <= toRow; i++) {
+      if(grid.get(i).get(col).isAlive) return true;
+    }
+    return false;
+  }
+
   public void setAlive(int col, int row, boolean alive) {
     Cell cell = cellAt(col, row);
-    if(cell == null) return;
+    if(cell == null || cell.isAlive == alive) return;
     cell.isAlive = alive;
+    population += alive ? 1 : -1;
+    tilePopulation[tileIndex(col, row)] += alive ? 1 : -1;
+    cellHash ^= CycleDetector.hashCell(SparseGrid.pack(col, row));
+  }
+
+  /**
+    Hash of the living cells for the CycleDetector, updated with every cell that changes.
+  */
+  public long getCellHash() {
+    return cellHash;
   }
 
   public boolean isAlive(int col, int row) {
@@ -113,40 +290,73 @@ public class GoLGrid implements Grid {
   }
 
   public void clear() {
-    for (Cell cell: getPopulation()) {
-      cell.isAlive = false;
+    for (ArrayList<Cell> row : grid) {
+      for(Cell cell: row) {
+        cell.isAlive = false;
+      }
     }
+    Arrays.fill(tilePopulation, 0);
+    population = births = deaths = 0;
+    cellHash = 0;
     generations = 0;
   }
 
   public void next() {
-    // the default primitive boolean is false.
-    boolean shouldCellSurviveNextRound[][] = new boolean[row][col];
+    // reuse the scratch buffers as long as the board fits into them and they are not much larger,
+    // the halo ring is filled in anew every round wherever it is
+    if(shouldCellSurviveNextRound == null
+      || shouldCellSurviveNextRound.length < row
+      || shouldCellSurviveNextRound.length / 4 > row
+      || (row > 0 && shouldCellSurviveNextRound[0].length < col)) {
+      shouldCellSurviveNextRound = new boolean[row][col];
+      halo = new boolean[row + 2][col + 2];
+    }
+    fillHalo();
     // evaluate whether the cell on each location should be alive next round
     for (int i = 0; i < row; i++) {
       for(int j = 0; j < col; j++) {
         shouldCellSurviveNextRound[i][j] = cellStatusNextRound(j, i);
       }
     }
-    // then apply it to the grid.
+    // then apply it to the grid, the address is known to be valid here,
+    // and count what changed on the way
+    long born = 0, died = 0;
+    long hash = cellHash;
     for(int i = 0; i < row; i++) {
+      ArrayList<Cell> cells = grid.get(i);
+      boolean[] status = shouldCellSurviveNextRound[i];
       for(int j = 0; j < col; j++) {
-        setAlive(j, i, shouldCellSurviveNextRound[i][j]);
+        Cell cell = cells.get(j);
+        if(cell.isAlive != status[j]) {
+          cell.isAlive = status[j];
+          hash ^= CycleDetector.hashCell(SparseGrid.pack(j, i));
+          if(status[j]) {
+            born++;
+            tilePopulation[tileIndex(j, i)]++;
+          } else {
+            died++;
+            tilePopulation[tileIndex(j, i)]--;
+          }
+        }
       }
     }
+    births = born;
+    deaths = died;
+    population += born - died;
+    cellHash = hash;
     // increment the generation count
     generations++;
   }
 
   public String toString() {
-    String rep = "";
+    StringBuilder rep = new StringBuilder((col + 1) * row);
     for (ArrayList<Cell> row: grid) {
       for(Cell cell: row) {
-        rep += cell.toString();
+        rep.append(cell.isAlive ? 'X' : '.');
       }
-      rep += '\n'; // new line for a new row.
+      rep.append('\n'); // new line for a new row.
     }
-    return rep;
+    return rep.toString();
   }
   public GoLGrid(int col, int row) {
     this.col = col;
@@ -155,6 +365,7 @@ public class GoLGrid implements Grid {
     for(int i = 0 ; i < row; i++) {
       addRow();
     }
+    countPopulation();
   }
 
 
@@ -288,12 +499,12 @@ public class GoLGrid implements Grid {
     return null;
   }
 
-  private Integer[] getStartCoordinateOfShape(GoLGrid.Shape shape) {
+  private static Integer[] getStartCoordinateOfShape(Grid grid, GoLGrid.Shape shape) {
     // prepare the "CORNER" of the shape. which is the upper-left corner of the shape.
     // because later the coordinates of the shape needs to be off-set
     Integer[] requiredDimension = sizeConstraints.get(shape);
-    int col = getColumns();
-    int row = getRows();
+    int col = grid.getColumns();
+    int row = grid.getRows();
 
     if(requiredDimension[0] > col || requiredDimension[1] > row) {
       System.out.println("Given shape cannot be fit into current board.");
@@ -321,22 +532,25 @@ public class GoLGrid implements Grid {
   }
   // return the "Error message" that may arise when deploying the shape
   public String shape(String shapeName) {
+    return shape(this, shapeName);
+  }
+
+  // same as above, but for any grid implementation
+  public static String shape(Grid grid, String shapeName) {
     GoLGrid.Shape shape = shapeFromString(shapeName);
     if(shape == null) {
       return "Unrecognized shape name";
     }
 
-    Integer[] startCoordinates = getStartCoordinateOfShape(shape);
+    Integer[] startCoordinates = getStartCoordinateOfShape(grid, shape);
     if (startCoordinates == null) {
       return "Shape does not fit into the grid"; // the shape does not fit into the size of the board.
     }
     // coordaintes are there, proceed to clearing the grid, and populate on it.
-    clear();
+    grid.clear();
     ArrayList<Integer[]> shapeAliveLocation = liveCoordinates.get(shape);
-    System.out.println("start coord" + startCoordinates[0] + " " + startCoordinates[1]);
-    System.out.println("Grid size: " + col + " " + row);
     for(Integer[] coordinates: shapeAliveLocation) {
-      setAlive(
+      grid.setAlive(
         coordinates[0] + startCoordinates[0],
         coordinates[1] + startCoordinates[1],
         true
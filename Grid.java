@@ -55,6 +55,28 @@ public interface Grid {
      */
     Collection<Cell> getPopulation();
 
+    /**
+     * Gets the population, births, deaths, bounding box and population per tile of the current
+     * generation. The grids keep track of the counts while stepping and editing, so this does not
+     * scan the whole board.
+     *
+     * @return The statistics of the current generation.
+     */
+    GridStatistics getStatistics();
+
+    /**
+     * Counts the living cells in a window of square blocks, e.g. to draw more cells than there
+     * are pixels. Cells beyond the edges of a bounded board count as dead.
+     *
+     * @param col x-position of the top left cell of the window, a multiple of the block width.
+     * @param row y-position of the top left cell of the window, a multiple of the block width.
+     * @param level The blocks are 2^level cells wide and high.
+     * @param cols Number of blocks in x direction.
+     * @param rows Number of blocks in y direction.
+     * @param counts Receives the living cells of the block in column j and row i at i * cols + j.
+     */
+    void countBlocks(long col, long row, int level, int cols, int rows, int[] counts);
+
     /**
      * Clears the grid.
      */
@@ -70,7 +92,30 @@ public interface Grid {
      *
      * @return The current generation.
      */
-    int getGenerations();
+    long getGenerations();
+
+    /**
+     * Sets the generation counter, e.g. when a saved game is restored.
+     *
+     * @param generations The current generation.
+     */
+    void setGenerations(long generations);
+
+    /**
+     * Sets the rule the next generations are computed with. Grids start with Conway's rule.
+     *
+     * @param rule The Life-like rule.
+     * @throws IllegalArgumentException If the grid cannot run the rule, e.g. a rule with B0
+     *         on an unbounded grid.
+     */
+    void setRule(Rule rule);
+
+    /**
+     * Gets the rule the next generations are computed with.
+     *
+     * @return The rule.
+     */
+    Rule getRule();
 
     /**
      * Gets the string representation of the current game state.
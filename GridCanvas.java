@@ -0,0 +1,321 @@
+package gameoflife;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+  Draws the whole grid into one image instead of using a button per cell.
+  The pixels are written straight into the int[] raster of the image, and mouse positions are
+  turned into cells arithmetically. Cells are painted through the GridDragManager, which hands
+  the cells of a frame back to be drawn at once.
+
+  The canvas draws snapshots handed over by the render loop. It keeps a copy of the cells it shows,
+  so that a new snapshot only redraws the cells that differ.
+
+  What is drawn is the part of the plane under a viewport: the mouse wheel zooms around the cursor,
+  dragging with the right or middle button pans. Once cells get smaller than a pixel the snapshots
+  hold blocks of cells, which are drawn brighter the more of their cells are alive.
+*/
+public class GridCanvas extends JComponent {
+  private static final long serialVersionUID = 1L;
+
+  // cells get a border from this many pixels on
+  private static final double MIN_BORDER_CELL_SIZE = 4;
+  // one notch of the mouse wheel zooms by this factor
+  private static final double ZOOM_STEP = Math.pow(2, 0.25);
+
+  private Controller controller;
+
+  private BufferedImage image;
+  private int[] pixels;
+  // the board and cell size the viewport was last put back to
+  private int col = 0, row = 0;
+  private int homeCellSize = 0;
+  private Viewport viewport;
+  // the snapshot that is on screen, with its cells packed like in GridSnapshot on level 0
+  private GridSnapshot shown;
+  private long[] shownWords;
+  private long shownSequence = -1;
+
+  // where the last pan event was, null when the view is not being dragged
+  private Point panFrom = null;
+
+  public GridCanvas(Controller controller) {
+    this.controller = controller;
+    setOpaque(true);
+
+    MouseAdapter mouseHandler = new MouseAdapter() {
+      @Override
+      public void mousePressed(MouseEvent e) {
+        // the left button paints cells
+        if(e.getButton() != MouseEvent.BUTTON1) panFrom = e.getPoint();
+      }
+
+      @Override
+      public void mouseDragged(MouseEvent e) {
+        if(panFrom == null) return;
+        if(viewport != null) setViewport(viewport.panBy(e.getX() - panFrom.x, e.getY() - panFrom.y));
+        panFrom = e.getPoint();
+      }
+
+      @Override
+      public void mouseReleased(MouseEvent e) {
+        if(e.getButton() != MouseEvent.BUTTON1) panFrom = null;
+      }
+
+      @Override
+      public void mouseWheelMoved(MouseWheelEvent e) {
+        if(viewport == null) return;
+        setViewport(viewport.zoomAt(e.getX(), e.getY(), Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation())));
+      }
+    };
+    addMouseListener(mouseHandler);
+    addMouseMotionListener(mouseHandler);
+    addMouseWheelListener(mouseHandler);
+
+    addComponentListener(new ComponentAdapter() {
+      @Override
+      public void componentResized(ComponentEvent e) {
+        if(viewport != null) setViewport(viewport.withSize(getWidth(), getHeight()));
+      }
+    });
+  }
+
+  /**********************
+    Geometry, the snapshot on screen is drawn through the viewport it was taken for
+  */
+  public Viewport getViewport() {
+    return viewport;
+  }
+
+  // the snapshots follow the viewport, the next one arrives with the next frame
+  private void setViewport(Viewport viewport) {
+    this.viewport = viewport;
+    controller.setViewport(viewport);
+  }
+
+  // the cell under the given point, which may lie beyond the board, or null if there is none
+  public Point cellAt(int x, int y) {
+    if(viewport == null) return null;
+    long cellCol = viewport.columnAt(x), cellRow = viewport.rowAt(y);
+    if(cellCol != (int)cellCol || cellRow != (int)cellRow) return null;
+    return new Point((int)cellCol, (int)cellRow);
+  }
+
+  /**
+    Draws cells that were just painted, with one repaint of the rectangle they cover. Below one
+    pixel per cell the blocks are only known to the grid, they are drawn with the next snapshot.
+  */
+  public void showEdits(long[] cells, int count, boolean alive) {
+    int left = Integer.MAX_VALUE, top = Integer.MAX_VALUE, right = Integer.MIN_VALUE, bottom = Integer.MIN_VALUE;
+    synchronized(this) {
+      if(image == null || shown == null || shownWords == null) return;
+      Viewport viewport = shown.getViewport();
+      for (int k = 0; k < count; k++) {
+        long cellCol = SparseGrid.colOf(cells[k]), cellRow = SparseGrid.rowOf(cells[k]);
+        long j = cellCol - shown.getWindowColumn(), i = cellRow - shown.getWindowRow();
+        if(j < 0 || j >= shown.getColumns() || i < 0 || i >= shown.getRows()) continue;
+        int index = (int)i * shown.getWordsPerRow() + (int)(j >>> 6);
+        if(alive) {
+          shownWords[index] |= 1L << j;
+        } else {
+          shownWords[index] &= ~(1L << j);
+        }
+        fillCell(viewport, cellCol, cellRow, alive);
+        left = Math.min(left, viewport.toX(cellCol));
+        right = Math.max(right, viewport.toX(cellCol + 1));
+        top = Math.min(top, viewport.toY(cellRow));
+        bottom = Math.max(bottom, viewport.toY(cellRow + 1));
+      }
+    }
+    if(left < right) repaint(left, top, right - left, bottom - top);
+  }
+
+
+  /**********************
+    Raster
+  */
+  // makes sure the image covers the component, returns whether it had to be recreated
+  private boolean ensureImage() {
+    int width = Math.max(1, getWidth());
+    int height = Math.max(1, getHeight());
+    if(image != null && image.getWidth() == width && image.getHeight() == height) return false;
+    image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+    return true;
+  }
+
+  // fills [left, right) x [top, bottom) as far as it is on the image
+  private void fillRect(int left, int top, int right, int bottom, int rgb) {
+    int width = image.getWidth();
+    left = Math.max(0, left);
+    right = Math.min(width, right);
+    top = Math.max(0, top);
+    bottom = Math.min(image.getHeight(), bottom);
+    if(left >= right) return;
+    for (int y = top; y < bottom; y++) {
+      Arrays.fill(pixels, y * width + left, y * width + right, rgb);
+    }
+  }
+
+  // draws a cell on level 0
+  private void fillCell(Viewport viewport, long cellCol, long cellRow, boolean alive) {
+    int border = viewport.getCellSize() >= MIN_BORDER_CELL_SIZE ? Configuration.CELL_BORDER_WIDTH : 0;
+    int left = viewport.toX(cellCol), right = viewport.toX(cellCol + 1);
+    int top = viewport.toY(cellRow), bottom = viewport.toY(cellRow + 1);
+    fillRect(left + border, top + border, right - border, bottom - border, Configuration.getCellColor(alive).getRGB());
+  }
+
+  // a block with count living cells, between the colours of dead and living cells
+  private static int shade(int count, int level) {
+    int dead = Configuration.COLOR_CELL_DEAD.getRGB();
+    if(count == 0) return dead;
+    int alive = Configuration.COLOR_CELL_ALIVE.getRGB();
+    // a single living cell already shows
+    double share = 0.25 + 0.75 * count / (double)(1L << (2 * level));
+    int rgb = 0;
+    for (int shift = 0; shift < 24; shift += 8) {
+      int from = (dead >> shift) & 0xff, to = (alive >> shift) & 0xff;
+      rgb |= (int)Math.round(from + (to - from) * share) << shift;
+    }
+    return rgb;
+  }
+
+  /**
+    Sets the size of the board. The viewport goes back to showing the board from its top left
+    corner when the board or the chosen cell size changed.
+  */
+  public void setGridSize(int col, int row) {
+    int cellSize = Configuration.cellDimension().width;
+    synchronized(this) {
+      if(viewport != null && col == this.col && row == this.row && cellSize == homeCellSize) return;
+      this.col = col;
+      this.row = row;
+      homeCellSize = cellSize;
+    }
+    setViewport(Viewport.home(col, row, cellSize, getWidth(), getHeight()));
+  }
+
+  /**
+    Shows a snapshot, redrawing only the cells that differ from what is on screen.
+  */
+  public void show(GridSnapshot snapshot) {
+    if(snapshot.getViewport() == null) return; // taken for the cell buttons
+    synchronized(this) {
+      if(ensureImage() || shown == null || shownWords == null || snapshot.getLevel() > 0
+        || !snapshot.getViewport().equals(shown.getViewport())
+        || snapshot.getBoardColumns() != shown.getBoardColumns() || snapshot.getBoardRows() != shown.getBoardRows()) {
+        shown = snapshot;
+        shownWords = null;
+        if(snapshot.getLevel() == 0) {
+          shownWords = new long[snapshot.getWordsPerRow() * snapshot.getRows()];
+          for (int i = 0; i < shownWords.length; i++) {
+            shownWords[i] = snapshot.getWord(i);
+          }
+        }
+        shownSequence = snapshot.getSequence();
+        renderCells();
+        repaint();
+        return;
+      }
+      shown = snapshot;
+      int cols = snapshot.getColumns(), rows = snapshot.getRows();
+      // the hints are only good if the screen shows the snapshot they are relative to
+      if(snapshot.hasChangeHints() && snapshot.getBasis() == shownSequence) {
+        // the tiles of the board that overlap the window
+        int tileWidth = snapshot.getTileWidth(), tileHeight = snapshot.getTileHeight();
+        long windowCol = snapshot.getWindowColumn(), windowRow = snapshot.getWindowRow();
+        long fromTileCol = Math.max(0, Math.floorDiv(windowCol, tileWidth));
+        long toTileCol = Math.min((snapshot.getBoardColumns() - 1) / tileWidth, Math.floorDiv(windowCol + cols - 1, tileWidth));
+        long fromTileRow = Math.max(0, Math.floorDiv(windowRow, tileHeight));
+        long toTileRow = Math.min((snapshot.getBoardRows() - 1) / tileHeight, Math.floorDiv(windowRow + rows - 1, tileHeight));
+        for (long tileRow = fromTileRow; tileRow <= toTileRow; tileRow++) {
+          for (long tileCol = fromTileCol; tileCol <= toTileCol; tileCol++) {
+            if(!snapshot.isTileChanged((int)tileCol, (int)tileRow)) continue;
+            showRegion(snapshot,
+              (int)Math.max(0, tileCol * tileWidth - windowCol), (int)Math.min(cols, (tileCol + 1) * tileWidth - windowCol),
+              (int)Math.max(0, tileRow * tileHeight - windowRow), (int)Math.min(rows, (tileRow + 1) * tileHeight - windowRow));
+          }
+        }
+      } else {
+        showRegion(snapshot, 0, cols, 0, rows);
+      }
+      shownSequence = snapshot.getSequence();
+    }
+  }
+
+  // redraws the cells of the window in columns [fromCol, toCol) and rows [fromRow, toRow) that differ from the snapshot
+  private void showRegion(GridSnapshot snapshot, int fromCol, int toCol, int fromRow, int toRow) {
+    if(fromCol >= toCol || fromRow >= toRow) return;
+    int wordsPerRow = snapshot.getWordsPerRow();
+    int minCol = Integer.MAX_VALUE, maxCol = -1, minRow = Integer.MAX_VALUE, maxRow = -1;
+    for (int i = fromRow; i < toRow; i++) {
+      for (int w = fromCol >>> 6; w <= (toCol - 1) >>> 6; w++) {
+        int index = i * wordsPerRow + w;
+        long word = snapshot.getWord(index);
+        long difference = word ^ shownWords[index];
+        if(difference == 0) continue;
+        shownWords[index] = word;
+        // the word may reach into the neighbouring regions, draw those cells as well
+        for (; difference != 0; difference &= difference - 1) {
+          int j = (w << 6) + Long.numberOfTrailingZeros(difference);
+          fillCell(snapshot.getViewport(), snapshot.getWindowColumn() + j, snapshot.getWindowRow() + i, (word & (1L << j)) != 0);
+          minCol = Math.min(minCol, j);
+          maxCol = Math.max(maxCol, j);
+        }
+        minRow = Math.min(minRow, i);
+        maxRow = i;
+      }
+    }
+    if(maxRow < 0) return;
+    Viewport viewport = snapshot.getViewport();
+    int left = viewport.toX(snapshot.getWindowColumn() + minCol), top = viewport.toY(snapshot.getWindowRow() + minRow);
+    repaint(left, top, viewport.toX(snapshot.getWindowColumn() + maxCol + 1) - left,
+      viewport.toY(snapshot.getWindowRow() + maxRow + 1) - top);
+  }
+
+  // redraws everything that is on screen, e.g. after the image was recreated
+  private void renderCells() {
+    Arrays.fill(pixels, Configuration.COLOR_CELL_BORDER.getRGB());
+    if(shown == null) return;
+    Viewport viewport = shown.getViewport();
+    int level = shown.getLevel();
+    long size = 1L << level;
+    // a bounded board ends at its edges, there is nothing to draw beyond them
+    long minCol = Long.MIN_VALUE, minRow = Long.MIN_VALUE, maxCol = Long.MAX_VALUE, maxRow = Long.MAX_VALUE;
+    if(shown.isBounded()) {
+      minCol = minRow = 0;
+      maxCol = shown.getBoardColumns();
+      maxRow = shown.getBoardRows();
+    }
+    for (int i = 0; i < shown.getRows(); i++) {
+      long cellRow = shown.getWindowRow() + (i << level);
+      if(cellRow + size <= minRow || cellRow >= maxRow) continue;
+      int top = viewport.toY(Math.max(minRow, cellRow)), bottom = viewport.toY(Math.min(maxRow, cellRow + size));
+      for (int j = 0; j < shown.getColumns(); j++) {
+        long cellCol = shown.getWindowColumn() + (j << level);
+        if(cellCol + size <= minCol || cellCol >= maxCol) continue;
+        if(level == 0) {
+          fillCell(viewport, cellCol, cellRow, (shownWords[i * shown.getWordsPerRow() + (j >>> 6)] & (1L << j)) != 0);
+        } else {
+          fillRect(viewport.toX(Math.max(minCol, cellCol)), top,
+            viewport.toX(Math.min(maxCol, cellCol + size)), bottom, shade(shown.getCount(j, i), level));
+        }
+      }
+    }
+  }
+
+  @Override
+  protected void paintComponent(Graphics g) {
+    synchronized(this) {
+      if(ensureImage()) {
+        // the component was resized before the next snapshot arrived, draw what is there
+        renderCells();
+      }
+      g.drawImage(image, 0, 0, null);
+    }
+  }
+}
@@ -4,15 +4,35 @@ import javax.swing.*;
 import java.awt.*;
 import javax.swing.event.*;
 import java.awt.event.*;
+import java.util.Arrays;
 
 
-// class for the pane-dragging functionality
+/**
+  Turns presses and drags of the left button into cell edits, for the cell buttons as well as the
+  canvas. One instance listens to all of them, and the cell under the cursor is worked out from
+  the position instead of looking up the component under it.
+
+  The mouse reports far fewer positions than a fast drag crosses cells, so the cells on the line
+  between two positions are filled in (Bresenham). The edits are collected and only applied once
+  per frame by the render loop, with one repaint of the rectangle they cover.
+*/
 public class GridDragManager extends MouseInputAdapter {
+  // longer segments, e.g. zoomed far out on an unbounded plane, only paint their end
+  private static final int MAX_SEGMENT = 1 << 16;
 
-  volatile Boolean shouldCellUnderDragBeAlive = null;
   Controller controller;
   GUI gui;
 
+  // state the current stroke paints, null when nothing is being dragged
+  private Boolean shouldCellUnderDragBeAlive = null;
+  // the cell the stroke was last at
+  private int lastCol, lastRow;
+  // cells that are yet to be painted, packed like SparseGrid.pack()
+  private long[] pending = new long[256];
+  private int pendingCount = 0;
+  // the state the pending cells are painted with
+  private boolean pendingAlive;
+
   GridDragManager(Controller controller) {
     this.controller = controller;
   }
@@ -20,70 +40,93 @@ public class GridDragManager extends MouseInputAdapter {
     this.gui = gui;
   }
 
-  // common method for extracting the cell button under the cursor, or null if it does not exist
-  private CellButton getCellButtonUnderCursor(MouseEvent e) {
+  // the cell under the cursor, which may lie beyond the board, or null if there is none
+  private Point cellUnderCursor(MouseEvent e) {
     if(gui == null) return null;
-    Container gridContainer = gui.getGridContainer();
-    Point mouseLocation = e.getLocationOnScreen();
-    Component component = gridContainer.getComponentAt(mouseLocation);
-    if(component == null || !(component instanceof CellButton)) return null; // nothing under the cursor or it is not a cellButton
-    CellButton cellButton = (CellButton)component;
-    return cellButton;
+    Point point = SwingUtilities.convertPoint(e.getComponent(), e.getPoint(), gui.getGridContainer());
+    return gui.cellAt(point.x, point.y);
   }
 
-  // deal with the initial click, the task is to determine and set the boolean flag
+  // the pressed cell is flipped, the rest of the stroke paints the same state
   @Override
   public void mousePressed(MouseEvent e) {
-    System.out.println("mouse pressed");
-    CellButton cellButton = getCellButtonUnderCursor(e);
-    if(cellButton == null) return;
-    Integer[] coord = cellButton.getCoordinate();
-    int col = coord[0];
-    int row = coord[1];
-    // set the flag based on the stored information of that cell button
-    shouldCellUnderDragBeAlive = controller.isAlive(col, row);
-
+    if(!SwingUtilities.isLeftMouseButton(e)) return;
+    Point cell = cellUnderCursor(e);
+    if(cell == null || !controller.isOnBoard(cell.x, cell.y)) return;
+    // the published generation, the grid itself may be locked by a generation that takes long
+    boolean alive = !controller.isPublishedAlive(cell.x, cell.y);
+    // a stroke of the other state is waiting for the frame, it goes first
+    if(pendingCount > 0 && pendingAlive != alive) applyEdits();
+    shouldCellUnderDragBeAlive = alive;
+    pendingAlive = alive;
+    lastCol = cell.x;
+    lastRow = cell.y;
+    add(cell.x, cell.y);
   }
-  // reset the flag when mouse is released
+
+  // the pending cells are still painted with the next frame
   @Override
   public void mouseReleased(MouseEvent e) {
-    System.out.println("mouse released");
-    shouldCellUnderDragBeAlive = null;
+    if(SwingUtilities.isLeftMouseButton(e)) shouldCellUnderDragBeAlive = null;
   }
 
   @Override
   public void mouseDragged(MouseEvent e) {
-    System.out.println("mouse dragged");
-    // find out what is under the mouse
-    if(shouldCellUnderDragBeAlive == null) return; // what?
-
-    CellButton cellButton = getCellButtonUnderCursor(e);
-    if(cellButton == null) return;
-
-    // take out the coordinates
-    Integer[] coord = cellButton.getCoordinate();
-    int col = coord[0];
-    int row = coord[1];
-
-    // modify the model
-    controller.setAlive(col, row, shouldCellUnderDragBeAlive);
-    // notify GUI to update
-    controller.refreshGridDimension();
+    if(shouldCellUnderDragBeAlive == null) return;
+    Point cell = cellUnderCursor(e);
+    if(cell == null || (cell.x == lastCol && cell.y == lastRow)) return;
+    if(Math.max(Math.abs((long)cell.x - lastCol), Math.abs((long)cell.y - lastRow)) > MAX_SEGMENT) {
+      add(cell.x, cell.y);
+    } else {
+      addLine(lastCol, lastRow, cell.x, cell.y);
+    }
+    lastCol = cell.x;
+    lastRow = cell.y;
   }
 
-  public void startTracking(boolean alive) {
-    shouldCellUnderDragBeAlive = alive;
+  // the cells from (col0, row0), which was added before, to (col1, row1)
+  private void addLine(int col0, int row0, int col1, int row1) {
+    int dx = Math.abs(col1 - col0), dy = -Math.abs(row1 - row0);
+    int stepX = col0 < col1 ? 1 : -1, stepY = row0 < row1 ? 1 : -1;
+    int error = dx + dy;
+    int col = col0, row = row0;
+    while(col != col1 || row != row1) {
+      int error2 = 2 * error;
+      if(error2 >= dy) {
+        error += dy;
+        col += stepX;
+      }
+      if(error2 <= dx) {
+        error += dx;
+        row += stepY;
+      }
+      add(col, row);
+    }
   }
 
-  public void stopTracking() {
-    shouldCellUnderDragBeAlive = null;
+  private void add(int col, int row) {
+    if(pendingCount == pending.length) {
+      pending = Arrays.copyOf(pending, 2 * pending.length);
+    }
+    pending[pendingCount++] = SparseGrid.pack(col, row);
   }
 
-  // method for the cellButton to report themselves being hovered by the mouse.
-  public void reportMouseOver(int col, int row) {
-    if(shouldCellUnderDragBeAlive != null) {
-      controller.setAlive(col, row, shouldCellUnderDragBeAlive);
-      controller.refreshGridDimension();
+  /**
+    Called by the render loop once per frame: hands the cells collected since the last frame to the
+    controller, which queues them for the grid, and has the view draw them right away in one go.
+  */
+  public void applyEdits() {
+    if(pendingCount == 0) return;
+    int count = 0;
+    for (int i = 0; i < pendingCount; i++) {
+      if(controller.isOnBoard(SparseGrid.colOf(pending[i]), SparseGrid.rowOf(pending[i]))) pending[count++] = pending[i];
     }
+    pendingCount = 0;
+    if(count == 0) return;
+    // the queue keeps the array, the next frame starts a new one
+    long[] cells = pending;
+    pending = new long[Math.max(256, Integer.highestOneBit(count))];
+    controller.submitEdits(cells, count, pendingAlive);
+    if(gui != null) gui.showEdits(cells, count, pendingAlive);
   }
 }
@@ -0,0 +1,19 @@
+package gameoflife;
+
+// the grid implementations a game can run on
+public enum GridEngine {
+  CLASSIC, BITS, HASHLIFE, SPARSE;
+
+  public Grid create(int col, int row) {
+    switch(this) {
+      case CLASSIC:
+        return new GoLGrid(col, row);
+      case HASHLIFE:
+        return new HashLifeGrid(col, row);
+      case SPARSE:
+        return new SparseGrid(col, row);
+      default:
+        return new BitGrid(col, row);
+    }
+  }
+}
@@ -0,0 +1,231 @@
+package gameoflife;
+import java.util.Arrays;
+
+/**
+  Immutable copy of the visible cells of a grid at one generation, handed from the simulation
+  thread to the view. The cells are packed 64 to a long, row by row: cell (col, row) is bit col % 64
+  of word row * getWordsPerRow() + col / 64; bits past the last column are 0.
+
+  Without a viewport the snapshot holds the whole board. With one it holds the window of the plane
+  under the viewport instead, with the cells relative to getWindowColumn() and getWindowRow(); when
+  the cells are smaller than a pixel it holds the living cells per block of 2^getLevel() cells
+  rather than the cells themselves.
+
+  A snapshot may carry a hint which tiles changed since the snapshot with sequence number getBasis(),
+  so that a view showing exactly that snapshot only needs to compare those tiles.
+*/
+public final class GridSnapshot {
+  // the size of the window, in cells or blocks
+  private final int col, row;
+  private final int wordsPerRow;
+  private final long generation;
+  private final long[] words;
+  // living cells per block, row by row, instead of the words when the level is above 0
+  private final int[] counts;
+  private final Viewport viewport;
+  private final long windowCol, windowRow;
+  private final int level;
+  private final int boardCol, boardRow;
+  private final boolean bounded;
+  private final long sequence;
+  // changed tiles since the snapshot `basis`, or null if unknown
+  private final boolean[] changedTiles;
+  private final int tileWidth, tileHeight;
+  private final long basis;
+  private final GridStatistics statistics;
+
+  private GridSnapshot(Grid grid, Viewport viewport, long[] words, int[] counts, long sequence,
+      boolean[] changedTiles, int tileWidth, int tileHeight, long basis) {
+    this.viewport = viewport;
+    this.boardCol = grid.getColumns();
+    this.boardRow = grid.getRows();
+    this.bounded = grid instanceof BoundedGrid;
+    if(viewport == null) {
+      this.col = boardCol;
+      this.row = boardRow;
+      this.windowCol = this.windowRow = 0;
+      this.level = 0;
+    } else {
+      this.col = viewport.getWindowColumns();
+      this.row = viewport.getWindowRows();
+      this.windowCol = viewport.getWindowColumn();
+      this.windowRow = viewport.getWindowRow();
+      this.level = viewport.getLevel();
+    }
+    this.wordsPerRow = wordsPerRow(col);
+    this.generation = grid.getGenerations();
+    this.words = words;
+    this.counts = counts;
+    this.sequence = sequence;
+    this.changedTiles = changedTiles;
+    this.tileWidth = tileWidth;
+    this.tileHeight = tileHeight;
+    this.basis = basis;
+    this.statistics = grid.getStatistics();
+  }
+
+  static int wordsPerRow(int col) {
+    return (col + 63) >>> 6;
+  }
+
+  /**
+    Copies the visible cells of a grid, in bulk if it is a BitGrid.
+  */
+  static long[] copyCells(Grid grid) {
+    long[] words = new long[wordsPerRow(grid.getColumns()) * grid.getRows()];
+    copyCells(grid, words);
+    return words;
+  }
+
+  // same as above, into an array that is large enough
+  static void copyCells(Grid grid, long[] words) {
+    if(grid instanceof BitGrid) {
+      ((BitGrid)grid).copyTo(words);
+      return;
+    }
+    if(grid instanceof SparseGrid) {
+      ((SparseGrid)grid).copyTo(words);
+      return;
+    }
+    int col = grid.getColumns(), row = grid.getRows();
+    int wordsPerRow = wordsPerRow(col);
+    Arrays.fill(words, 0, wordsPerRow * row, 0L);
+    for (int i = 0; i < row; i++) {
+      for (int j = 0; j < col; j++) {
+        if(grid.isAlive(j, i)) words[i * wordsPerRow + (j >>> 6)] |= 1L << j;
+      }
+    }
+  }
+
+  public static GridSnapshot of(Grid grid, long sequence) {
+    return of(grid, sequence, null, null, 0, 0, -1);
+  }
+
+  /**
+    Copies the window under the viewport, or the whole board if it is null, with a hint which tiles
+    of the board changed since the snapshot `basis`, or null if that is unknown. The cells of a
+    BitGrid are copied word by word, the other grids count blocks of a single cell.
+  */
+  public static GridSnapshot of(Grid grid, long sequence, Viewport viewport,
+      boolean[] changedTiles, int tileWidth, int tileHeight, long basis) {
+    if(viewport == null) {
+      return new GridSnapshot(grid, null, copyCells(grid), null, sequence, changedTiles, tileWidth, tileHeight, basis);
+    }
+    int cols = viewport.getWindowColumns(), rows = viewport.getWindowRows();
+    if(viewport.getLevel() == 0 && grid instanceof BitGrid) {
+      long[] words = new long[wordsPerRow(cols) * rows];
+      ((BitGrid)grid).copyWindow(viewport.getWindowColumn(), viewport.getWindowRow(), cols, rows, words);
+      return new GridSnapshot(grid, viewport, words, null, sequence, changedTiles, tileWidth, tileHeight, basis);
+    }
+    int[] counts = new int[cols * rows];
+    grid.countBlocks(viewport.getWindowColumn(), viewport.getWindowRow(), viewport.getLevel(), cols, rows, counts);
+    if(viewport.getLevel() > 0) {
+      return new GridSnapshot(grid, viewport, null, counts, sequence, changedTiles, tileWidth, tileHeight, basis);
+    }
+    int wordsPerRow = wordsPerRow(cols);
+    long[] words = new long[wordsPerRow * rows];
+    for (int i = 0; i < rows; i++) {
+      for (int j = 0; j < cols; j++) {
+        if(counts[i * cols + j] != 0) words[i * wordsPerRow + (j >>> 6)] |= 1L << j;
+      }
+    }
+    return new GridSnapshot(grid, viewport, words, null, sequence, changedTiles, tileWidth, tileHeight, basis);
+  }
+
+  // the size of the window, in cells or blocks
+  public int getColumns() {
+    return col;
+  }
+
+  public int getRows() {
+    return row;
+  }
+
+  // the viewport the window was taken for, null for the whole board
+  public Viewport getViewport() {
+    return viewport;
+  }
+
+  public long getWindowColumn() {
+    return windowCol;
+  }
+
+  public long getWindowRow() {
+    return windowRow;
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  // the size of the board, bounded grids have no cells beyond it
+  public int getBoardColumns() {
+    return boardCol;
+  }
+
+  public int getBoardRows() {
+    return boardRow;
+  }
+
+  public boolean isBounded() {
+    return bounded;
+  }
+
+  public long getGenerations() {
+    return generation;
+  }
+
+  public int getWordsPerRow() {
+    return wordsPerRow;
+  }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  public long getBasis() {
+    return basis;
+  }
+
+  // population figures of the grid at the same generation
+  public GridStatistics getStatistics() {
+    return statistics;
+  }
+
+  // whether a cell of the plane is alive, false for cells outside of the window or on a level above 0
+  public boolean isAlive(long col, long row) {
+    col -= windowCol;
+    row -= windowRow;
+    if(words == null || col < 0 || col >= this.col || row < 0 || row >= this.row) return false;
+    return (words[(int)row * wordsPerRow + (int)(col >>> 6)] & (1L << col)) != 0;
+  }
+
+  // one word of packed cells; the array itself is never handed out so that it stays immutable
+  public long getWord(int index) {
+    return words[index];
+  }
+
+  // living cells of a block of the window on a level above 0
+  public int getCount(int blockCol, int blockRow) {
+    return counts[blockRow * col + blockCol];
+  }
+
+  public boolean hasChangeHints() {
+    return changedTiles != null;
+  }
+
+  public int getTileWidth() {
+    return tileWidth;
+  }
+
+  public int getTileHeight() {
+    return tileHeight;
+  }
+
+  // whether the tile of the board may have changed since the basis snapshot; always true without hints
+  public boolean isTileChanged(int tileCol, int tileRow) {
+    if(changedTiles == null) return true;
+    int tileCols = (boardCol + tileWidth - 1) / tileWidth;
+    return changedTiles[tileRow * tileCols + tileCol];
+  }
+}
@@ -0,0 +1,132 @@
+package gameoflife;
+
+/**
+  Figures about one generation of a grid: the living cells, the births and deaths of the step that
+  led to it, the bounding box of the living cells and how many of them are in each tile of the
+  visible board. The grids keep track of the counts while stepping and editing, so building this
+  does not scan the whole board.
+
+  Unbounded grids report the bounding box in their own plane, which may reach beyond the visible
+  board. Births and deaths are UNKNOWN where a grid cannot tell them apart cheaply.
+*/
+public final class GridStatistics {
+  public static final long UNKNOWN = -1;
+
+  private final long generation;
+  private final long population, births, deaths;
+  private final long minCol, minRow, maxCol, maxRow;
+  private final int col, row;
+  private final int tileWidth, tileHeight, tileColumns;
+  // living cells per tile of the visible board, row by row, or one array per tile row
+  private final int[] tilePopulation;
+  private final int[][] tileRowPopulation;
+
+  GridStatistics(long generation, long population, long births, long deaths,
+      long minCol, long minRow, long maxCol, long maxRow,
+      int col, int row, int tileWidth, int tileHeight, int[] tilePopulation) {
+    this.generation = generation;
+    this.population = population;
+    this.births = births;
+    this.deaths = deaths;
+    this.minCol = minCol;
+    this.minRow = minRow;
+    this.maxCol = maxCol;
+    this.maxRow = maxRow;
+    this.col = col;
+    this.row = row;
+    this.tileWidth = tileWidth;
+    this.tileHeight = tileHeight;
+    this.tileColumns = (col + tileWidth - 1) / tileWidth;
+    this.tilePopulation = tilePopulation;
+    this.tileRowPopulation = null;
+  }
+
+  // the same with one array per tile row, which the grid never changes afterwards
+  GridStatistics(long generation, long population, long births, long deaths,
+      long minCol, long minRow, long maxCol, long maxRow,
+      int col, int row, int tileWidth, int tileHeight, int[][] tileRowPopulation) {
+    this.generation = generation;
+    this.population = population;
+    this.births = births;
+    this.deaths = deaths;
+    this.minCol = minCol;
+    this.minRow = minRow;
+    this.maxCol = maxCol;
+    this.maxRow = maxRow;
+    this.col = col;
+    this.row = row;
+    this.tileWidth = tileWidth;
+    this.tileHeight = tileHeight;
+    this.tileColumns = (col + tileWidth - 1) / tileWidth;
+    this.tilePopulation = null;
+    this.tileRowPopulation = tileRowPopulation;
+  }
+
+  public long getGenerations() {
+    return generation;
+  }
+
+  // number of living cells, on the whole plane for unbounded grids
+  public long getPopulation() {
+    return population;
+  }
+
+  // cells that were born in the last generation, or UNKNOWN
+  public long getBirths() {
+    return births;
+  }
+
+  // cells that died in the last generation, or UNKNOWN
+  public long getDeaths() {
+    return deaths;
+  }
+
+  public boolean isEmpty() {
+    return population == 0;
+  }
+
+  // the bounding box of the living cells, all 0 if there are none
+  public long getMinColumn() {
+    return minCol;
+  }
+
+  public long getMinRow() {
+    return minRow;
+  }
+
+  public long getMaxColumn() {
+    return maxCol;
+  }
+
+  public long getMaxRow() {
+    return maxRow;
+  }
+
+  public int getTileWidth() {
+    return tileWidth;
+  }
+
+  public int getTileHeight() {
+    return tileHeight;
+  }
+
+  public int getTileColumns() {
+    return tileColumns;
+  }
+
+  public int getTileRows() {
+    return (row + tileHeight - 1) / tileHeight;
+  }
+
+  public int getTilePopulation(int tileCol, int tileRow) {
+    if(tilePopulation == null) return tileRowPopulation[tileRow][tileCol];
+    return tilePopulation[tileRow * tileColumns + tileCol];
+  }
+
+  // share of living cells in a tile; the tiles on the right and bottom edge may be smaller
+  public double getTileDensity(int tileCol, int tileRow) {
+    int width = Math.min(tileWidth, col - tileCol * tileWidth);
+    int height = Math.min(tileHeight, row - tileRow * tileHeight);
+    return (double)getTilePopulation(tileCol, tileRow) / (width * height);
+  }
+}
@@ -0,0 +1,655 @@
+package gameoflife;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+
+/**
+  HashLife: the universe is a quadtree whose nodes are canonicalized, so equal squares are
+  shared, and every node remembers where its centre is a power of two generations later.
+  That lets advance() jump over millions or billions of generations at once.
+
+  Unlike the other grids the universe has no edge. The columns and rows only describe the
+  window that is shown, with cell (0, 0) at the centre of the universe; cells outside of it
+  keep evolving and can be reached with isAlive / setAlive as well.
+*/
+public class HashLifeGrid implements Grid {
+
+  // a square of 2^level x 2^level cells, leaves (level 0) are single cells
+  static final class Node {
+    final Node nw, ne, sw, se;
+    final int level;
+    final long population;
+    final int hash;
+    // memoized centre of this node, 2^resultStep generations later
+    Node result;
+    int resultStep;
+    // next node in the same bucket of the node table
+    Node next;
+
+    Node(Node nw, Node ne, Node sw, Node se, int level, long population, int hash) {
+      this.nw = nw;
+      this.ne = ne;
+      this.sw = sw;
+      this.se = se;
+      this.level = level;
+      this.population = population;
+      this.hash = hash;
+    }
+  }
+
+  // thrown by a jump that fills the node table, so that it is done in two halves instead
+  private static final class TableFull extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    TableFull() {
+      super(null, null, false, false);
+    }
+  }
+  private static final TableFull TABLE_FULL = new TableFull();
+
+  private static final Node DEAD = new Node(null, null, null, null, 0, 0, 0);
+  private static final Node ALIVE = new Node(null, null, null, null, 0, 1, 1);
+  // coordinates relative to the centre still fit into a long below this level
+  private static final int MAX_COORDINATE_LEVEL = 62;
+  private static final int MIN_ROOT_LEVEL = 3;
+  public static final int DEFAULT_MAX_NODES = 1 << 20;
+
+  // canonical node table, chained through Node.next
+  private Node[] table = new Node[1 << 10];
+  private int size = 0;
+  private final int maxNodes;
+  // size of the table that triggers the next collection, kept well above what survives one
+  private int collectAt;
+  // set while a jump of more than one generation is computed, which gives up once the table is full
+  private boolean splittable = false;
+  private Node[] emptyNodes = new Node[80];
+
+  private Node root;
+  private int col, row;
+  private long generations = 0;
+  private Rule rule = Rule.CONWAY;
+
+  public HashLifeGrid(int col, int row) {
+    this(col, row, DEFAULT_MAX_NODES);
+  }
+
+  /**
+    @param maxNodes Number of nodes the cache may hold before unreachable nodes are dropped
+                    and the memoized results are forgotten.
+  */
+  public HashLifeGrid(int col, int row, int maxNodes) {
+    this.col = col;
+    this.row = row;
+    this.maxNodes = maxNodes;
+    this.collectAt = maxNodes;
+    root = empty(MIN_ROOT_LEVEL);
+  }
+
+  /**********************************************
+   Node table
+  */
+  private static int hash(Node nw, Node ne, Node sw, Node se) {
+    int h = ((nw.hash * 31 + ne.hash) * 31 + sw.hash) * 31 + se.hash;
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    return h ^ (h >>> 13);
+  }
+
+  // the canonical node with the given quadrants
+  private Node node(Node nw, Node ne, Node sw, Node se) {
+    int h = hash(nw, ne, sw, se);
+    int bucket = h & (table.length - 1);
+    for (Node n = table[bucket]; n != null; n = n.next) {
+      if(n.nw == nw && n.ne == ne && n.sw == sw && n.se == se) return n;
+    }
+    Node n = new Node(nw, ne, sw, se, nw.level + 1,
+      nw.population + ne.population + sw.population + se.population, h);
+    insert(n);
+    return n;
+  }
+
+  private void insert(Node n) {
+    if(splittable && size > collectAt) throw TABLE_FULL;
+    if(size >= table.length - (table.length >>> 2)) {
+      rehash(table.length << 1);
+    }
+    int bucket = n.hash & (table.length - 1);
+    n.next = table[bucket];
+    table[bucket] = n;
+    size++;
+  }
+
+  private void rehash(int capacity) {
+    Node[] old = table;
+    table = new Node[capacity];
+    for (Node head : old) {
+      for (Node n = head; n != null; ) {
+        Node following = n.next;
+        int bucket = n.hash & (capacity - 1);
+        n.next = table[bucket];
+        table[bucket] = n;
+        n = following;
+      }
+    }
+  }
+
+  private Node empty(int level) {
+    Node n = emptyNodes[level];
+    if(n == null) {
+      if(level == 0) {
+        n = DEAD;
+      } else {
+        Node e = empty(level - 1);
+        n = node(e, e, e, e);
+      }
+      emptyNodes[level] = n;
+    }
+    return n;
+  }
+
+  /**
+    Evicts everything that is not reachable from the root, together with all memoized results.
+    Called between steps and edits once the table holds more than maxNodes nodes, or twice
+    as many as survived the last collection if the pattern itself is that large.
+  */
+  private void collect() {
+    table = new Node[table.length];
+    size = 0;
+    emptyNodes = new Node[emptyNodes.length];
+    keep(root);
+    collectAt = Math.max(maxNodes, 2 * size);
+  }
+
+  private void keep(Node n) {
+    if(n.level == 0) return;
+    int bucket = n.hash & (table.length - 1);
+    for (Node m = table[bucket]; m != null; m = m.next) {
+      if(m == n) return; // already kept through another parent
+    }
+    n.result = null;
+    keep(n.nw);
+    keep(n.ne);
+    keep(n.sw);
+    keep(n.se);
+    insert(n);
+  }
+
+  /**
+    The memoized results belong to the old rule, so they are all dropped.
+
+    @throws IllegalArgumentException If the rule has B0: the empty universe around the pattern
+            would not stay empty.
+  */
+  public void setRule(Rule rule) {
+    if(rule.hasBirthOnZero()) throw new IllegalArgumentException("Rule " + rule + " needs a bounded grid");
+    if(rule.equals(this.rule)) return;
+    this.rule = rule;
+    collect();
+  }
+
+  public Rule getRule() {
+    return rule;
+  }
+
+  public int getCacheSize() {
+    return size;
+  }
+
+  /**********************************************
+   Evolution
+  */
+
+  // the centred sub-node, one level down
+  private Node centre(Node n) {
+    return node(n.nw.se, n.ne.sw, n.sw.ne, n.se.nw);
+  }
+
+  private Node centreHorizontal(Node w, Node e) {
+    return node(w.ne, e.nw, w.se, e.sw);
+  }
+
+  private Node centreVertical(Node n, Node s) {
+    return node(n.sw, n.se, s.nw, s.ne);
+  }
+
+  /**
+    The centre of the node (one level down) 2^step generations later, step <= level - 2.
+  */
+  private Node successor(Node n, int step) {
+    if(n.population == 0) return n.nw;
+    if(n.result != null && n.resultStep == step) return n.result;
+
+    Node result;
+    if(n.level == 2) {
+      result = baseStep(n);
+    } else {
+      // nine overlapping sub-nodes, one level down
+      Node n00 = n.nw, n01 = centreHorizontal(n.nw, n.ne), n02 = n.ne;
+      Node n10 = centreVertical(n.nw, n.sw), n11 = centre(n), n12 = centreVertical(n.ne, n.se);
+      Node n20 = n.sw, n21 = centreHorizontal(n.sw, n.se), n22 = n.se;
+
+      if(step == n.level - 2) {
+        // full speed: both halves advance by 2^(step - 1) generations
+        int half = step - 1;
+        Node r00 = successor(n00, half), r01 = successor(n01, half), r02 = successor(n02, half);
+        Node r10 = successor(n10, half), r11 = successor(n11, half), r12 = successor(n12, half);
+        Node r20 = successor(n20, half), r21 = successor(n21, half), r22 = successor(n22, half);
+        result = node(
+          successor(node(r00, r01, r10, r11), half),
+          successor(node(r01, r02, r11, r12), half),
+          successor(node(r10, r11, r20, r21), half),
+          successor(node(r11, r12, r21, r22), half)
+        );
+      } else {
+        // slower: only the second half moves in time
+        Node r00 = centre(n00), r01 = centre(n01), r02 = centre(n02);
+        Node r10 = centre(n10), r11 = centre(n11), r12 = centre(n12);
+        Node r20 = centre(n20), r21 = centre(n21), r22 = centre(n22);
+        result = node(
+          successor(node(r00, r01, r10, r11), step),
+          successor(node(r01, r02, r11, r12), step),
+          successor(node(r10, r11, r20, r21), step),
+          successor(node(r11, r12, r21, r22), step)
+        );
+      }
+    }
+    n.result = result;
+    n.resultStep = step;
+    return result;
+  }
+
+  // one generation of the centre 2x2 of a 4x4 node, computed cell by cell
+  private Node baseStep(Node n) {
+    int bits = 0; // bit y * 4 + x
+    for (int y = 0; y < 4; y++) {
+      for (int x = 0; x < 4; x++) {
+        Node quadrant = y < 2 ? (x < 2 ? n.nw : n.ne) : (x < 2 ? n.sw : n.se);
+        Node leaf = (y & 1) == 0 ? ((x & 1) == 0 ? quadrant.nw : quadrant.ne) : ((x & 1) == 0 ? quadrant.sw : quadrant.se);
+        if(leaf == ALIVE) bits |= 1 << (y * 4 + x);
+      }
+    }
+    return node(
+      nextCell(bits, 1, 1), nextCell(bits, 2, 1),
+      nextCell(bits, 1, 2), nextCell(bits, 2, 2)
+    );
+  }
+
+  private Node nextCell(int bits, int x, int y) {
+    // the 3x3 neighbourhood row by row, the cell itself in bit 4
+    int neighbourhood = ((bits >>> ((y - 1) * 4 + x - 1)) & 7)
+      | (((bits >>> (y * 4 + x - 1)) & 7) << 3)
+      | (((bits >>> ((y + 1) * 4 + x - 1)) & 7) << 6);
+    return rule.next(neighbourhood) ? ALIVE : DEAD;
+  }
+
+  // the same universe, one level up, with the old root in the middle
+  private Node expand(Node n) {
+    Node e = empty(n.level - 1);
+    return node(
+      node(e, e, e, n.nw),
+      node(e, e, n.ne, e),
+      node(e, n.sw, e, e),
+      node(n.se, e, e, e)
+    );
+  }
+
+  // whether all living cells are in the centre half of the node
+  private static boolean isCentred(Node n) {
+    return n.nw.nw.population == 0 && n.nw.ne.population == 0 && n.nw.sw.population == 0
+      && n.ne.nw.population == 0 && n.ne.ne.population == 0 && n.ne.se.population == 0
+      && n.sw.nw.population == 0 && n.sw.sw.population == 0 && n.sw.se.population == 0
+      && n.se.ne.population == 0 && n.se.sw.population == 0 && n.se.se.population == 0;
+  }
+
+  /**
+    The universe without the empty space around the living cells, with the same centre as the root.
+    Two universes with the same cells give nodes for which isSameUniverse() holds, even if the
+    table was collected in between.
+  */
+  Node getUniverse() {
+    Node n = root;
+    while(n.level > MIN_ROOT_LEVEL && isCentred(n)) {
+      n = centre(n);
+    }
+    return n;
+  }
+
+  // a hash of the cells of a universe, equal for universes with the same cells
+  static long hash(Node universe) {
+    return (((long)universe.level << 32) | (universe.hash & 0xffffffffL)) * 0x9e3779b97f4a7c15L ^ universe.population;
+  }
+
+  // whether two nodes hold the same cells, node by node where they are not the same node
+  static boolean isSameUniverse(Node a, Node b) {
+    if(a == b) return true;
+    if(a.level == 0 || a.level != b.level || a.hash != b.hash || a.population != b.population) return false;
+    return isSameUniverse(a.nw, b.nw) && isSameUniverse(a.ne, b.ne)
+      && isSameUniverse(a.sw, b.sw) && isSameUniverse(a.se, b.se);
+  }
+
+  /**
+    Advances the universe by the given number of generations, one power of two at a time.
+
+    @param generations Number of generations to compute, not negative.
+  */
+  public void advance(long generations) {
+    if(generations < 0) {
+      throw new IllegalArgumentException("Cannot advance by a negative number of generations: " + generations);
+    }
+    for (int step = 0; generations != 0; step++, generations >>>= 1) {
+      if((generations & 1) != 0) jump(step);
+    }
+  }
+
+  /**
+    Advances the universe by 2^step generations. A jump that would grow the node table beyond the
+    size that triggers a collection is given up, the table is collected, and the jump is done as
+    two jumps of half the size; a single generation is always computed in one go.
+  */
+  private void jump(int step) {
+    if(size > collectAt) collect();
+    // grow until the pattern has enough room around it for 2^step generations
+    while(root.level < step + 2 || !isCentred(root)) {
+      root = expand(root);
+    }
+    Node next;
+    splittable = step > 0;
+    try {
+      next = successor(expand(root), step);
+    } catch(TableFull e) {
+      // the nodes of the half computed jump are not reachable from the root
+      splittable = false;
+      collect();
+      jump(step - 1);
+      jump(step - 1);
+      return;
+    } finally {
+      splittable = false;
+    }
+    root = next;
+    this.generations += 1L << step;
+  }
+
+  public void next() {
+    advance(1);
+  }
+
+  public long getGenerations() {
+    return generations;
+  }
+
+  public void setGenerations(long generations) {
+    this.generations = generations;
+  }
+
+  /**********************************************
+   Cell access, coordinates are relative to the centre of the root
+  */
+  private static boolean contains(Node n, long x, long y) {
+    if(n.level > MAX_COORDINATE_LEVEL) return true; // anything that fits into an int does
+    long half = 1L << (n.level - 1);
+    return x >= -half && x < half && y >= -half && y < half;
+  }
+
+  private static Node quadrant(Node n, boolean west, boolean north) {
+    return north ? (west ? n.nw : n.ne) : (west ? n.sw : n.se);
+  }
+
+  public boolean isAlive(int col, int row) {
+    long x = col, y = row;
+    Node n = root;
+    if(!contains(n, x, y)) return false;
+    while(n.population != 0) {
+      if(n.level == 0) return true;
+      boolean west = x < 0, north = y < 0;
+      if(n.level > MAX_COORDINATE_LEVEL) {
+        // the cell is right next to the centre, follow the corners that face it
+        n = quadrant(n, west, north);
+        while(n.level > MAX_COORDINATE_LEVEL) {
+          n = quadrant(n, !west, !north);
+        }
+        long offset = 1L << (n.level - 1);
+        x += west ? offset : -offset;
+        y += north ? offset : -offset;
+        continue;
+      }
+      n = quadrant(n, west, north);
+      if(n.level > 0) {
+        long offset = 1L << (n.level - 1);
+        x += west ? offset : -offset;
+        y += north ? offset : -offset;
+      }
+    }
+    return false;
+  }
+
+  public void setAlive(int col, int row, boolean alive) {
+    long x = col, y = row;
+    while(!contains(root, x, y)) {
+      root = expand(root);
+    }
+    root = set(root, x, y, alive);
+    // every edit leaves a path of replaced nodes behind
+    if(size > collectAt) collect();
+  }
+
+  private Node set(Node n, long x, long y, boolean alive) {
+    if(n.level == 0) return alive ? ALIVE : DEAD;
+    boolean west = x < 0, north = y < 0;
+    Node child = quadrant(n, west, north);
+    if(n.level > MAX_COORDINATE_LEVEL) {
+      child = setCorner(child, west, north, x, y, alive);
+    } else if(child.level == 0) {
+      child = alive ? ALIVE : DEAD;
+    } else {
+      long offset = 1L << (child.level - 1);
+      child = set(child, x + (west ? offset : -offset), y + (north ? offset : -offset), alive);
+    }
+    return withQuadrant(n, west, north, child);
+  }
+
+  // sets a cell close to the centre of the universe inside a node that has a corner on that centre
+  private Node setCorner(Node n, boolean west, boolean north, long x, long y, boolean alive) {
+    if(n.level <= MAX_COORDINATE_LEVEL) {
+      long offset = 1L << (n.level - 1);
+      return set(n, x + (west ? offset : -offset), y + (north ? offset : -offset), alive);
+    }
+    Node corner = setCorner(quadrant(n, !west, !north), west, north, x, y, alive);
+    return withQuadrant(n, !west, !north, corner);
+  }
+
+  private Node withQuadrant(Node n, boolean west, boolean north, Node child) {
+    return node(
+      west && north ? child : n.nw,
+      !west && north ? child : n.ne,
+      west && !north ? child : n.sw,
+      !west && !north ? child : n.se
+    );
+  }
+
+  /**********************************************
+   Statistics
+  */
+  private static final int TILE_WIDTH = 64, TILE_HEIGHT = 32;
+  private static final int WEST = 0, EAST = 1, NORTH = 2, SOUTH = 3;
+
+  /**
+    Every node knows its population, so nothing is counted. Births and deaths are UNKNOWN, as steps
+    are looked up rather than computed cell by cell. The bounding box follows the quadrants that are
+    not empty along each side; it spans the whole long range once the universe has grown beyond it.
+  */
+  public GridStatistics getStatistics() {
+    long minCol = 0, minRow = 0, maxCol = 0, maxRow = 0;
+    if(root.population > 0 && root.level > MAX_COORDINATE_LEVEL) {
+      minCol = minRow = Long.MIN_VALUE;
+      maxCol = maxRow = Long.MAX_VALUE;
+    } else if(root.population > 0) {
+      long corner = -(1L << (root.level - 1));
+      minCol = corner + edge(root, WEST, new IdentityHashMap<Node, Long>());
+      maxCol = corner + edge(root, EAST, new IdentityHashMap<Node, Long>());
+      minRow = corner + edge(root, NORTH, new IdentityHashMap<Node, Long>());
+      maxRow = corner + edge(root, SOUTH, new IdentityHashMap<Node, Long>());
+    }
+    // the visible board starts at the centre, in the south-east quadrant of the root
+    Node window = root.se;
+    while(window.level > MAX_COORDINATE_LEVEL) window = window.nw;
+    int tileCols = (col + TILE_WIDTH - 1) / TILE_WIDTH, tileRows = (row + TILE_HEIGHT - 1) / TILE_HEIGHT;
+    int[] tilePopulation = new int[tileCols * tileRows];
+    for (int i = 0; i < tileRows; i++) {
+      for (int j = 0; j < tileCols; j++) {
+        long x = (long)j * TILE_WIDTH, y = (long)i * TILE_HEIGHT;
+        tilePopulation[i * tileCols + j] = (int)populationIn(window, 0, 0,
+          x, y, Math.min(col, x + TILE_WIDTH), Math.min(row, y + TILE_HEIGHT));
+      }
+    }
+    return new GridStatistics(generations, root.population, GridStatistics.UNKNOWN, GridStatistics.UNKNOWN,
+      minCol, minRow, maxCol, maxRow, col, row, TILE_WIDTH, TILE_HEIGHT, tilePopulation);
+  }
+
+  /**
+    Offset from the top left corner of a node that is not empty to its outermost living cell on
+    one side: a column for WEST and EAST, a row for NORTH and SOUTH. Shared nodes are only
+    followed once.
+  */
+  private long edge(Node n, int side, IdentityHashMap<Node, Long> known) {
+    if(n.level == 0) return 0;
+    Long offset = known.get(n);
+    if(offset != null) return offset;
+    // the two quadrants on that side, and the other two
+    Node a, b, c, d;
+    switch(side) {
+      case WEST:
+        a = n.nw; b = n.sw; c = n.ne; d = n.se;
+        break;
+      case EAST:
+        a = n.ne; b = n.se; c = n.nw; d = n.sw;
+        break;
+      case NORTH:
+        a = n.nw; b = n.ne; c = n.sw; d = n.se;
+        break;
+      default:
+        a = n.sw; b = n.se; c = n.nw; d = n.ne;
+        break;
+    }
+    boolean max = side == EAST || side == SOUTH;
+    boolean near = a.population != 0 || b.population != 0;
+    if(!near) {
+      a = c;
+      b = d;
+    }
+    long result;
+    if(a.population == 0) {
+      result = edge(b, side, known);
+    } else if(b.population == 0) {
+      result = edge(a, side, known);
+    } else if(max) {
+      result = Math.max(edge(a, side, known), edge(b, side, known));
+    } else {
+      result = Math.min(edge(a, side, known), edge(b, side, known));
+    }
+    // the quadrants on the east and south side start half way
+    if(max == near) result += 1L << (n.level - 1);
+    known.put(n, result);
+    return result;
+  }
+
+  // living cells of the node with its top left corner at (x, y) in the rectangle [x0, x1) x [y0, y1)
+  private static long populationIn(Node n, long x, long y, long x0, long y0, long x1, long y1) {
+    if(n.population == 0) return 0;
+    long size = 1L << n.level;
+    if(x >= x1 || y >= y1 || x + size <= x0 || y + size <= y0) return 0;
+    if(x >= x0 && y >= y0 && x + size <= x1 && y + size <= y1) return n.population;
+    long half = size >> 1;
+    return populationIn(n.nw, x, y, x0, y0, x1, y1) + populationIn(n.ne, x + half, y, x0, y0, x1, y1)
+      + populationIn(n.sw, x, y + half, x0, y0, x1, y1) + populationIn(n.se, x + half, y + half, x0, y0, x1, y1);
+  }
+
+  /**
+    Quadrants are only followed down to the size of a block, whose living cells they know.
+  */
+  public void countBlocks(long col, long row, int level, int cols, int rows, int[] counts) {
+    Arrays.fill(counts, 0, cols * rows, 0);
+    if(root.level <= MAX_COORDINATE_LEVEL) {
+      long corner = -(1L << (root.level - 1));
+      countBlocks(root, corner, corner, col, row, level, cols, rows, counts);
+      return;
+    }
+    // beyond the long range only the corners at the centre can be in the window
+    for (int quadrant = 0; quadrant < 4; quadrant++) {
+      boolean west = (quadrant & 1) == 0, north = quadrant < 2;
+      Node n = quadrant(root, west, north);
+      while(n.level > MAX_COORDINATE_LEVEL) {
+        n = quadrant(n, !west, !north);
+      }
+      long size = 1L << n.level;
+      countBlocks(n, west ? -size : 0, north ? -size : 0, col, row, level, cols, rows, counts);
+    }
+  }
+
+  // adds the living cells of the node with its top left corner at (x, y) to the blocks it overlaps
+  private static void countBlocks(Node n, long x, long y, long col, long row, int level, int cols, int rows, int[] counts) {
+    if(n.population == 0) return;
+    long size = 1L << n.level;
+    if(x >= col + ((long)cols << level) || y >= row + ((long)rows << level) || x + size <= col || y + size <= row) return;
+    if(n.level <= level) {
+      // the node is aligned to its size, so it lies in a single block
+      counts[(int)((y - row) >> level) * cols + (int)((x - col) >> level)] += (int)n.population;
+      return;
+    }
+    long half = size >> 1;
+    countBlocks(n.nw, x, y, col, row, level, cols, rows, counts);
+    countBlocks(n.ne, x + half, y, col, row, level, cols, rows, counts);
+    countBlocks(n.sw, x, y + half, col, row, level, cols, rows, counts);
+    countBlocks(n.se, x + half, y + half, col, row, level, cols, rows, counts);
+  }
+
+  /**********************************************
+   Window
+  */
+  public void resize(int cols, int rows) {
+    col = cols;
+    row = rows;
+  }
+
+  public int getColumns() {
+    return col;
+  }
+
+  public int getRows() {
+    return row;
+  }
+
+  public Collection<Cell> getPopulation() {
+    ArrayList<Cell> collection = new ArrayList<Cell>();
+    for (int i = 0; i < row; i++) {
+      for (int j = 0; j < col; j++) {
+        if(isAlive(j, i)) {
+          Cell cell = new Cell();
+          cell.isAlive = true;
+          collection.add(cell);
+        }
+      }
+    }
+    return collection;
+  }
+
+  public void clear() {
+    table = new Node[1 << 10];
+    size = 0;
+    emptyNodes = new Node[emptyNodes.length];
+    root = empty(MIN_ROOT_LEVEL);
+    generations = 0;
+  }
+
+  public String toString() {
+    StringBuilder rep = new StringBuilder((col + 1) * row);
+    for (int i = 0; i < row; i++) {
+      for (int j = 0; j < col; j++) {
+        rep.append(isAlive(j, i) ? 'X' : '.');
+      }
+      rep.append('\n'); // new line for a new row.
+    }
+    return rep.toString();
+  }
+}
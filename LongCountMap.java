@@ -0,0 +1,123 @@
+package gameoflife;
+import java.util.Arrays;
+
+/**
+  Open-addressing map from primitive longs to counters, only ever incremented until cleared.
+  Same layout as LongHashSet: linear probing, 0 marks a free slot and the key 0 is kept aside.
+
+  Iterating: for (int slot = map.firstSlot(); slot >= 0; slot = map.nextSlot(slot)) map.keyAt(slot)
+*/
+public class LongCountMap {
+  private long[] keys;
+  private int[] counts;
+  private int mask;
+  private int size = 0;
+  private int zeroCount = 0;
+
+  public LongCountMap() {
+    this(16);
+  }
+
+  public LongCountMap(int expectedSize) {
+    int capacity = capacityFor(expectedSize);
+    keys = new long[capacity];
+    counts = new int[capacity];
+    mask = capacity - 1;
+  }
+
+  public void increment(long key) {
+    if(key == 0) {
+      zeroCount++;
+      return;
+    }
+    int slot = LongHashSet.hash(key) & mask;
+    for (; keys[slot] != 0; slot = (slot + 1) & mask) {
+      if(keys[slot] == key) {
+        counts[slot]++;
+        return;
+      }
+    }
+    keys[slot] = key;
+    counts[slot] = 1;
+    if(++size > (keys.length >>> 1)) grow();
+  }
+
+  public int get(long key) {
+    if(key == 0) return zeroCount;
+    for (int slot = LongHashSet.hash(key) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+      if(keys[slot] == key) return counts[slot];
+    }
+    return 0;
+  }
+
+  private void grow() {
+    long[] oldKeys = keys;
+    int[] oldCounts = counts;
+    keys = new long[oldKeys.length << 1];
+    counts = new int[keys.length];
+    mask = keys.length - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if(oldKeys[i] == 0) continue;
+      int slot = LongHashSet.hash(oldKeys[i]) & mask;
+      while(keys[slot] != 0) slot = (slot + 1) & mask;
+      keys[slot] = oldKeys[i];
+      counts[slot] = oldCounts[i];
+    }
+  }
+
+  // empties the map but keeps its capacity
+  public void clear() {
+    Arrays.fill(keys, 0L);
+    size = 0;
+    zeroCount = 0;
+  }
+
+  /**
+    Empties the map for about the given number of keys. The table is kept unless it is more than 8
+    times larger than they need; then it is allocated at the size they need, so that a map which once
+    held many keys is not cleared and scanned at that size ever after.
+  */
+  public void clear(int expectedSize) {
+    int capacity = capacityFor(expectedSize);
+    if(keys.length <= 8 * capacity) {
+      clear();
+      return;
+    }
+    keys = new long[capacity];
+      counts = new int[capacity];
+    mask = capacity - 1;
+    size = 0;
+    zeroCount = 0;
+  }
+
+  // a power of two at least twice the size, the table grows once it is half full
+  private static int capacityFor(int expectedSize) {
+    return Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+  }
+
+  public int size() {
+    return zeroCount > 0 ? size + 1 : size;
+  }
+
+  /**********************************************
+   Iteration over slots, the zero key lives in the virtual slot keys.length
+  */
+  public int firstSlot() {
+    return nextSlot(-1);
+  }
+
+  public int nextSlot(int slot) {
+    for (slot++; slot < keys.length; slot++) {
+      if(keys[slot] != 0) return slot;
+    }
+    return slot == keys.length && zeroCount > 0 ? slot : -1;
+  }
+
+  public long keyAt(int slot) {
+    return slot == keys.length ? 0 : keys[slot];
+  }
+
+  public int countAt(int slot) {
+    return slot == keys.length ? zeroCount : counts[slot];
+  }
+}
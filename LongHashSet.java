@@ -0,0 +1,149 @@
+package gameoflife;
+import java.util.Arrays;
+
+/**
+  Open-addressing hash set of primitive longs (linear probing, no boxing).
+  0 marks a free slot, so the key 0 itself is kept in a flag of its own.
+
+  Iterating: for (int slot = set.firstSlot(); slot >= 0; slot = set.nextSlot(slot)) set.keyAt(slot)
+*/
+public class LongHashSet {
+  private long[] keys;
+  private int mask;
+  private int size = 0;       // not counting the zero key
+  private boolean hasZero = false;
+
+  public LongHashSet() {
+    this(16);
+  }
+
+  public LongHashSet(int expectedSize) {
+    int capacity = capacityFor(expectedSize);
+    keys = new long[capacity];
+    mask = capacity - 1;
+  }
+
+  // spreads packed coordinates over the table (murmur3 finalizer)
+  static int hash(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return (int)key;
+  }
+
+  public boolean contains(long key) {
+    if(key == 0) return hasZero;
+    for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+      long k = keys[slot];
+      if(k == key) return true;
+      if(k == 0) return false;
+    }
+  }
+
+  // returns false if the key was already there
+  public boolean add(long key) {
+    if(key == 0) {
+      boolean added = !hasZero;
+      hasZero = true;
+      return added;
+    }
+    int slot = hash(key) & mask;
+    for (; keys[slot] != 0; slot = (slot + 1) & mask) {
+      if(keys[slot] == key) return false;
+    }
+    keys[slot] = key;
+    if(++size > (keys.length >>> 1)) grow();
+    return true;
+  }
+
+  // returns false if the key was not there
+  public boolean remove(long key) {
+    if(key == 0) {
+      boolean removed = hasZero;
+      hasZero = false;
+      return removed;
+    }
+    int slot = hash(key) & mask;
+    for (; keys[slot] != key; slot = (slot + 1) & mask) {
+      if(keys[slot] == 0) return false;
+    }
+    // shift the following keys of the probe sequence back, so that no tombstones are needed
+    int free = slot;
+    for (int next = (free + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+      int home = hash(keys[next]) & mask;
+      // move the key unless its home lies cyclically in (free, next]
+      if(((next - home) & mask) >= ((next - free) & mask)) {
+        keys[free] = keys[next];
+        free = next;
+      }
+    }
+    keys[free] = 0;
+    size--;
+    return true;
+  }
+
+  private void grow() {
+    long[] old = keys;
+    keys = new long[old.length << 1];
+    mask = keys.length - 1;
+    for (long key : old) {
+      if(key == 0) continue;
+      int slot = hash(key) & mask;
+      while(keys[slot] != 0) slot = (slot + 1) & mask;
+      keys[slot] = key;
+    }
+  }
+
+  // empties the set but keeps its capacity
+  public void clear() {
+    Arrays.fill(keys, 0L);
+    size = 0;
+    hasZero = false;
+  }
+
+  /**
+    Empties the set for about the given number of keys. The table is kept unless it is more than 8
+    times larger than they need; then it is allocated at the size they need, so that a set which once
+    held many keys is not cleared and scanned at that size ever after.
+  */
+  public void clear(int expectedSize) {
+    int capacity = capacityFor(expectedSize);
+    if(keys.length <= 8 * capacity) {
+      clear();
+      return;
+    }
+    keys = new long[capacity];
+    mask = capacity - 1;
+    size = 0;
+    hasZero = false;
+  }
+
+  // a power of two at least twice the size, the table grows once it is half full
+  private static int capacityFor(int expectedSize) {
+    return Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+  }
+
+  public int size() {
+    return hasZero ? size + 1 : size;
+  }
+
+  /**********************************************
+   Iteration over slots, the zero key lives in the virtual slot keys.length
+  */
+  public int firstSlot() {
+    return nextSlot(-1);
+  }
+
+  public int nextSlot(int slot) {
+    for (slot++; slot < keys.length; slot++) {
+      if(keys[slot] != 0) return slot;
+    }
+    return slot == keys.length && hasZero ? slot : -1;
+  }
+
+  public long keyAt(int slot) {
+    return slot == keys.length ? 0 : keys[slot];
+  }
+}
@@ -0,0 +1,551 @@
+package gameoflife;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+  Reads and writes patterns in the RLE, Life 1.05, Life 1.06 and plaintext (.cells) formats.
+
+  The readers are streaming: the text is decoded a character at a time from a buffer and every
+  living cell goes straight into the grid, so multi-megabyte patterns load without building
+  strings or coordinate lists. The writers only see the visible part of the grid.
+*/
+public final class PatternIO {
+  private static final int BUFFER_SIZE = 1 << 16;
+  // lines of an RLE body are kept below this length, as the format asks for
+  private static final int RLE_LINE_LENGTH = 70;
+
+  public enum Format {
+    RLE, LIFE_105, LIFE_106, PLAINTEXT;
+
+    /**
+      The format belonging to the extension of a file name, or null if it is not known. Files
+      named .lif or .life are Life 1.05 about as often as 1.06, load() tells them apart by the header.
+    */
+    public static Format forFileName(String fileName) {
+      String name = fileName.toLowerCase();
+      if(name.endsWith(".rle")) return RLE;
+      if(name.endsWith(".lif") || name.endsWith(".life")) return LIFE_106;
+      if(name.endsWith(".cells") || name.endsWith(".txt")) return PLAINTEXT;
+      return null;
+    }
+
+    // guesses the format from the first line of a pattern
+    public static Format detect(Reader in) throws IOException {
+      int c = in.read();
+      while(c == ' ' || c == '\t' || c == '\r' || c == '\n') c = in.read();
+      if(c == '!' || c == '.' || c == 'O' || c == '*') return PLAINTEXT;
+      if(c == '#') {
+        // "#Life 1.05" or "#Life 1.06", anything else starting with # is an RLE comment
+        char[] tag = new char[9];
+        int length = 0;
+        for (int read; length < tag.length && (read = in.read(tag, length, tag.length - length)) > 0; length += read);
+        if(length == tag.length && new String(tag).equalsIgnoreCase("Life 1.05")) return LIFE_105;
+        if(length == tag.length && new String(tag).equalsIgnoreCase("Life 1.06")) return LIFE_106;
+        return RLE;
+      }
+      if(c == '-' || (c >= '0' && c <= '9')) return LIFE_106;
+      return RLE;
+    }
+  }
+
+  // receives the living cells of a pattern in the order they are decoded
+  interface CellSink {
+    void cell(int col, int row) throws IOException;
+  }
+
+  /**
+    The extent of a pattern, found by decoding it without a grid.
+  */
+  public static final class Bounds implements CellSink {
+    private int minCol = Integer.MAX_VALUE, minRow = Integer.MAX_VALUE;
+    private int maxCol = Integer.MIN_VALUE, maxRow = Integer.MIN_VALUE;
+    private long cells = 0;
+    private Rule rule;
+
+    public void cell(int col, int row) {
+      minCol = Math.min(minCol, col);
+      maxCol = Math.max(maxCol, col);
+      minRow = Math.min(minRow, row);
+      maxRow = Math.max(maxRow, row);
+      cells++;
+    }
+
+    public boolean isEmpty() {
+      return cells == 0;
+    }
+
+    public int getMinColumn() {
+      return isEmpty() ? 0 : minCol;
+    }
+
+    public int getMinRow() {
+      return isEmpty() ? 0 : minRow;
+    }
+
+    public long getWidth() {
+      return isEmpty() ? 0 : (long)maxCol - minCol + 1;
+    }
+
+    public long getHeight() {
+      return isEmpty() ? 0 : (long)maxRow - minRow + 1;
+    }
+
+    // number of living cells in the pattern
+    public long getCells() {
+      return cells;
+    }
+
+    // the rule named in the pattern, or null if it does not name one
+    public Rule getRule() {
+      return rule;
+    }
+  }
+
+  private PatternIO() {}
+
+  /**********************
+    Reading
+  */
+  /**
+    Decodes a pattern and sets its cells alive in the grid, with the pattern's origin at (col, row).
+    Cells that fall outside of a bounded grid are dropped. The rule of the grid is left alone.
+  */
+  public static void read(Reader in, Format format, final Grid grid, final int col, final int row) throws IOException {
+    decode(in, format, new CellSink() {
+      public void cell(int x, int y) {
+        grid.setAlive(col + x, row + y, true);
+      }
+    });
+  }
+
+  // decodes a pattern without a grid to find its extent
+  public static Bounds measure(Reader in, Format format) throws IOException {
+    Bounds bounds = new Bounds();
+    bounds.rule = decode(in, format, bounds);
+    return bounds;
+  }
+
+  /**
+    Clears the grid and loads the pattern in the file into the middle of the visible cells.
+    The format comes from the extension of the file, or from its content if the extension is unknown.
+    The file is read twice, once to measure the pattern and once to place it. If the pattern names
+    a rule, the grid is switched to it.
+
+    @return The extent of the pattern, which may be larger than a bounded grid.
+  */
+  public static Bounds load(File file, Grid grid) throws IOException {
+    Format format = Format.forFileName(file.getName());
+    if(format == null || format == Format.LIFE_106) {
+      Format detected;
+      try(Reader in = open(file)) {
+        detected = Format.detect(in);
+      }
+      if(format == null || detected == Format.LIFE_105) format = detected;
+    }
+    Bounds bounds;
+    try(Reader in = open(file)) {
+      bounds = measure(in, format);
+    }
+    if(bounds.getRule() != null) {
+      try {
+        grid.setRule(bounds.getRule());
+      } catch(IllegalArgumentException e) {
+        throw new IOException(e.getMessage() + ": " + file);
+      }
+    }
+    grid.clear();
+    long col = (grid.getColumns() - bounds.getWidth()) / 2 - bounds.getMinColumn();
+    long row = (grid.getRows() - bounds.getHeight()) / 2 - bounds.getMinRow();
+    if(col != (int)col || row != (int)row) throw new IOException("Pattern is too large: " + file);
+    try(Reader in = open(file)) {
+      read(in, format, grid, (int)col, (int)row);
+    }
+    return bounds;
+  }
+
+  private static Reader open(File file) throws IOException {
+    return new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+  }
+
+  // returns the rule named in the pattern, or null
+  static Rule decode(Reader in, Format format, CellSink sink) throws IOException {
+    Input input = new Input(in);
+    switch(format) {
+      case RLE:
+        return decodeRle(input, sink);
+      case LIFE_105:
+        return decodeLife105(input, sink);
+      case LIFE_106:
+        decodeLife106(input, sink);
+        return null;
+      default:
+        decodePlaintext(input, sink);
+        return null;
+    }
+  }
+
+  private static Rule decodeRle(Input in, CellSink sink) throws IOException {
+    // comments and the header line come first
+    Rule rule = null;
+    int c;
+    while(true) {
+      c = in.skipBlanks();
+      if(c == '#') {
+        in.skipLine();
+      } else if(c == 'x') {
+        rule = parseRule(in.readLine());
+      } else {
+        break;
+      }
+    }
+    long x = 0, y = 0;
+    long count = 0;
+    for (; c >= 0; c = in.read()) {
+      if(c >= '0' && c <= '9') {
+        count = count * 10 + (c - '0');
+        if(count > Integer.MAX_VALUE) throw new IOException("Run length is too long on line " + in.line);
+        continue;
+      }
+      long run = count == 0 ? 1 : count;
+      count = 0;
+      if(c == '!') {
+        return rule;
+      } else if(c == '$') {
+        y += run;
+        x = 0;
+      } else if(c == 'b' || c == '.') {
+        x += run;
+      } else if(c == 'o' || (c >= 'A' && c <= 'X')) {
+        // every state but 0 of a multi-state pattern counts as alive
+        if(x + run > Integer.MAX_VALUE || y > Integer.MAX_VALUE) throw new IOException("Pattern is too large");
+        for (long end = x + run; x < end; x++) {
+          sink.cell((int)x, (int)y);
+        }
+      } else if(c == '#') {
+        in.skipLine();
+      } else if(c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+        throw new IOException("Unexpected '" + (char)c + "' in RLE on line " + in.line);
+      }
+    }
+    return rule;
+  }
+
+  // the rule of an RLE header line, only Life-like rules are accepted
+  private static Rule parseRule(String header) throws IOException {
+    int rule = header.indexOf("rule");
+    if(rule < 0) return null;
+    int start = header.indexOf('=', rule) + 1;
+    int end = header.indexOf(',', start);
+    String name = header.substring(start, end < 0 ? header.length() : end).trim();
+    // a bounded plane like B3/S23:P64,64 is read as the plain rule
+    int colon = name.indexOf(':');
+    if(colon >= 0) name = name.substring(0, colon);
+    try {
+      return Rule.parse(name);
+    } catch(IllegalArgumentException e) {
+      throw new IOException("Unsupported rule: " + name);
+    }
+  }
+
+  /**
+    Blocks of rows of . and *, each starting with a line #P x y that places its top left cell.
+    #N names Conway's rule and #R s/b another one, any other line starting with # is a comment.
+  */
+  private static Rule decodeLife105(Input in, CellSink sink) throws IOException {
+    Rule rule = null;
+    long x = 0, y = 0;
+    long blockX = 0;
+    for (int c = in.read(); c >= 0; c = in.read()) {
+      if(x == blockX && c == '#') {
+        String line = in.readLine().trim();
+        if(line.startsWith("P")) {
+          String[] position = line.substring(1).trim().split("\\s+");
+          try {
+            blockX = x = Integer.parseInt(position[0]);
+            y = Integer.parseInt(position[1]);
+          } catch(RuntimeException e) {
+            throw new IOException("Expected #P x y on line " + (in.line - 1));
+          }
+        } else if(line.startsWith("N")) {
+          rule = Rule.CONWAY;
+        } else if(line.startsWith("R")) {
+          try {
+            rule = Rule.parse(line.substring(1));
+          } catch(IllegalArgumentException e) {
+            throw new IOException("Unsupported rule: " + line.substring(1).trim());
+          }
+        }
+        continue;
+      }
+      if(c == '\n') {
+        x = blockX;
+        y++;
+      } else if(c == '*' || c == 'O') {
+        if(x > Integer.MAX_VALUE || y > Integer.MAX_VALUE) throw new IOException("Pattern is too large");
+        sink.cell((int)x++, (int)y);
+      } else if(c == '.') {
+        x++;
+      } else if(c != '\r' && c != ' ' && c != '\t') {
+        throw new IOException("Unexpected '" + (char)c + "' in Life 1.05 on line " + in.line);
+      }
+    }
+    return rule;
+  }
+
+  private static void decodeLife106(Input in, CellSink sink) throws IOException {
+    for (int c = in.skipBlanks(); c >= 0; c = in.skipBlanks()) {
+      if(c == '#') {
+        in.skipLine();
+        continue;
+      }
+      int x = in.readInt(c);
+      int y = in.readInt(in.skipSpaces());
+      sink.cell(x, y);
+    }
+  }
+
+  private static void decodePlaintext(Input in, CellSink sink) throws IOException {
+    int x = 0, y = 0;
+    boolean lineStart = true;
+    for (int c = in.read(); c >= 0; c = in.read()) {
+      if(lineStart && c == '!') {
+        in.skipLine();
+        continue;
+      }
+      lineStart = false;
+      if(c == '\n') {
+        x = 0;
+        y++;
+        lineStart = true;
+      } else if(c == 'O' || c == '*') {
+        sink.cell(x++, y);
+      } else if(c == '.') {
+        x++;
+      } else if(c != '\r' && c != ' ' && c != '\t') {
+        throw new IOException("Unexpected '" + (char)c + "' in plaintext on line " + in.line);
+      }
+    }
+  }
+
+  // a buffered character source that counts lines for error messages
+  private static final class Input {
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0, limit = 0;
+    int line = 1;
+
+    Input(Reader reader) {
+      this.reader = reader;
+    }
+
+    int read() throws IOException {
+      if(position == limit) {
+        limit = reader.read(buffer, 0, buffer.length);
+        position = 0;
+        if(limit <= 0) {
+          limit = 0;
+          return -1;
+        }
+      }
+      char c = buffer[position++];
+      if(c == '\n') line++;
+      return c;
+    }
+
+    // the next character that is not white space
+    int skipBlanks() throws IOException {
+      int c = read();
+      while(c == ' ' || c == '\t' || c == '\r' || c == '\n') c = read();
+      return c;
+    }
+
+    // the next character that is not a space on this line
+    int skipSpaces() throws IOException {
+      int c = read();
+      while(c == ' ' || c == '\t') c = read();
+      return c;
+    }
+
+    void skipLine() throws IOException {
+      for (int c = read(); c >= 0 && c != '\n'; c = read());
+    }
+
+    // the rest of the line, only used for the short header lines
+    String readLine() throws IOException {
+      StringBuilder builder = new StringBuilder();
+      for (int c = read(); c >= 0 && c != '\n'; c = read()) {
+        if(c != '\r') builder.append((char)c);
+      }
+      return builder.toString();
+    }
+
+    // reads an integer whose first character is c
+    int readInt(int c) throws IOException {
+      boolean negative = c == '-';
+      if(negative) c = read();
+      if(c < '0' || c > '9') throw new IOException("Expected a number on line " + line);
+      long value = 0;
+      for (; c >= '0' && c <= '9'; c = read()) {
+        value = value * 10 + (c - '0');
+        if(value > Integer.MAX_VALUE) throw new IOException("Number is too large on line " + line);
+      }
+      if(c == '\n') line--; // the line ending is given back below
+      if(c >= 0) position--;
+      return (int)(negative ? -value : value);
+    }
+  }
+
+  /**********************
+    Writing
+  */
+  /**
+    Writes the living cells of the visible grid, cropped to their bounding box.
+  */
+  public static void write(Writer out, Format format, Grid grid) throws IOException {
+    int col = grid.getColumns(), row = grid.getRows();
+    int wordsPerRow = GridSnapshot.wordsPerRow(col);
+    long[] words = GridSnapshot.copyCells(grid);
+    // bounding box of the living cells
+    int minCol = col, maxCol = -1, minRow = row, maxRow = -1;
+    for (int i = 0; i < row; i++) {
+      for (int w = 0; w < wordsPerRow; w++) {
+        long word = words[i * wordsPerRow + w];
+        if(word == 0) continue;
+        minCol = Math.min(minCol, (w << 6) + Long.numberOfTrailingZeros(word));
+        maxCol = Math.max(maxCol, (w << 6) + 63 - Long.numberOfLeadingZeros(word));
+        minRow = Math.min(minRow, i);
+        maxRow = i;
+      }
+    }
+    if(maxRow < 0) {
+      // nothing alive, the pattern is a single dead cell
+      minCol = maxCol = minRow = maxRow = 0;
+      words = new long[Math.max(1, words.length)];
+    }
+    BufferedWriter writer = new BufferedWriter(out, BUFFER_SIZE);
+    switch(format) {
+      case RLE:
+        writeRle(writer, grid, words, wordsPerRow, minCol, maxCol, minRow, maxRow);
+        break;
+      case LIFE_105:
+        writer.write("#Life 1.05\n");
+        writer.write(grid.getRule().isConway() ? "#N\n" : "#R " + counts(grid.getRule().getSurvival())
+          + "/" + counts(grid.getRule().getBirth()) + "\n");
+        writer.write("#P 0 0\n");
+        for (int i = minRow; i <= maxRow; i++) {
+          int last = maxCol;
+          while(last >= minCol && !isSet(words, wordsPerRow, last, i)) last--;
+          // an empty row keeps a dead cell, so that it is not taken for the end of the block
+          for (int j = minCol; j <= Math.max(minCol, last); j++) {
+            writer.write(isSet(words, wordsPerRow, j, i) ? '*' : '.');
+          }
+          writer.write('\n');
+        }
+        break;
+      case LIFE_106:
+        writer.write("#Life 1.06\n");
+        for (int i = minRow; i <= maxRow; i++) {
+          for (int j = minCol; j <= maxCol; j++) {
+            if(isSet(words, wordsPerRow, j, i)) {
+              writer.write(Integer.toString(j - minCol));
+              writer.write(' ');
+              writer.write(Integer.toString(i - minRow));
+              writer.write('\n');
+            }
+          }
+        }
+        break;
+      default:
+        writer.write("!Generation " + grid.getGenerations() + "\n");
+        for (int i = minRow; i <= maxRow; i++) {
+          // trailing dead cells are left out
+          int last = maxCol;
+          while(last >= minCol && !isSet(words, wordsPerRow, last, i)) last--;
+          for (int j = minCol; j <= last; j++) {
+            writer.write(isSet(words, wordsPerRow, j, i) ? 'O' : '.');
+          }
+          writer.write('\n');
+        }
+        break;
+    }
+    writer.flush();
+  }
+
+  // the neighbour counts of a bit set of Rule as digits
+  private static String counts(int counts) {
+    StringBuilder digits = new StringBuilder();
+    for (int i = 0; i <= 8; i++) {
+      if((counts & (1 << i)) != 0) digits.append(i);
+    }
+    return digits.toString();
+  }
+
+  private static boolean isSet(long[] words, int wordsPerRow, int col, int row) {
+    return (words[row * wordsPerRow + (col >>> 6)] & (1L << col)) != 0;
+  }
+
+  private static void writeRle(BufferedWriter writer, Grid grid, long[] words, int wordsPerRow,
+      int minCol, int maxCol, int minRow, int maxRow) throws IOException {
+    writer.write("#C Generation " + grid.getGenerations() + "\n");
+    writer.write("x = " + (maxCol - minCol + 1) + ", y = " + (maxRow - minRow + 1) + ", rule = " + grid.getRule() + "\n");
+    RunWriter runs = new RunWriter(writer);
+    for (int i = minRow; i <= maxRow; i++) {
+      int j = minCol;
+      while(j <= maxCol) {
+        boolean alive = isSet(words, wordsPerRow, j, i);
+        int start = j;
+        while(j <= maxCol && isSet(words, wordsPerRow, j, i) == alive) j++;
+        // dead cells at the end of a row are implied by the $
+        if(alive || j <= maxCol) runs.run(j - start, alive ? 'o' : 'b');
+      }
+      if(i < maxRow) runs.run(1, '$');
+    }
+    runs.run(1, '!');
+    writer.write('\n');
+  }
+
+  // joins runs of the same tag, e.g. the $ of empty rows, and wraps the lines
+  private static final class RunWriter {
+    private final Writer writer;
+    private int lineLength = 0;
+    private int pendingCount = 0;
+    private char pendingTag = 0;
+
+    RunWriter(Writer writer) {
+      this.writer = writer;
+    }
+
+    void run(int count, char tag) throws IOException {
+      if(tag == pendingTag && tag != '!') {
+        pendingCount += count;
+        return;
+      }
+      flush();
+      pendingCount = count;
+      pendingTag = tag;
+      if(tag == '!') flush();
+    }
+
+    private void flush() throws IOException {
+      if(pendingTag == 0) return;
+      String token = pendingCount == 1 ? String.valueOf(pendingTag) : pendingCount + String.valueOf(pendingTag);
+      if(lineLength + token.length() > RLE_LINE_LENGTH) {
+        writer.write('\n');
+        lineLength = 0;
+      }
+      writer.write(token);
+      lineLength += token.length();
+      pendingTag = 0;
+    }
+  }
+
+  /**
+    Writes the visible grid to a file, in the format given by its extension (RLE if unknown).
+  */
+  public static void save(File file, Grid grid) throws IOException {
+    Format format = Format.forFileName(file.getName());
+    try(Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+      write(out, format == null ? Format.RLE : format, grid);
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package gameoflife;
+
+/**
+  An outer-totalistic rule of a Life-like cellular automaton, in B/S notation: a dead cell is born
+  with any of the neighbour counts after B, a living cell survives with any of the counts after S.
+  Conway's Game of Life is B3/S23.
+
+  Accepts "B36/S23", "b36s23" and the older survival-first "23/36". The 512-entry table maps every
+  3x3 neighbourhood (bit 4 the cell itself, bits 0-8 row by row) to the state of the cell in the
+  next generation, for the engines that look at cells one by one.
+*/
+public final class Rule {
+  public static final Rule CONWAY = new Rule(1 << 3, (1 << 2) | (1 << 3));
+
+  // rules that are offered in the GUI
+  public static final String[] PRESETS = {
+    "B3/S23",           // Conway's Game of Life
+    "B36/S23",          // HighLife
+    "B3678/S34678",     // Day & Night
+    "B2/S",             // Seeds
+    "B3/S012345678",    // Life without death
+    "B1357/S1357",      // Replicator
+    "B3/S12345",        // Maze
+    "B36/S125",         // 2x2
+    "B35678/S5678"      // Diamoeba
+  };
+
+  private final int birth;    // bit n: born with n neighbours
+  private final int survival; // bit n: survives with n neighbours
+  private final boolean[] table = new boolean[512];
+
+  private Rule(int birth, int survival) {
+    this.birth = birth;
+    this.survival = survival;
+    for (int neighbourhood = 0; neighbourhood < 512; neighbourhood++) {
+      boolean alive = (neighbourhood & (1 << 4)) != 0;
+      int count = Integer.bitCount(neighbourhood & ~(1 << 4));
+      table[neighbourhood] = next(alive, count);
+    }
+  }
+
+  /**
+    Parses a rule string.
+
+    @throws IllegalArgumentException If the string is not a B/S rule.
+  */
+  public static Rule parse(String rule) {
+    String text = rule.trim().toUpperCase();
+    int birth, survival;
+    int slash = text.indexOf('/');
+    if(text.startsWith("B")) {
+      // B.../S... or B...S...
+      int s = text.indexOf('S');
+      if(s < 0 || (slash >= 0 && slash != s - 1)) throw new IllegalArgumentException("Not a B/S rule: " + rule);
+      birth = counts(text.substring(1, slash >= 0 ? slash : s), rule);
+      survival = counts(text.substring(s + 1), rule);
+    } else if(slash >= 0) {
+      // survival/birth
+      survival = counts(text.substring(0, slash), rule);
+      birth = counts(text.substring(slash + 1), rule);
+    } else {
+      throw new IllegalArgumentException("Not a B/S rule: " + rule);
+    }
+    if(birth == CONWAY.birth && survival == CONWAY.survival) return CONWAY;
+    return new Rule(birth, survival);
+  }
+
+  // the digits as a bit set of neighbour counts
+  private static int counts(String digits, String rule) {
+    int counts = 0;
+    for (int i = 0; i < digits.length(); i++) {
+      char c = digits.charAt(i);
+      if(c < '0' || c > '8') throw new IllegalArgumentException("Invalid neighbour count '" + c + "' in rule " + rule);
+      counts |= 1 << (c - '0');
+    }
+    return counts;
+  }
+
+  // whether a cell is alive in the next generation
+  public boolean next(boolean alive, int neighbours) {
+    return ((alive ? survival : birth) & (1 << neighbours)) != 0;
+  }
+
+  // the same for a 3x3 neighbourhood, bit 4 being the cell itself
+  public boolean next(int neighbourhood) {
+    return table[neighbourhood];
+  }
+
+  // bit n set if a dead cell with n neighbours is born
+  public int getBirth() {
+    return birth;
+  }
+
+  // bit n set if a living cell with n neighbours survives
+  public int getSurvival() {
+    return survival;
+  }
+
+  public boolean isConway() {
+    return this == CONWAY;
+  }
+
+  /**
+    Whether dead cells without living neighbours are born, which lights up the whole of an unbounded
+    universe at once.
+  */
+  public boolean hasBirthOnZero() {
+    return (birth & 1) != 0;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof Rule && ((Rule)other).birth == birth && ((Rule)other).survival == survival;
+  }
+
+  @Override
+  public int hashCode() {
+    return birth * 512 + survival;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder("B");
+    for (int i = 0; i <= 8; i++) {
+      if((birth & (1 << i)) != 0) text.append(i);
+    }
+    text.append("/S");
+    for (int i = 0; i <= 8; i++) {
+      if((survival & (1 << i)) != 0) text.append(i);
+    }
+    return text.toString();
+  }
+}
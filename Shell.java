@@ -1,9 +1,24 @@
 package gameoflife;
+import java.io.File;
 
 // the entry point of the program, that sets everything up.
 public class Shell {
 
+   /**
+     Options:
+       --history-spill FILE   moves the oldest recorded generations to FILE instead of dropping
+                              them once the history takes more than its memory
+   */
    public static void main(String args[]) {
+     for (int i = 0; i < args.length; i++) {
+       if(args[i].equals("--history-spill") && i + 1 < args.length) {
+         Configuration.HISTORY_SPILL_FILE = new File(args[++i]);
+       } else {
+         System.err.println("Unknown option " + args[i]);
+         System.err.println("Usage: java gameoflife.Shell [--history-spill FILE]");
+         System.exit(2);
+       }
+     }
 
      Controller controller = new Controller();
      GUI gui = new GUI(controller);
@@ -0,0 +1,317 @@
+package gameoflife;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+  Runs many independent boards at once without a user interface, e.g. for sweeps over seeds and
+  rules. Each submitted board is a Simulation that can be paused, resumed and cancelled; its result
+  can be waited for on its own, or taken from the host in the order the simulations finish.
+
+  A simulation does not get a thread of its own. It computes generations for a slice of time on one
+  of a fixed number of threads shared by all simulations, one per core by default, and is then put
+  back at the end of their queue. So thousands of boards take turns on as many threads as there are
+  cores, and a paused simulation takes no thread at all. The boards are stepped by one thread each;
+  the cores are kept busy by running many boards side by side rather than by splitting one.
+*/
+public class SimulationHost {
+  // how long a simulation keeps its thread before the next one gets a turn
+  private static final long SLICE_NANOS = 2000000L;
+  // HashLife jumps ahead, at most this many generations per slice
+  private static final long HASHLIFE_JUMP = 1L << 16;
+
+  public enum Status {
+    COMPLETED, // all generations were computed
+    SETTLED,   // stopped early, the board repeats itself
+    CANCELLED, // stopped by cancel() or shutdown()
+    FAILED     // the grid threw an exception
+  }
+
+  private final ExecutorService executor;
+  private final AtomicLong nextId = new AtomicLong();
+  // results in the order the simulations finished
+  private final BlockingQueue<Result> results = new LinkedBlockingQueue<Result>();
+  private final AtomicInteger active = new AtomicInteger();
+  private final AtomicLong generations = new AtomicLong();
+  private volatile boolean shutdown = false;
+
+  public SimulationHost() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+    @param threads Number of threads shared by all simulations.
+  */
+  public SimulationHost(int threads) {
+    if(threads < 1) throw new IllegalArgumentException("At least one thread is needed: " + threads);
+    final AtomicInteger threadCount = new AtomicInteger();
+    executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "simulation-host-" + threadCount.incrementAndGet());
+        // a host that was not shut down does not keep the program alive
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  // runs the grid for the given number of generations, going on after the board repeats
+  public Simulation submit(Grid grid, long generations) {
+    return submit(grid, generations, SimulationManager.CycleAction.CONTINUE);
+  }
+
+  /**
+    Starts running a board. The grid belongs to the simulation from now on, it must not be touched
+    until the result is there.
+
+    @param grid The board to run, one the host does not run already.
+    @param generations Number of generations to compute.
+    @param cycleAction What to do once the board repeats itself: STOP ends the simulation as
+           SETTLED, FAST_FORWARD skips all whole periods that are left. HashLife only jumps ahead
+           with CONTINUE, with the others it is stepped one generation at a time until the board
+           repeats, as only consecutive generations show a period.
+  */
+  public Simulation submit(Grid grid, long generations, SimulationManager.CycleAction cycleAction) {
+    if(shutdown) throw new IllegalStateException("The host was shut down");
+    if(generations < 0) throw new IllegalArgumentException("Cannot run a negative number of generations");
+    Simulation simulation = new Simulation(nextId.incrementAndGet(), grid, generations, cycleAction);
+    active.incrementAndGet();
+    simulation.schedule();
+    return simulation;
+  }
+
+  /**
+    Waits for the next simulation to finish, in any way.
+
+    @return Its result, or null if none finished within the timeout.
+  */
+  public Result takeResult(long timeout, TimeUnit unit) throws InterruptedException {
+    return results.poll(timeout, unit);
+  }
+
+  // the next result that is there already, or null
+  public Result pollResult() {
+    return results.poll();
+  }
+
+  // simulations that were submitted and have not finished yet, paused ones included
+  public int getActive() {
+    return active.get();
+  }
+
+  // generations computed by all simulations together, to measure the throughput
+  public long getGenerations() {
+    return generations.get();
+  }
+
+  /**
+    Cancels the simulations that are left once they come to their turn, paused ones once they are
+    resumed or cancelled, and lets the threads end after that. Results can still be taken.
+  */
+  public void shutdown() {
+    shutdown = true;
+    executor.shutdown();
+  }
+
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return executor.awaitTermination(timeout, unit);
+  }
+
+  /**
+    One board run by the host.
+  */
+  public final class Simulation implements Runnable {
+    private final long id;
+    private final Grid grid;
+    private final long target;
+    private final SimulationManager.CycleAction cycleAction;
+    private final CycleDetector cycleDetector = new CycleDetector();
+    private final CompletableFuture<Result> result = new CompletableFuture<Result>();
+
+    private volatile boolean paused = false;
+    private volatile boolean cancelled = false;
+    // set while the simulation waits for or has a thread, so that it is never run twice at once
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    // set by the first of the threads that finish the simulation
+    private final AtomicBoolean finishing = new AtomicBoolean(false);
+    private long elapsed = 0;
+
+    private Simulation(long id, Grid grid, long generations, SimulationManager.CycleAction cycleAction) {
+      this.id = id;
+      this.grid = grid;
+      this.target = grid.getGenerations() + generations;
+      this.cycleAction = cycleAction;
+    }
+
+    public long getId() {
+      return id;
+    }
+
+    // the simulation keeps its board, but gives up its thread after the current slice
+    public void pause() {
+      paused = true;
+    }
+
+    public void resume() {
+      paused = false;
+      schedule();
+    }
+
+    // ends the simulation as CANCELLED after the current generation; a paused one ends right away
+    public void cancel() {
+      cancelled = true;
+      schedule();
+    }
+
+    public boolean isPaused() {
+      return paused;
+    }
+
+    public boolean isDone() {
+      return result.isDone();
+    }
+
+    // the generation the board is at, which may be behind while it is being computed
+    public long getGenerations() {
+      return grid.getGenerations();
+    }
+
+    // completes once the simulation finished in any way, it never completes exceptionally
+    public CompletableFuture<Result> getResult() {
+      return result;
+    }
+
+    private void schedule() {
+      if(result.isDone() || !scheduled.compareAndSet(false, true)) return;
+      try {
+        executor.execute(this);
+      } catch(RejectedExecutionException exception) {
+        // shut down while waiting for its turn
+        scheduled.set(false);
+        finish(Status.CANCELLED, null);
+      }
+    }
+
+    // one slice: generations until the time is up, the board is done or the simulation was stopped
+    public void run() {
+      if(cancelled || shutdown) {
+        finish(Status.CANCELLED, null);
+        return;
+      }
+      long start = System.nanoTime();
+      long before = grid.getGenerations();
+      Status status = null;
+      Throwable failure = null;
+      try {
+        do {
+          status = step();
+        } while(status == null && !paused && !cancelled && System.nanoTime() - start < SLICE_NANOS);
+      } catch(RuntimeException exception) {
+        status = Status.FAILED;
+        failure = exception;
+      }
+      elapsed += System.nanoTime() - start;
+      generations.addAndGet(Math.max(0, grid.getGenerations() - before));
+      if(status != null) {
+        finish(status, failure);
+        return;
+      }
+      scheduled.set(false);
+      // paused during the slice: resume() may have come in between, then it is this call's turn
+      if(!paused || cancelled) schedule();
+    }
+
+    // one generation, or a jump on HashLife; returns the status once the simulation is over
+    private Status step() {
+      if(grid.getGenerations() >= target) return Status.COMPLETED;
+      if(grid instanceof HashLifeGrid && cycleAction == SimulationManager.CycleAction.CONTINUE) {
+        ((HashLifeGrid)grid).advance(Math.min(HASHLIFE_JUMP, target - grid.getGenerations()));
+        return null;
+      }
+      grid.next();
+      if(cycleAction == SimulationManager.CycleAction.CONTINUE || cycleDetector.observe(grid) == 0) return null;
+      if(cycleAction == SimulationManager.CycleAction.STOP) return Status.SETTLED;
+      // the board repeats, only the part of the last period is left to compute
+      for (long i = cycleDetector.stepsBetween(grid.getGenerations(), target); i > 0; i--) {
+        grid.next();
+      }
+      grid.setGenerations(target);
+      return Status.COMPLETED;
+    }
+
+    private void finish(Status status, Throwable failure) {
+      if(!finishing.compareAndSet(false, true)) return;
+      Result finished = new Result(this, status, failure);
+      active.decrementAndGet();
+      results.add(finished);
+      // completed last, so that whoever waits for it finds the host done with it
+      result.complete(finished);
+    }
+  }
+
+  /**
+    How a simulation ended. The grid holds the final board.
+  */
+  public static final class Result {
+    private final long id;
+    private final Grid grid;
+    private final Status status;
+    private final Throwable failure;
+    private final long period, cycleStart;
+    private final long elapsed;
+
+    private Result(Simulation simulation, Status status, Throwable failure) {
+      this.id = simulation.id;
+      this.grid = simulation.grid;
+      this.status = status;
+      this.failure = failure;
+      this.period = simulation.cycleDetector.getPeriod();
+      this.cycleStart = simulation.cycleDetector.getCycleStart();
+      this.elapsed = simulation.elapsed;
+    }
+
+    public long getId() {
+      return id;
+    }
+
+    public Grid getGrid() {
+      return grid;
+    }
+
+    public Status getStatus() {
+      return status;
+    }
+
+    // what the grid threw for FAILED, else null
+    public Throwable getFailure() {
+      return failure;
+    }
+
+    public long getGenerations() {
+      return grid.getGenerations();
+    }
+
+    // the period the board repeats with, 0 if none was found or the cycles were not looked for
+    public long getPeriod() {
+      return period;
+    }
+
+    // the generation the cycle started with, -1 if there is none
+    public long getCycleStart() {
+      return cycleStart;
+    }
+
+    // nanoseconds the simulation had a thread
+    public long getElapsed() {
+      return elapsed;
+    }
+  }
+}
@@ -1,25 +1,92 @@
 package gameoflife;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 // another data class holding everything related to the simulation
 public class SimulationManager {
+  // how the simulation thread is paced
+  enum Mode {
+    FIXED_RATE, // one generation per interval, the time spent computing it counts towards the interval
+    MAX_SPEED   // as fast as possible, in batches so that the thread still wakes up regularly
+  }
+
+  // what to do once the board repeats itself
+  enum CycleAction {
+    CONTINUE,     // keep computing generations
+    STOP,         // stop the simulation
+    FAST_FORWARD  // skip computing still boards, jumps skip whole periods
+  }
+
   private Controller controller;
 
-  private long simulationInterval = Configuration.getDefaultSpeedInterval();
+  // time between two generations in FIXED_RATE mode
+  private volatile long simulationInterval = Configuration.getDefaultSpeedInterval();
+  private volatile Mode mode = Mode.FIXED_RATE;
+  private volatile CycleAction cycleAction = CycleAction.CONTINUE;
 
   public final AtomicBoolean isSimulationRunning = new AtomicBoolean(false);
 
-  private Thread simulationThread;
+  // number of threads computing one generation, picked up by the simulation thread before each step
+  private volatile int parallelism = 1;
+
+  // generations per second actually achieved, measured over the last RATE_WINDOW
+  private volatile double generationsPerSecond = 0;
+
+  private static final long RATE_WINDOW = 500000000L;
+  // length of one batch in MAX_SPEED mode
+  private static final long BATCH_DURATION = 1000000000L / Configuration.FRAMES_PER_SECOND;
+  // in FIXED_RATE mode, give up catching up when more than this many generations behind
+  private static final int MAX_BEHIND = 4;
+
+  // read by the event thread to wake it up, written when it starts and stops
+  private volatile Thread simulationThread;
   SimulationManager(Controller controller) {
     this.controller = controller;
   }
 
+  /**
+    @param simulationInterval Nanoseconds between two generations.
+  */
   public void setSimulationInterval(long simulationInterval) {
     this.simulationInterval = simulationInterval;
+    // a thread waiting out a long interval takes the new one right away
+    wake();
+  }
+
+  public void setMode(Mode mode) {
+    this.mode = mode;
+    wake();
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  public void setCycleAction(CycleAction cycleAction) {
+    this.cycleAction = cycleAction;
+  }
+
+  public CycleAction getCycleAction() {
+    return cycleAction;
   }
 
+  /**
+    Stops the simulation. Called from any other thread, it waits until the simulation thread has
+    finished its generation, so that the caller owns the grid afterwards; it must not hold the
+    controller's lock then, the generation needs it.
+  */
   public void stopSimulation() {
+    Thread thread = simulationThread;
     isSimulationRunning.set(false);
     simulationThread = null;
+    generationsPerSecond = 0;
+    if(thread == null || thread == Thread.currentThread()) return;
+    // wake it up if it waits for the next generation
+    LockSupport.unpark(thread);
+    try {
+      thread.join();
+    } catch(InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    }
   }
 
   public void startSimuation() {
@@ -29,15 +96,53 @@ public class SimulationManager {
 
     simulationThread = new Thread() {
       public void run() {
-        while(isSimulationRunning.get()) {
-          controller.next();
+        long deadline = System.nanoTime();
+        long windowStart = deadline;
+        long windowGenerations = 0;
 
-          try {
-            Thread.sleep(simulationInterval);
-          } catch ( InterruptedException e) {
-            stopSimulation();
+        while(isSimulationRunning.get()) {
+          if(mode == Mode.MAX_SPEED) {
+            // keep stepping for one batch, then let others have a go
+            long batchEnd = System.nanoTime() + BATCH_DURATION;
+            do {
+              controller.next();
+              windowGenerations++;
+              stopIfSettled();
+            } while(System.nanoTime() < batchEnd && isSimulationRunning.get());
+            Thread.yield();
+            deadline = System.nanoTime();
+          } else {
+            controller.next();
+            windowGenerations++;
+            stopIfSettled();
+            // sleep until the next generation is due, measured from when this one was due
+            long interval = simulationInterval;
+            deadline += interval;
+            long now = System.nanoTime();
+            if(now - deadline > MAX_BEHIND * interval) {
+              deadline = now; // too slow to keep up, do not try to make up for it later
+            }
+            // woken up early, make the changes the view asked for and sleep on, until the new
+            // interval is over or right away in another mode
+            while(deadline - now > 0 && isSimulationRunning.get() && !isInterrupted()) {
+              LockSupport.parkNanos(deadline - now);
+              controller.applyBoardChanges();
+              if(mode != Mode.FIXED_RATE) break;
+              deadline += simulationInterval - interval;
+              interval = simulationInterval;
+              now = System.nanoTime();
+            }
+            if(Thread.interrupted()) {
+              stopSimulation();
+            }
           }
 
+          long now = System.nanoTime();
+          if(now - windowStart >= RATE_WINDOW) {
+            generationsPerSecond = windowGenerations * 1e9 / (now - windowStart);
+            windowStart = now;
+            windowGenerations = 0;
+          }
         }
       }
     };
@@ -45,9 +150,55 @@ public class SimulationManager {
     simulationThread.start();
   }
 
+  /**
+    Wakes the simulation thread up if it waits for its next generation, so that it makes the
+    changes handed over to it right away.
+  */
+  public void wake() {
+    Thread thread = simulationThread;
+    if(thread != null) LockSupport.unpark(thread);
+  }
+
+  /**
+    Jumps ahead the given number of generations on the simulation thread, which ends with the jump,
+    so that the event thread goes on drawing meanwhile. Counts as running until it is done.
+  */
+  public void startJump(final long generations) {
+    if(simulationThread != null || isSimulationRunning.get()) return;
+
+    isSimulationRunning.set(true);
+
+    simulationThread = new Thread() {
+      public void run() {
+        controller.advance(generations);
+        stopSimulation();
+      }
+    };
+
+    simulationThread.start();
+  }
+
+  private void stopIfSettled() {
+    if(cycleAction == CycleAction.STOP && controller.getPeriod() > 0) {
+      stopSimulation();
+    }
+  }
+
   public long getSimulationInterval() {
     return simulationInterval;
   }
 
+  public double getGenerationsPerSecond() {
+    return generationsPerSecond;
+  }
+
+  public void setParallelism(int parallelism) {
+    this.parallelism = Math.max(1, parallelism);
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
 
 }
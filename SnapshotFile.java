@@ -0,0 +1,194 @@
+package gameoflife;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+  Binary snapshot of a board, written and read through memory-mapped files.
+
+  Layout, little endian:
+    0   int   magic "GOLS"
+    4   int   version
+    8   int   columns
+    12  int   rows
+    16  long  generation
+    24  byte  length of the rule, followed by the rule in ASCII (at most 39 bytes)
+    64  long  cells, packed like GridSnapshot: ceil(columns / 64) words per row, bit col % 64 of
+              word col / 64 is the cell in column col, bits past the last column are 0
+
+  A BitGrid is copied a row at a time between its words and the mapped file, so saving or loading
+  a 16k x 16k board moves 32 MB without touching single cells. Other grids go through a buffer of
+  one row.
+*/
+public final class SnapshotFile {
+  public static final String EXTENSION = ".gols";
+  private static final int MAGIC = 0x534c4f47; // "GOLS" read as a little endian int
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 64;
+  private static final int MAX_RULE_LENGTH = HEADER_SIZE - 25;
+  // the body is mapped in parts of whole rows no larger than this
+  private static final long MAX_REGION_SIZE = 1L << 28;
+
+  /**
+    What a snapshot file says about the board it holds.
+  */
+  public static final class Header {
+    private final int col, row;
+    private final long generation;
+    private final Rule rule;
+
+    Header(int col, int row, long generation, Rule rule) {
+      this.col = col;
+      this.row = row;
+      this.generation = generation;
+      this.rule = rule;
+    }
+
+    public int getColumns() {
+      return col;
+    }
+
+    public int getRows() {
+      return row;
+    }
+
+    public long getGenerations() {
+      return generation;
+    }
+
+    public Rule getRule() {
+      return rule;
+    }
+  }
+
+  private SnapshotFile() {}
+
+  /**
+    Writes the visible cells, the generation and the rule of the grid to the file, replacing it.
+  */
+  public static void write(File file, Grid grid) throws IOException {
+    int col = grid.getColumns(), row = grid.getRows();
+    int wordsPerRow = GridSnapshot.wordsPerRow(col);
+    try(RandomAccessFile out = new RandomAccessFile(file, "rw");
+        FileChannel channel = out.getChannel()) {
+      out.setLength(HEADER_SIZE + 8L * wordsPerRow * row);
+
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      header.putInt(MAGIC).putInt(VERSION).putInt(col).putInt(row).putLong(grid.getGenerations());
+      byte[] rule = grid.getRule().toString().getBytes(StandardCharsets.US_ASCII);
+      header.put((byte)rule.length).put(rule);
+
+      long[] rowWords = grid instanceof BitGrid ? null : new long[wordsPerRow];
+      int regionRows = regionRows(wordsPerRow);
+      for (int fromRow = 0; fromRow < row; fromRow += regionRows) {
+        int toRow = Math.min(row, fromRow + regionRows);
+        LongBuffer body = mapRows(channel, FileChannel.MapMode.READ_WRITE, wordsPerRow, fromRow, toRow);
+        if(rowWords == null) {
+          ((BitGrid)grid).copyTo(body, fromRow, toRow);
+          continue;
+        }
+        for (int i = fromRow; i < toRow; i++) {
+          Arrays.fill(rowWords, 0L);
+          for (int j = 0; j < col; j++) {
+            if(grid.isAlive(j, i)) rowWords[j >>> 6] |= 1L << j;
+          }
+          body.put(rowWords);
+        }
+      }
+    }
+  }
+
+  public static Header readHeader(File file) throws IOException {
+    try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      return readHeader(channel, file);
+    }
+  }
+
+  /**
+    Restores a snapshot into the grid: the grid is resized to the size of the board in the file and
+    gets its cells, generation and rule.
+
+    @return The header of the file.
+  */
+  public static Header read(File file, Grid grid) throws IOException {
+    try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      Header header = readHeader(channel, file);
+      int col = header.getColumns(), row = header.getRows();
+      int wordsPerRow = GridSnapshot.wordsPerRow(col);
+      try {
+        grid.setRule(header.getRule());
+      } catch(IllegalArgumentException e) {
+        throw new IOException(e.getMessage() + ": " + file);
+      }
+      grid.clear();
+      grid.resize(col, row);
+      int regionRows = regionRows(wordsPerRow);
+      for (int fromRow = 0; fromRow < row; fromRow += regionRows) {
+        int toRow = Math.min(row, fromRow + regionRows);
+        LongBuffer body = mapRows(channel, FileChannel.MapMode.READ_ONLY, wordsPerRow, fromRow, toRow);
+        if(grid instanceof BitGrid) {
+          ((BitGrid)grid).copyFrom(body, fromRow, toRow);
+          continue;
+        }
+        for (int i = fromRow; i < toRow; i++) {
+          for (int w = 0; w < wordsPerRow; w++) {
+            for (long word = body.get(); word != 0; word &= word - 1) {
+              int j = (w << 6) + Long.numberOfTrailingZeros(word);
+              if(j < col) grid.setAlive(j, i, true);
+            }
+          }
+        }
+      }
+      grid.setGenerations(header.getGenerations());
+      return header;
+    }
+  }
+
+  private static Header readHeader(FileChannel channel, File file) throws IOException {
+    if(channel.size() < HEADER_SIZE) throw new IOException("Not a snapshot file: " + file);
+    ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    if(header.getInt() != MAGIC) throw new IOException("Not a snapshot file: " + file);
+    int version = header.getInt();
+    if(version != VERSION) throw new IOException("Unsupported snapshot version " + version + ": " + file);
+    int col = header.getInt(), row = header.getInt();
+    long generation = header.getLong();
+    int ruleLength = header.get() & 0xff;
+    if(col < 0 || row < 0 || generation < 0 || ruleLength > MAX_RULE_LENGTH) {
+      throw new IOException("Corrupt snapshot header: " + file);
+    }
+    byte[] ruleBytes = new byte[ruleLength];
+    header.get(ruleBytes);
+    String rule = new String(ruleBytes, StandardCharsets.US_ASCII);
+    Header result;
+    try {
+      result = new Header(col, row, generation, Rule.parse(rule));
+    } catch(IllegalArgumentException e) {
+      throw new IOException("Unsupported rule " + rule + ": " + file);
+    }
+    long expectedSize = HEADER_SIZE + 8L * GridSnapshot.wordsPerRow(col) * row;
+    if(channel.size() != expectedSize) {
+      throw new IOException("Snapshot is " + channel.size() + " bytes instead of " + expectedSize + ": " + file);
+    }
+    return result;
+  }
+
+  // how many rows go into one mapped region
+  private static int regionRows(int wordsPerRow) {
+    return (int)Math.max(1, MAX_REGION_SIZE / (8L * Math.max(1, wordsPerRow)));
+  }
+
+  private static LongBuffer mapRows(FileChannel channel, FileChannel.MapMode mode, int wordsPerRow,
+      int fromRow, int toRow) throws IOException {
+    long offset = HEADER_SIZE + 8L * wordsPerRow * fromRow;
+    MappedByteBuffer region = channel.map(mode, offset, 8L * wordsPerRow * (toRow - fromRow));
+    return region.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+  }
+}
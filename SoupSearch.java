@@ -0,0 +1,397 @@
+package gameoflife;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+  Soup search: runs many random soups until they settle and counts the objects they leave behind.
+  Like Batch it needs no display.
+
+  java gameoflife.SoupSearch [options]
+    --soups N                 number of soups, 10000 by default
+    --size N                  soups are N x N cells, 16 by default
+    --density D               share of living cells in a soup, 0.5 by default
+    --seed N                  seed of the first soup, 42 by default
+    --rule B.../S...          Life-like rule, B3/S23 by default
+    --engine BITS|SPARSE      BITS (default) runs the soups on BitGrids that grow with them and
+                              only moves the largest to a SparseGrid; SPARSE runs all of them on a
+                              SparseGrid, which is many times slower but gives the same census
+    --threads N               threads running soups, one per core by default
+    --max-generations N       soups that have not settled by then are counted as unsettled,
+                              10000 by default
+    --output FILE             the summary, census.txt by default
+
+  Each soup gets a generator of its own, split off one seeded SplittableRandom in the order of the
+  soups, so the same seed gives the same soups and the same census whatever the number of threads.
+
+  A soup sits in the middle of a window with MARGIN empty cells on every side, on BITS a board of
+  that size. Every CHECK generations the outer EDGE cells of the window are looked at; cells further
+  in cannot reach the edge of the board before the next look, so the board never cuts anything off.
+  An object found there that flies off on its own, e.g. a glider, is counted and taken off the
+  board. Anything else makes the window grow around the cells: on BITS the soup moves to a BitGrid
+  twice the size, and only to a SparseGrid once it outgrows MAX_BOARD. A soup counts as settled once
+  the whole board repeats itself, as a CycleDetector sees it; what is left is then taken apart by the
+  Census. The soups run as tasks on a fixed number of threads, a bounded number at a time, and the
+  census is taken as they finish.
+*/
+public class SoupSearch {
+  // soups on their way per thread, enough to keep the threads busy while the census is taken
+  private static final int SOUPS_PER_THREAD = 64;
+  // empty cells around a soup when it starts, and around the cells when the window grows
+  private static final int MARGIN = 48;
+  // generations between two looks at the edge of the window
+  private static final int CHECK = 8;
+  // the cells looked at, at least one more than a cell can travel until the next look
+  private static final int EDGE = 2 * CHECK;
+  // the largest BitGrid a soup grows to, larger ones go on on a SparseGrid
+  private static final int MAX_BOARD = 1024;
+  // larger objects at the edge are not taken for spaceships
+  private static final int MAX_SHIP = 64;
+
+  private long soups = 10000;
+  private int size = 16;
+  private double density = 0.5;
+  private long seed = 42;
+  private Rule rule = Rule.CONWAY;
+  private GridEngine engine = GridEngine.BITS;
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private long maxGenerations = 10000;
+  private File output = new File("census.txt");
+
+  public static void main(String args[]) {
+    System.setProperty("java.awt.headless", "true");
+    SoupSearch search = new SoupSearch();
+    try {
+      search.parse(args);
+    } catch(IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println("Usage: java gameoflife.SoupSearch [--soups N] [--size N] [--density D] [--seed N]"
+        + " [--rule B.../S...] [--engine BITS|SPARSE] [--threads N] [--max-generations N] [--output FILE]");
+      System.exit(2);
+    }
+    try {
+      System.exit(search.run());
+    } catch(IOException e) {
+      System.err.println(e.getMessage());
+      System.exit(1);
+    } catch(InterruptedException e) {
+      System.err.println("Interrupted");
+      System.exit(1);
+    }
+  }
+
+  private void parse(String args[]) {
+    for (int i = 0; i < args.length; i++) {
+      String option = args[i];
+      if(i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + option);
+      String value = args[++i];
+      try {
+        switch(option) {
+          case "--soups":
+            soups = Long.parseLong(value);
+            break;
+          case "--size":
+            size = Integer.parseInt(value);
+            break;
+          case "--density":
+            density = Double.parseDouble(value);
+            break;
+          case "--seed":
+            seed = Long.parseLong(value);
+            break;
+          case "--rule":
+            rule = Rule.parse(value);
+            break;
+          case "--engine":
+            engine = GridEngine.valueOf(value.toUpperCase());
+            break;
+          case "--threads":
+            threads = Integer.parseInt(value);
+            break;
+          case "--max-generations":
+            maxGenerations = Long.parseLong(value);
+            break;
+          case "--output":
+            output = new File(value);
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown option " + option);
+        }
+      } catch(NumberFormatException e) {
+        throw new IllegalArgumentException("Not a number for " + option + ": " + value);
+      }
+    }
+    if(soups < 0) throw new IllegalArgumentException("Cannot run a negative number of soups");
+    if(size <= 0) throw new IllegalArgumentException("A soup must have at least one cell");
+    if(threads <= 0) throw new IllegalArgumentException("At least one thread is needed");
+    if(maxGenerations < 0) throw new IllegalArgumentException("Cannot run a negative number of generations");
+    if(engine != GridEngine.SPARSE && engine != GridEngine.BITS) {
+      throw new IllegalArgumentException("Soups run on the SPARSE or BITS engine");
+    }
+    if(rule.hasBirthOnZero()) throw new IllegalArgumentException("Soups cannot run rule " + rule + ", it has B0");
+  }
+
+  // the soup in the middle of its window, which is the whole board on BITS
+  private Soup soup(long number, SplittableRandom random) {
+    // whole words, the edge of a BitGrid is then found in the first and last word of the rows
+    int side = (size + 2 * MARGIN + 63) & ~63;
+    Grid grid = engine.create(side, side);
+    grid.setRule(rule);
+    int offset = (side - size) / 2;
+    for (int i = 0; i < size; i++) {
+      long bits = 0;
+      for (int j = 0; j < size; j++) {
+        boolean alive;
+        if(density == 0.5) {
+          // a random long gives 64 cells
+          if((j & 63) == 0) bits = random.nextLong();
+          alive = (bits >>> (j & 63) & 1) != 0;
+        } else {
+          alive = random.nextDouble() < density;
+        }
+        if(alive) grid.setAlive(offset + j, offset + i, true);
+      }
+    }
+    return new Soup(number, grid, maxGenerations);
+  }
+
+  // runs the soups and writes the summary, returns the exit status
+  private int run() throws IOException, InterruptedException {
+    final AtomicInteger threadCount = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "soup-search-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    CompletionService<List<String>> soupsDone = new ExecutorCompletionService<List<String>>(executor);
+    SplittableRandom random = new SplittableRandom(seed);
+    Census census = new Census(rule);
+    long submitted = 0, finished = 0, unsettled = 0, failed = 0;
+    // the first soup that failed, the others most likely failed the same way
+    Throwable failure = null;
+    long start = System.nanoTime();
+    while(finished < soups) {
+      while(submitted < soups && submitted - finished < (long)threads * SOUPS_PER_THREAD) {
+        soupsDone.submit(soup(submitted, random.split()));
+        submitted++;
+      }
+      try {
+        List<String> codes = soupsDone.take().get();
+        if(codes != null) {
+          census.addBoard(codes);
+        } else {
+          census.addBoard();
+          unsettled++;
+        }
+      } catch(ExecutionException e) {
+        census.addBoard();
+        if(failure == null) failure = e.getCause();
+        failed++;
+      }
+      finished++;
+    }
+    long elapsed = System.nanoTime() - start;
+    executor.shutdown();
+
+    double soupsPerSecond = elapsed > 0 ? soups * 1e9 / elapsed : 0;
+    PrintWriter writer = new PrintWriter(output, "UTF-8");
+    try {
+      writer.println("# Soup search");
+      writer.println("# rule " + rule + ", " + size + "x" + size + " soups, density " + density + ", seed " + seed
+        + ", engine " + engine);
+      writer.println("# soups " + soups + ", unsettled " + unsettled + (failed > 0 ? ", failed " + failed : "")
+        + ", objects " + census.getObjects());
+      if(failure != null) writer.println("# first failure: " + failure);
+      writer.println("# " + (elapsed / 1000000) + " ms, " + Math.round(soupsPerSecond) + " soups/s, "
+        + threads + " threads");
+      writer.println("# apgcode count [name]");
+      for (String code : census.getCodes()) {
+        String name = rule.equals(Rule.CONWAY) ? Census.getName(code) : null;
+        writer.println(code + " " + census.getCount(code) + (name != null ? " " + name : ""));
+      }
+    } finally {
+      writer.close();
+    }
+
+    System.out.println("Soups: " + soups + ", unsettled " + unsettled + (failed > 0 ? ", failed " + failed : ""));
+    System.out.println("Time: " + (elapsed / 1000000) + " ms");
+    System.out.println("Soups per second: " + Math.round(soupsPerSecond));
+    System.out.println("Objects: " + census.getObjects());
+    List<String> codes = census.getCodes();
+    for (int i = 0; i < Math.min(10, codes.size()); i++) {
+      System.out.println("  " + codes.get(i) + " " + census.getCount(codes.get(i)));
+    }
+    System.out.println("Census written to " + output.getPath());
+    if(failure != null) {
+      System.err.println("First failure, of " + failed + ":");
+      failure.printStackTrace();
+    }
+    return failed > 0 ? 1 : 0;
+  }
+
+  /**
+    One soup on its way to settling. The window is the part of the plane whose edge is watched, on a
+    BitGrid the board itself.
+  */
+  private static final class Soup implements Callable<List<String>> {
+    private final long number; // in the order of the soups, which with the seed gives the soup again
+    private Grid grid;
+    private final long maxGenerations;
+    private final CycleDetector cycleDetector = new CycleDetector();
+    private int left, top, right, bottom; // the window, right and bottom exclusive
+    // spaceships taken off the board on their way out
+    private final List<String> ships = new ArrayList<String>();
+
+    Soup(long number, Grid grid, long maxGenerations) {
+      this.number = number;
+      this.grid = grid;
+      this.maxGenerations = maxGenerations;
+      right = grid.getColumns();
+      bottom = grid.getRows();
+    }
+
+    // the apgcodes of the objects the soup settles into, or null if it did not settle in time
+    public List<String> call() {
+      try {
+        return settle();
+      } catch(RuntimeException e) {
+        throw new IllegalStateException("Soup " + number + " failed in generation " + grid.getGenerations(), e);
+      }
+    }
+
+    private List<String> settle() {
+      Census census = new Census(grid.getRule());
+      while(grid.getGenerations() < maxGenerations) {
+        grid.next();
+        if(grid.getGenerations() % CHECK == 0 && isNearEdge()) {
+          clearEdge();
+          // the board was changed from the outside
+          cycleDetector.reset();
+          continue;
+        }
+        long period = cycleDetector.observe(grid);
+        if(period > 0) {
+          List<String> codes = census.survey(grid, period);
+          codes.addAll(ships);
+          return codes;
+        }
+      }
+      return null;
+    }
+
+    // whether there are living cells within EDGE cells of the edge of the window
+    private boolean isNearEdge() {
+      if(grid instanceof BitGrid) {
+        BitGrid bits = (BitGrid)grid;
+        int rows = bits.getRows(), words = (bits.getColumns() + 63) >>> 6;
+        long west = (1L << EDGE) - 1, east = west << (64 - EDGE);
+        for (int i = 0; i < rows; i++) {
+          if(i < EDGE || i >= rows - EDGE) {
+            for (int w = 0; w < words; w++) {
+              if(bits.getWord(i, w) != 0) return true;
+            }
+          } else if((bits.getWord(i, 0) & west) != 0 || (bits.getWord(i, words - 1) & east) != 0) {
+            return true;
+          }
+        }
+        return false;
+      }
+      GridStatistics statistics = grid.getStatistics();
+      return !statistics.isEmpty() && (statistics.getMinColumn() < left + EDGE || statistics.getMaxColumn() >= right - EDGE
+        || statistics.getMinRow() < top + EDGE || statistics.getMaxRow() >= bottom - EDGE);
+    }
+
+    /**
+      Takes the spaceships at the edge off the board. The cells at the edge are grouped with the
+      living cells at most two cells away from them, and so on; a group that comes back to its shape
+      elsewhere on its own is a spaceship. If anything else is left at the edge, the window grows.
+    */
+    private void clearEdge() {
+      long[] cells = Census.livingCells(grid);
+      LongHashSet alive = new LongHashSet(cells.length);
+      for (long key : cells) alive.add(key);
+      LongHashSet seen = new LongHashSet();
+      long[] group = new long[16];
+      boolean grow = false;
+      for (long key : cells) {
+        int col = SparseGrid.colOf(key), row = SparseGrid.rowOf(key);
+        boolean atEdge = col < left + EDGE || col >= right - EDGE || row < top + EDGE || row >= bottom - EDGE;
+        if(!atEdge || !seen.add(key)) continue;
+        int count = 0;
+        group[count++] = key;
+        // the group itself is the stack, the cells after `next` are yet to be looked around
+        for (int next = 0; next < count; next++) {
+          int c = SparseGrid.colOf(group[next]), r = SparseGrid.rowOf(group[next]);
+          for (int i = -2; i <= 2; i++) {
+            for (int j = -2; j <= 2; j++) {
+              long neighbour = SparseGrid.pack(c + j, r + i);
+              if(!alive.contains(neighbour) || !seen.add(neighbour)) continue;
+              if(count == group.length) group = Arrays.copyOf(group, 2 * count);
+              group[count++] = neighbour;
+            }
+          }
+        }
+        String code = count <= MAX_SHIP ? Census.classify(Arrays.copyOf(group, count), grid.getRule()) : Census.UNKNOWN;
+        if(!code.startsWith("xq")) {
+          grow = true;
+          continue;
+        }
+        ships.add(code);
+        for (int k = 0; k < count; k++) {
+          grid.setAlive(SparseGrid.colOf(group[k]), SparseGrid.rowOf(group[k]), false);
+        }
+      }
+      if(grow) growWindow();
+    }
+
+    /**
+      Doubles the window until it has MARGIN cells to spare around the cells, centred on them. A
+      BitGrid is copied to a board of the new size, up to MAX_BOARD; beyond that the soup goes on
+      on a SparseGrid. The same soup makes the same decisions on either engine.
+    */
+    private void growWindow() {
+      GridStatistics statistics = grid.getStatistics();
+      if(statistics.isEmpty()) return;
+      long minCol = statistics.getMinColumn(), maxCol = statistics.getMaxColumn();
+      long minRow = statistics.getMinRow(), maxRow = statistics.getMaxRow();
+      int side = right - left;
+      do {
+        side *= 2;
+      } while(side < Math.max(maxCol - minCol, maxRow - minRow) + 1 + 2 * MARGIN);
+      int fromCol = (int)Math.floorDiv(minCol + maxCol + 1 - side, 2);
+      int fromRow = (int)Math.floorDiv(minRow + maxRow + 1 - side, 2);
+      if(grid instanceof SparseGrid) {
+        left = fromCol;
+        top = fromRow;
+      } else {
+        Grid larger = side <= MAX_BOARD ? new BitGrid(side, side) : new SparseGrid(side, side);
+        larger.setRule(grid.getRule());
+        // cells keep their place on a SparseGrid, a BitGrid starts at 0
+        int shiftCol = larger instanceof BitGrid ? -fromCol : 0, shiftRow = larger instanceof BitGrid ? -fromRow : 0;
+        for (long key : Census.livingCells(grid)) {
+          larger.setAlive(SparseGrid.colOf(key) + shiftCol, SparseGrid.rowOf(key) + shiftRow, true);
+        }
+        larger.setGenerations(grid.getGenerations());
+        grid = larger;
+        left = fromCol + shiftCol;
+        top = fromRow + shiftRow;
+      }
+      right = left + side;
+      bottom = top + side;
+    }
+  }
+}
@@ -0,0 +1,235 @@
+package gameoflife;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+  Unbounded grid that only stores the living cells, as packed (col, row) longs in a primitive hash set.
+  A generation is computed by counting the neighbours of every living cell, so the cost and the memory
+  follow the population, not the area.
+
+  The columns and rows only describe the window that is shown; patterns may leave it and come back.
+  Coordinates wrap around at the int range.
+*/
+public class SparseGrid implements Grid {
+  private LongHashSet alive = new LongHashSet();
+  // buffers for the next generation, cleared and reused every step while they fit the population
+  private LongHashSet nextAlive = new LongHashSet();
+  private LongCountMap neighbours = new LongCountMap();
+  private int col, row;
+  private long generations = 0;
+  private Rule rule = Rule.CONWAY;
+  // what changed in the last generation
+  private long births = 0, deaths = 0;
+  // CycleDetector.hashCell of every living cell XORed together, taken along while stepping
+  private long cellHash = 0;
+  // tiles of the visible board in the statistics
+  private static final int TILE_WIDTH = 64, TILE_HEIGHT = 32;
+
+  public SparseGrid(int col, int row) {
+    this.col = col;
+    this.row = row;
+  }
+
+  static long pack(int col, int row) {
+    return ((long)col << 32) | (row & 0xffffffffL);
+  }
+
+  static int colOf(long key) {
+    return (int)(key >> 32);
+  }
+
+  static int rowOf(long key) {
+    return (int)key;
+  }
+
+  public boolean isAlive(int col, int row) {
+    return alive.contains(pack(col, row));
+  }
+
+  public void setAlive(int col, int row, boolean alive) {
+    long key = pack(col, row);
+    if(alive ? this.alive.add(key) : this.alive.remove(key)) cellHash ^= CycleDetector.hashCell(key);
+  }
+
+  /**
+    Hash of the living cells for the CycleDetector, on the whole plane; it costs nothing to read.
+  */
+  public long getCellHash() {
+    return cellHash;
+  }
+
+  public void next() {
+    // every living cell adds one to each of its 8 neighbours; the tables shrink with the population
+    neighbours.clear(4 * alive.size());
+    for (int slot = alive.firstSlot(); slot >= 0; slot = alive.nextSlot(slot)) {
+      long key = alive.keyAt(slot);
+      int c = colOf(key), r = rowOf(key);
+      neighbours.increment(pack(c - 1, r - 1));
+      neighbours.increment(pack(c, r - 1));
+      neighbours.increment(pack(c + 1, r - 1));
+      neighbours.increment(pack(c - 1, r));
+      neighbours.increment(pack(c + 1, r));
+      neighbours.increment(pack(c - 1, r + 1));
+      neighbours.increment(pack(c, r + 1));
+      neighbours.increment(pack(c + 1, r + 1));
+    }
+    // only cells with a living neighbour can be alive next round, as there is no birth on 0
+    nextAlive.clear(alive.size());
+    int survivors = 0;
+    long hash = 0;
+    for (int slot = neighbours.firstSlot(); slot >= 0; slot = neighbours.nextSlot(slot)) {
+      int count = neighbours.countAt(slot);
+      long key = neighbours.keyAt(slot);
+      boolean wasAlive = alive.contains(key);
+      if(rule.next(wasAlive, count)) {
+        nextAlive.add(key);
+        hash ^= CycleDetector.hashCell(key);
+        if(wasAlive) survivors++;
+      }
+    }
+    // ... except for living cells without any, which the counting above never sees
+    if(rule.next(true, 0)) {
+      for (int slot = alive.firstSlot(); slot >= 0; slot = alive.nextSlot(slot)) {
+        long key = alive.keyAt(slot);
+        if(neighbours.get(key) == 0) {
+          nextAlive.add(key);
+          hash ^= CycleDetector.hashCell(key);
+          survivors++;
+        }
+      }
+    }
+    births = nextAlive.size() - survivors;
+    deaths = alive.size() - survivors;
+    LongHashSet previous = alive;
+    alive = nextAlive;
+    nextAlive = previous;
+    cellHash = hash;
+    generations++;
+  }
+
+  /**
+    @throws IllegalArgumentException If the rule has B0, which would fill the unbounded plane.
+  */
+  public void setRule(Rule rule) {
+    if(rule.hasBirthOnZero()) throw new IllegalArgumentException("Rule " + rule + " needs a bounded grid");
+    this.rule = rule;
+  }
+
+  public Rule getRule() {
+    return rule;
+  }
+
+  public int getLivingCells() {
+    return alive.size();
+  }
+
+  public void resize(int cols, int rows) {
+    col = cols;
+    row = rows;
+  }
+
+  public int getColumns() {
+    return col;
+  }
+
+  public int getRows() {
+    return row;
+  }
+
+  public long getGenerations() {
+    return generations;
+  }
+
+  public void setGenerations(long generations) {
+    this.generations = generations;
+  }
+
+  // the living cells, packed like pack(), in no particular order
+  long[] getCellKeys() {
+    long[] keys = new long[alive.size()];
+    int count = 0;
+    for (int slot = alive.firstSlot(); slot >= 0; slot = alive.nextSlot(slot)) {
+      keys[count++] = alive.keyAt(slot);
+    }
+    return keys;
+  }
+
+  /**
+    Copies the visible board into packed words (GridSnapshot layout), with one pass over the living
+    cells instead of a lookup per cell.
+  */
+  public void copyTo(long[] words) {
+    int wordsPerRow = GridSnapshot.wordsPerRow(col);
+    Arrays.fill(words, 0, wordsPerRow * row, 0L);
+    for (int slot = alive.firstSlot(); slot >= 0; slot = alive.nextSlot(slot)) {
+      long key = alive.keyAt(slot);
+      int c = colOf(key), r = rowOf(key);
+      if(c >= 0 && c < col && r >= 0 && r < row) words[r * wordsPerRow + (c >>> 6)] |= 1L << c;
+    }
+  }
+
+  public Collection<Cell> getPopulation() {
+    ArrayList<Cell> collection = new ArrayList<Cell>(alive.size());
+    for (int slot = alive.firstSlot(); slot >= 0; slot = alive.nextSlot(slot)) {
+      Cell cell = new Cell();
+      cell.isAlive = true;
+      collection.add(cell);
+    }
+    return collection;
+  }
+
+  /**
+    The population and the births and deaths are counted while stepping; the bounding box and the
+    tiles come from one pass over the living cells, which costs as much as the population.
+  */
+  public GridStatistics getStatistics() {
+    int tileCols = (col + TILE_WIDTH - 1) / TILE_WIDTH;
+    int[] tilePopulation = new int[tileCols * ((row + TILE_HEIGHT - 1) / TILE_HEIGHT)];
+    int minCol = Integer.MAX_VALUE, minRow = Integer.MAX_VALUE, maxCol = Integer.MIN_VALUE, maxRow = Integer.MIN_VALUE;
+    for (int slot = alive.firstSlot(); slot >= 0; slot = alive.nextSlot(slot)) {
+      long key = alive.keyAt(slot);
+      int c = colOf(key), r = rowOf(key);
+      minCol = Math.min(minCol, c);
+      maxCol = Math.max(maxCol, c);
+      minRow = Math.min(minRow, r);
+      maxRow = Math.max(maxRow, r);
+      if(c >= 0 && c < col && r >= 0 && r < row) tilePopulation[(r / TILE_HEIGHT) * tileCols + c / TILE_WIDTH]++;
+    }
+    if(alive.size() == 0) minCol = minRow = maxCol = maxRow = 0;
+    return new GridStatistics(generations, alive.size(), births, deaths, minCol, minRow, maxCol, maxRow,
+      col, row, TILE_WIDTH, TILE_HEIGHT, tilePopulation);
+  }
+
+  // one pass over the living cells, like the statistics
+  public void countBlocks(long col, long row, int level, int cols, int rows, int[] counts) {
+    Arrays.fill(counts, 0, cols * rows, 0);
+    long width = (long)cols << level, height = (long)rows << level;
+    for (int slot = alive.firstSlot(); slot >= 0; slot = alive.nextSlot(slot)) {
+      long key = alive.keyAt(slot);
+      long x = colOf(key) - col, y = rowOf(key) - row;
+      if(x >= 0 && x < width && y >= 0 && y < height) counts[(int)(y >> level) * cols + (int)(x >> level)]++;
+    }
+  }
+
+  public void clear() {
+    // start from small tables again, a cleared board should not hold on to the memory
+    alive = new LongHashSet();
+    nextAlive = new LongHashSet();
+    neighbours = new LongCountMap();
+    generations = 0;
+    births = deaths = 0;
+    cellHash = 0;
+  }
+
+  public String toString() {
+    StringBuilder rep = new StringBuilder((col + 1) * row);
+    for (int i = 0; i < row; i++) {
+      for (int j = 0; j < col; j++) {
+        rep.append(isAlive(j, i) ? 'X' : '.');
+      }
+      rep.append('\n'); // new line for a new row.
+    }
+    return rep.toString();
+  }
+}
@@ -0,0 +1,60 @@
+package gameoflife;
+
+/**
+  What lies beyond the edges of a bounded board. The grids fill a ring of halo cells around the
+  board from these mappings once per generation, so the neighbour counting itself never looks at
+  the edges.
+*/
+public enum Topology {
+  // everything outside the board is dead
+  DEAD,
+  // leaving on one side comes back on the opposite side
+  TORUS,
+  // left and right are joined like a torus, top and bottom with the columns flipped
+  KLEIN_BOTTLE,
+  // the edges are mirrors: the cells just outside repeat the cells on the edge
+  MIRROR;
+
+  /**
+    The row that stands in for the given row, which is at most one row outside the board.
+
+    @return The row on the board, or -1 if the cell is dead.
+  */
+  public int sourceRow(int row, int rows) {
+    if(row >= 0 && row < rows) return row;
+    switch(this) {
+      case TORUS:
+      case KLEIN_BOTTLE:
+        return row < 0 ? rows - 1 : 0;
+      case MIRROR:
+        return row < 0 ? 0 : rows - 1;
+      default:
+        return -1;
+    }
+  }
+
+  /**
+    The column that stands in for the cell (col, row), which is at most one cell outside the board.
+
+    @return The column on the board, or -1 if the cell is dead.
+  */
+  public int sourceColumn(int col, int row, int cols, int rows) {
+    int source = col;
+    if(col < 0 || col >= cols) {
+      switch(this) {
+        case TORUS:
+        case KLEIN_BOTTLE:
+          source = col < 0 ? cols - 1 : 0;
+          break;
+        case MIRROR:
+          source = col < 0 ? 0 : cols - 1;
+          break;
+        default:
+          return -1;
+      }
+    }
+    // crossing the top or bottom of a Klein bottle flips the columns
+    if(this == KLEIN_BOTTLE && (row < 0 || row >= rows)) source = cols - 1 - source;
+    return source;
+  }
+}
@@ -0,0 +1,137 @@
+package gameoflife;
+
+/**
+  The part of the plane the canvas shows: the cell under the top left pixel, the size of a cell in
+  pixels, which may be a fraction of a pixel, and the size of the canvas. Immutable, so that it can
+  be handed from the view to the simulation thread as it is.
+
+  From one pixel per cell down the snapshots hold the cells of a window around the viewport. Below
+  that they hold how many cells are alive in square blocks of 2^level cells, each at least a pixel
+  wide, so a frame takes about as much work as the canvas has pixels, however large the board is.
+*/
+public final class Viewport {
+  // blocks of up to 2^MAX_LEVEL cells, so that their counts still fit into an int
+  public static final int MAX_LEVEL = 15;
+  public static final double MIN_CELL_SIZE = 1.0 / (1 << MAX_LEVEL);
+  public static final double MAX_CELL_SIZE = 64;
+
+  private final double col, row;
+  private final double cellSize;
+  private final int width, height;
+
+  public Viewport(double col, double row, double cellSize, int width, int height) {
+    this.col = col;
+    this.row = row;
+    this.cellSize = Math.max(MIN_CELL_SIZE, Math.min(MAX_CELL_SIZE, cellSize));
+    this.width = Math.max(0, width);
+    this.height = Math.max(0, height);
+  }
+
+  /**
+    The view of a board at the given cell size, centered horizontally if it is narrower than the canvas.
+  */
+  public static Viewport home(int cols, int rows, double cellSize, int width, int height) {
+    double margin = Math.max(0, (width - cols * cellSize) / 2);
+    return new Viewport(-margin / cellSize, 0, cellSize, width, height);
+  }
+
+  // the same view, with the cell under (x, y) staying where it is
+  public Viewport zoomAt(int x, int y, double factor) {
+    double size = Math.max(MIN_CELL_SIZE, Math.min(MAX_CELL_SIZE, cellSize * factor));
+    return new Viewport(col + x / cellSize - x / size, row + y / cellSize - y / size, size, width, height);
+  }
+
+  // the same view, moved along with the mouse by (dx, dy) pixels
+  public Viewport panBy(int dx, int dy) {
+    return new Viewport(col - dx / cellSize, row - dy / cellSize, cellSize, width, height);
+  }
+
+  public Viewport withSize(int width, int height) {
+    return new Viewport(col, row, cellSize, width, height);
+  }
+
+  public double getColumn() {
+    return col;
+  }
+
+  public double getRow() {
+    return row;
+  }
+
+  public double getCellSize() {
+    return cellSize;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**********************
+    Level of detail, the window is aligned to the blocks of the level
+  */
+  // 0 for one cell per sample, else the blocks are 2^level cells wide
+  public int getLevel() {
+    int level = 0;
+    while(level < MAX_LEVEL && (1 << level) * cellSize < 1) level++;
+    return level;
+  }
+
+  public long getWindowColumn() {
+    int level = getLevel();
+    return ((long)Math.floor(col) >> level) << level;
+  }
+
+  public long getWindowRow() {
+    int level = getLevel();
+    return ((long)Math.floor(row) >> level) << level;
+  }
+
+  // number of blocks (or cells on level 0) that cover the canvas from the window column on
+  public int getWindowColumns() {
+    return (int)(((long)Math.floor(col + width / cellSize) - getWindowColumn()) >> getLevel()) + 1;
+  }
+
+  public int getWindowRows() {
+    return (int)(((long)Math.floor(row + height / cellSize) - getWindowRow()) >> getLevel()) + 1;
+  }
+
+  /**********************
+    Pixels
+  */
+  // the column under pixel x
+  public long columnAt(int x) {
+    return (long)Math.floor(col + x / cellSize);
+  }
+
+  public long rowAt(int y) {
+    return (long)Math.floor(row + y / cellSize);
+  }
+
+  // the left pixel of a column, kept just outside the canvas for columns far off it
+  public int toX(long col) {
+    return (int)Math.max(-1, Math.min(width + 1, Math.floor((col - this.col) * cellSize)));
+  }
+
+  public int toY(long row) {
+    return (int)Math.max(-1, Math.min(height + 1, Math.floor((row - this.row) * cellSize)));
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if(!(other instanceof Viewport)) return false;
+    Viewport viewport = (Viewport)other;
+    return col == viewport.col && row == viewport.row && cellSize == viewport.cellSize
+      && width == viewport.width && height == viewport.height;
+  }
+
+  @Override
+  public int hashCode() {
+    long hash = Double.doubleToLongBits(col) * 31 + Double.doubleToLongBits(row);
+    hash = hash * 31 + Double.doubleToLongBits(cellSize);
+    return (int)(hash ^ (hash >>> 32)) * 31 * 31 + width * 31 + height;
+  }
+}
@@ -0,0 +1,49 @@
+package gameoflife;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+  Checks that stepping a grid does not allocate once it is warmed up.
+  Counts the bytes allocated by this thread over a number of generations (HotSpot only),
+  prints the figures and exits with 1 if anything was allocated on the hot path.
+
+  mvn -P benchmarks package
+  java -cp target/benchmarks.jar gameoflife.AllocationBenchmark [columns] [rows] [generations]
+*/
+public class AllocationBenchmark {
+
+  public static void main(String args[]) {
+    int cols = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+    int rows = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+    int generations = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+
+    BitGrid grid = new BitGrid(cols, rows);
+    Random random = new Random(42);
+    for (int i = 0; i < rows; i++) {
+      for (int j = 0; j < cols; j++) {
+        grid.setAlive(j, i, random.nextInt(3) == 0);
+      }
+    }
+    // let the JIT settle before measuring
+    for (int i = 0; i < 200; i++) {
+      grid.next();
+    }
+
+    long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+    long start = System.nanoTime();
+    for (int i = 0; i < generations; i++) {
+      grid.next();
+    }
+    long elapsed = System.nanoTime() - start;
+    long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+    System.out.println("Board: " + cols + "x" + rows + ", " + generations + " generations");
+    System.out.println("Time per generation: " + (elapsed / generations / 1000) + " us");
+    System.out.println("Bytes allocated per generation: " + ((double)allocated / generations));
+    // a few bytes may come from the measurement itself, but never one per generation
+    System.exit(allocated < generations ? 0 : 1);
+  }
+}
@@ -0,0 +1,147 @@
+package gameoflife;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+  JMH benchmarks of stepping, resizing, zoomed out snapshots, population and statistics queries on every grid
+  implementation,
+  over square boards of several sizes and three kinds of starting patterns.
+
+  mvn -P benchmarks package
+  java -jar target/benchmarks.jar [jmh options]
+
+  Without options the whole suite runs with the gc profiler, so that the allocation rate is reported
+  next to ops/s, and the results are written to target/benchmarks.json.
+  The classic grid keeps an object per cell and cannot hold the largest boards; those combinations
+  fail in the setup and are reported as errors.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class GridBenchmark {
+  // the biggest board the classic grid is asked to hold
+  private static final int MAX_CLASSIC_SIZE = 2048;
+
+  public enum Pattern {
+    // random cells with a density of 1/3
+    SOUP,
+    // gliders spread thinly over the board
+    GLIDERS,
+    // mostly blocks and beehives, a few blinkers keep some tiles busy
+    STILL_LIFES
+  }
+
+  @Param({"CLASSIC", "BITS", "HASHLIFE", "SPARSE"})
+  public GridEngine engine;
+
+  @Param({"64", "512", "2048", "8192"})
+  public int size;
+
+  @Param({"SOUP", "GLIDERS", "STILL_LIFES"})
+  public Pattern pattern;
+
+  private Grid grid;
+
+  // every iteration starts from the same board, a soup would otherwise settle down over time
+  @Setup(Level.Iteration)
+  public void setUp() {
+    if(engine == GridEngine.CLASSIC && size > MAX_CLASSIC_SIZE) {
+      throw new IllegalStateException("The classic grid is not benchmarked beyond " + MAX_CLASSIC_SIZE + " cells a side");
+    }
+    grid = engine.create(size, size);
+    fill(grid, pattern, new Random(42));
+  }
+
+  @Benchmark
+  public Grid step() {
+    grid.next();
+    return grid;
+  }
+
+  @Benchmark
+  public Grid resize() {
+    grid.resize(size + size / 2, size + size / 2);
+    grid.resize(size, size);
+    return grid;
+  }
+
+  // what the canvas asks for when the whole board is zoomed out to 1024 x 1024 pixels
+  @Benchmark
+  public GridSnapshot zoomedOut() {
+    return GridSnapshot.of(grid, 0, new Viewport(0, 0, 1024.0 / size, 1024, 1024), null, 0, 0, -1);
+  }
+
+  @Benchmark
+  public void population(Blackhole blackhole) {
+    blackhole.consume(grid.getPopulation().size());
+  }
+
+  @Benchmark
+  public GridStatistics statistics() {
+    return grid.getStatistics();
+  }
+
+  static void fill(Grid grid, Pattern pattern, Random random) {
+    int cols = grid.getColumns(), rows = grid.getRows();
+    switch(pattern) {
+      case SOUP:
+        for (int i = 0; i < rows; i++) {
+          for (int j = 0; j < cols; j++) {
+            if(random.nextInt(3) == 0) grid.setAlive(j, i, true);
+          }
+        }
+        break;
+      case GLIDERS:
+        // one glider in every 32 x 32 square, all heading the same way
+        for (int i = 0; i + 3 < rows; i += 32) {
+          for (int j = 0; j + 3 < cols; j += 32) {
+            place(grid, j + random.nextInt(16), i + random.nextInt(16), GLIDER);
+          }
+        }
+        break;
+      case STILL_LIFES:
+        for (int i = 0; i + 4 < rows; i += 8) {
+          for (int j = 0; j + 4 < cols; j += 8) {
+            int kind = random.nextInt(16);
+            place(grid, j, i, kind == 0 ? BLINKER : kind % 2 == 0 ? BLOCK : BEEHIVE);
+          }
+        }
+        break;
+    }
+  }
+
+  private static final int[][] GLIDER = {{1, 0}, {2, 1}, {0, 2}, {1, 2}, {2, 2}};
+  private static final int[][] BLOCK = {{0, 0}, {1, 0}, {0, 1}, {1, 1}};
+  private static final int[][] BEEHIVE = {{1, 0}, {2, 0}, {0, 1}, {3, 1}, {1, 2}, {2, 2}};
+  private static final int[][] BLINKER = {{0, 1}, {1, 1}, {2, 1}};
+
+  private static void place(Grid grid, int col, int row, int[][] cells) {
+    for (int[] cell : cells) {
+      grid.setAlive(col + cell[0], row + cell[1], true);
+    }
+  }
+
+  public static void main(String args[]) throws Exception {
+    if(args.length > 0) {
+      org.openjdk.jmh.Main.main(args);
+      return;
+    }
+    Options options = new OptionsBuilder()
+      .include(GridBenchmark.class.getSimpleName())
+      .addProfiler(GCProfiler.class)
+      .resultFormat(ResultFormatType.JSON)
+      .result("target/benchmarks.json")
+      .build();
+    new Runner(options).run();
+  }
+}
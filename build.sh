@@ -1,3 +1,3 @@
 javac *.java
 mv *.class gameoflife
-java gameoflife.Shell
+java gameoflife.Shell "$@"
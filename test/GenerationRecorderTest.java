@@ -0,0 +1,122 @@
+package gameoflife;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+  Records random soups generation by generation, the way the controller does, and rebuilds every
+  recorded generation from the records: within a segment, across keyframes, after stepping back and
+  going on from there, and from segments that were moved to the spill file.
+*/
+public class GenerationRecorderTest {
+  private static final int KEYFRAME_INTERVAL = 8;
+  private File spillFile;
+
+  @Before
+  public void createFile() throws IOException {
+    spillFile = File.createTempFile("history", ".spill");
+  }
+
+  @After
+  public void deleteFile() {
+    spillFile.delete();
+  }
+
+  // a width that does not fill the last word of a row
+  private static Grid soup(GridEngine engine, long seed) {
+    Grid grid = engine.create(130, 70);
+    SplittableRandom random = new SplittableRandom(seed);
+    for (int i = 0; i < 70; i++) {
+      for (int j = 0; j < 130; j++) {
+        if(random.nextInt(3) == 0) grid.setAlive(j, i, true);
+      }
+    }
+    return grid;
+  }
+
+  // records the start and the given number of steps, returns the cells of every generation
+  private static ArrayList<long[]> run(GenerationRecorder recorder, Grid grid, int generations) {
+    ArrayList<long[]> cells = new ArrayList<long[]>();
+    recorder.record(grid);
+    cells.add(GridSnapshot.copyCells(grid));
+    for (int generation = 1; generation <= generations; generation++) {
+      grid.next();
+      recorder.recordStep(grid);
+      cells.add(GridSnapshot.copyCells(grid));
+    }
+    return cells;
+  }
+
+  @Test
+  public void reconstructsAcrossKeyframes() throws IOException {
+    for (GridEngine engine : new GridEngine[] {GridEngine.BITS, GridEngine.CLASSIC}) {
+      GenerationRecorder recorder = new GenerationRecorder(KEYFRAME_INTERVAL, 64L << 20, null);
+      ArrayList<long[]> cells = run(recorder, soup(engine, 1), 5 * KEYFRAME_INTERVAL + 3);
+      assertEquals(0, recorder.getFirstGeneration());
+      assertEquals(cells.size() - 1, recorder.getLastGeneration());
+      for (int generation = 0; generation < cells.size(); generation++) {
+        assertArrayEquals(engine + " generation " + generation, cells.get(generation), recorder.reconstruct(generation));
+      }
+    }
+  }
+
+  // stepping back keeps the later generations until another one is recorded in their place
+  @Test
+  public void truncatesAfterRestore() throws IOException {
+    GenerationRecorder recorder = new GenerationRecorder(KEYFRAME_INTERVAL, 64L << 20, null);
+    Grid grid = soup(GridEngine.BITS, 2);
+    ArrayList<long[]> cells = run(recorder, grid, 30);
+    assertTrue(recorder.restore(12, grid));
+    assertEquals(12, grid.getGenerations());
+    assertArrayEquals(cells.get(12), GridSnapshot.copyCells(grid));
+    assertTrue(recorder.isRecorded(30));
+
+    grid.setAlive(0, 0, !grid.isAlive(0, 0));
+    grid.next();
+    recorder.record(grid);
+    assertEquals(13, recorder.getLastGeneration());
+    assertFalse(recorder.isRecorded(14));
+    assertArrayEquals(GridSnapshot.copyCells(grid), recorder.reconstruct(13));
+    for (int generation = 0; generation <= 12; generation++) {
+      assertArrayEquals("generation " + generation, cells.get(generation), recorder.reconstruct(generation));
+    }
+  }
+
+  // a budget of a few records, so that nearly every segment goes to the file
+  @Test
+  public void spillsOldSegments() throws IOException {
+    long budget = 4096;
+    GenerationRecorder recorder = new GenerationRecorder(KEYFRAME_INTERVAL, budget, spillFile);
+    Grid grid = soup(GridEngine.BITS, 3);
+    ArrayList<long[]> cells = run(recorder, grid, 20 * KEYFRAME_INTERVAL);
+    assertEquals(0, recorder.getFirstGeneration());
+    assertTrue(spillFile.length() > 0);
+    for (int generation = 0; generation < cells.size(); generation++) {
+      assertArrayEquals("generation " + generation, cells.get(generation), recorder.reconstruct(generation));
+    }
+
+    // going on from a spilled generation drops the segments after it, from memory and the file
+    long spilled = spillFile.length();
+    assertTrue(recorder.restore(KEYFRAME_INTERVAL + 2, grid));
+    grid.next();
+    recorder.record(grid);
+    assertEquals(KEYFRAME_INTERVAL + 3, recorder.getLastGeneration());
+    assertTrue(spillFile.length() < spilled);
+    assertTrue(recorder.getMemoryUsage() <= budget);
+    for (int generation = 0; generation < KEYFRAME_INTERVAL; generation++) {
+      assertArrayEquals("generation " + generation, cells.get(generation), recorder.reconstruct(generation));
+    }
+
+    recorder.clear();
+    assertEquals(0, recorder.getMemoryUsage());
+    assertEquals(0, spillFile.length());
+  }
+}
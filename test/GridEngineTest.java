@@ -0,0 +1,177 @@
+package gameoflife;
+import static org.junit.Assert.assertEquals;
+import java.util.SplittableRandom;
+import org.junit.Test;
+
+/**
+  Runs the same random soups on every engine and compares them cell by cell with GoLGrid, the
+  classic implementation the others were written against. The soups sit in the middle of a board
+  large enough that nothing reaches its edge within the generations compared, so the bounded and
+  the unbounded engines have to agree.
+*/
+public class GridEngineTest {
+  private static final int BOARD = 160;
+  private static final int SOUP = 48;
+  private static final int GENERATIONS = 50;
+
+  // a soup of the given density in the middle of a board of the engine
+  private static Grid soup(GridEngine engine, Rule rule, long seed, double density) {
+    Grid grid = engine.create(BOARD, BOARD);
+    grid.setRule(rule);
+    SplittableRandom random = new SplittableRandom(seed);
+    int offset = (BOARD - SOUP) / 2;
+    for (int i = 0; i < SOUP; i++) {
+      for (int j = 0; j < SOUP; j++) {
+        if(random.nextDouble() < density) grid.setAlive(offset + j, offset + i, true);
+      }
+    }
+    return grid;
+  }
+
+  private static void assertSameCells(String message, Grid expected, Grid actual) {
+    for (int i = 0; i < BOARD; i++) {
+      for (int j = 0; j < BOARD; j++) {
+        if(expected.isAlive(j, i) != actual.isAlive(j, i)) {
+          throw new AssertionError(message + ": cell (" + j + ", " + i + ") differs");
+        }
+      }
+    }
+    assertEquals(message + ": population", expected.getStatistics().getPopulation(), actual.getStatistics().getPopulation());
+  }
+
+  private static void compareStepByStep(GridEngine engine, Rule rule) {
+    for (long seed = 1; seed <= 4; seed++) {
+      Grid expected = soup(GridEngine.CLASSIC, rule, seed, 0.4);
+      Grid actual = soup(engine, rule, seed, 0.4);
+      for (int generation = 1; generation <= GENERATIONS; generation++) {
+        expected.next();
+        actual.next();
+        assertEquals(expected.getGenerations(), actual.getGenerations());
+        assertSameCells(engine + " " + rule + " seed " + seed + " generation " + generation, expected, actual);
+      }
+    }
+  }
+
+  @Test
+  public void bitGridMatchesClassic() {
+    compareStepByStep(GridEngine.BITS, Rule.CONWAY);
+  }
+
+  @Test
+  public void sparseGridMatchesClassic() {
+    compareStepByStep(GridEngine.SPARSE, Rule.CONWAY);
+  }
+
+  @Test
+  public void hashLifeGridMatchesClassic() {
+    compareStepByStep(GridEngine.HASHLIFE, Rule.CONWAY);
+  }
+
+  @Test
+  public void enginesMatchClassicUnderOtherRules() {
+    for (String rule : new String[] {"B36/S23", "B3678/S34678", "B2/S"}) {
+      for (GridEngine engine : new GridEngine[] {GridEngine.BITS, GridEngine.SPARSE, GridEngine.HASHLIFE}) {
+        compareStepByStep(engine, Rule.parse(rule));
+      }
+    }
+  }
+
+  // the whole board wraps around, so every cell of the edge and the halo is exercised
+  @Test
+  public void bitGridMatchesClassicOnATorus() {
+    for (long seed = 1; seed <= 4; seed++) {
+      Grid expected = new GoLGrid(100, 70);
+      Grid actual = new BitGrid(100, 70);
+      ((GoLGrid)expected).setTopology(Topology.TORUS);
+      ((BitGrid)actual).setTopology(Topology.TORUS);
+      SplittableRandom random = new SplittableRandom(seed);
+      for (int i = 0; i < 70; i++) {
+        for (int j = 0; j < 100; j++) {
+          if(random.nextBoolean()) {
+            expected.setAlive(j, i, true);
+            actual.setAlive(j, i, true);
+          }
+        }
+      }
+      for (int generation = 1; generation <= 100; generation++) {
+        expected.next();
+        actual.next();
+        for (int i = 0; i < 70; i++) {
+          for (int j = 0; j < 100; j++) {
+            assertEquals("seed " + seed + " generation " + generation + " cell (" + j + ", " + i + ")",
+              expected.isAlive(j, i), actual.isAlive(j, i));
+          }
+        }
+      }
+    }
+  }
+
+  // a board of 10 x 512 words, enough for BitGrid to cut it into bands, filled edge to edge
+  @Test
+  public void parallelBitGridMatchesSequential() {
+    for (Topology topology : Topology.values()) {
+      BitGrid expected = new BitGrid(640, 512);
+      BitGrid actual = new BitGrid(640, 512);
+      expected.setTopology(topology);
+      actual.setTopology(topology);
+      actual.setParallelism(4);
+      SplittableRandom random = new SplittableRandom(topology.ordinal());
+      for (int i = 0; i < 512; i++) {
+        for (int j = 0; j < 640; j++) {
+          if(random.nextInt(3) == 0) {
+            expected.setAlive(j, i, true);
+            actual.setAlive(j, i, true);
+          }
+        }
+      }
+      try {
+        for (int generation = 1; generation <= 60; generation++) {
+          expected.next();
+          actual.next();
+          String message = topology + " generation " + generation;
+          assertEquals(message + ": board hash", expected.getBoardHash(), actual.getBoardHash());
+          assertEquals(message + ": population",
+            expected.getStatistics().getPopulation(), actual.getStatistics().getPopulation());
+          if(generation % 20 != 0) continue;
+          for (int i = 0; i < 512; i++) {
+            for (int j = 0; j < 640; j++) {
+              if(expected.isAlive(j, i) != actual.isAlive(j, i)) {
+                throw new AssertionError(message + ": cell (" + j + ", " + i + ") differs");
+              }
+            }
+          }
+        }
+      } finally {
+        actual.setParallelism(1);
+      }
+    }
+  }
+
+  // jumps of many generations at once, also with a node table that has to be collected on the way
+  @Test
+  public void hashLifeJumpsMatchSingleSteps() {
+    for (int maxNodes : new int[] {HashLifeGrid.DEFAULT_MAX_NODES, 4096}) {
+      Grid expected = soup(GridEngine.SPARSE, Rule.CONWAY, 7, 0.5);
+      HashLifeGrid actual = new HashLifeGrid(BOARD, BOARD, maxNodes);
+      SplittableRandom random = new SplittableRandom(7);
+      int offset = (BOARD - SOUP) / 2;
+      for (int i = 0; i < SOUP; i++) {
+        for (int j = 0; j < SOUP; j++) {
+          if(random.nextDouble() < 0.5) actual.setAlive(offset + j, offset + i, true);
+        }
+      }
+      for (int i = 0; i < 1000; i++) expected.next();
+      actual.advance(1000);
+      assertEquals(1000, actual.getGenerations());
+      assertEquals("population with " + maxNodes + " nodes",
+        expected.getStatistics().getPopulation(), actual.getStatistics().getPopulation());
+      for (int i = -400; i < BOARD + 400; i++) {
+        for (int j = -400; j < BOARD + 400; j++) {
+          if(expected.isAlive(j, i) != actual.isAlive(j, i)) {
+            throw new AssertionError("cell (" + j + ", " + i + ") differs with " + maxNodes + " nodes");
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package gameoflife;
+import static org.junit.Assert.assertEquals;
+import java.util.SplittableRandom;
+import org.junit.Test;
+
+/**
+  The windows BitGrid copies word by word and counts from its tiles must hold the same cells and
+  counts as those GoLGrid builds cell by cell, wherever the viewport lies and at every level.
+*/
+public class GridSnapshotTest {
+
+  @Test
+  public void bitGridWindowsMatchClassic() {
+    GoLGrid expected = new GoLGrid(700, 300);
+    BitGrid actual = new BitGrid(700, 300);
+    SplittableRandom random = new SplittableRandom(3);
+    for (int i = 0; i < 300; i++) {
+      for (int j = 0; j < 700; j++) {
+        if(random.nextInt(4) == 0) {
+          expected.setAlive(j, i, true);
+          actual.setAlive(j, i, true);
+        }
+      }
+    }
+    for (int viewports = 0; viewports < 300; viewports++) {
+      double cellSize = Math.pow(2, -random.nextInt(9)) * (random.nextBoolean() ? 1 : 1.7);
+      Viewport viewport = new Viewport(random.nextInt(1600) - 800 + random.nextDouble(),
+        random.nextInt(800) - 400, cellSize, 50 + random.nextInt(600), 50 + random.nextInt(400));
+      GridSnapshot classic = GridSnapshot.of(expected, 1, viewport, null, 0, 0, -1);
+      GridSnapshot bits = GridSnapshot.of(actual, 1, viewport, null, 0, 0, -1);
+      for (int i = 0; i < classic.getRows(); i++) {
+        for (int j = 0; j < classic.getColumns(); j++) {
+          String message = viewport + " block (" + j + ", " + i + ")";
+          if(viewport.getLevel() == 0) {
+            long col = classic.getWindowColumn() + j, row = classic.getWindowRow() + i;
+            assertEquals(message, classic.isAlive(col, row), bits.isAlive(col, row));
+          } else {
+            assertEquals(message, classic.getCount(j, i), bits.getCount(j, i));
+          }
+        }
+      }
+    }
+  }
+}
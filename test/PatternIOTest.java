@@ -0,0 +1,152 @@
+package gameoflife;
+import static org.junit.Assert.assertEquals;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import org.junit.Test;
+
+/**
+  Writes boards in every format and reads them back. The writers crop the board to its living cells,
+  so the cells are compared relative to the corner of their bounding box.
+*/
+public class PatternIOTest {
+  // wider than an RLE line, with empty rows and columns inside the pattern
+  private static Grid board(long seed) {
+    Grid grid = new BitGrid(150, 90);
+    SplittableRandom random = new SplittableRandom(seed);
+    for (int i = 5; i < 85; i++) {
+      if(i % 17 == 0) continue;
+      for (int j = 3; j < 147; j++) {
+        if(j % 29 != 0 && random.nextInt(3) == 0) grid.setAlive(j, i, true);
+      }
+    }
+    return grid;
+  }
+
+  private static String write(Grid grid, PatternIO.Format format) throws IOException {
+    StringWriter out = new StringWriter();
+    PatternIO.write(out, format, grid);
+    return out.toString();
+  }
+
+  private static void assertRoundTrip(Grid grid, PatternIO.Format format) throws IOException {
+    String text = write(grid, format);
+    assertEquals(format, PatternIO.Format.detect(new StringReader(text)));
+    GridStatistics statistics = grid.getStatistics();
+    PatternIO.Bounds bounds = PatternIO.measure(new StringReader(text), format);
+    assertEquals(statistics.getPopulation(), bounds.getCells());
+    assertEquals(statistics.getMaxColumn() - statistics.getMinColumn() + 1, bounds.getWidth());
+    assertEquals(statistics.getMaxRow() - statistics.getMinRow() + 1, bounds.getHeight());
+
+    Grid copy = new BitGrid(grid.getColumns(), grid.getRows());
+    PatternIO.read(new StringReader(text), format, copy,
+      (int)statistics.getMinColumn() - bounds.getMinColumn(), (int)statistics.getMinRow() - bounds.getMinRow());
+    for (int i = 0; i < grid.getRows(); i++) {
+      for (int j = 0; j < grid.getColumns(); j++) {
+        assertEquals(format + " cell (" + j + ", " + i + ")", grid.isAlive(j, i), copy.isAlive(j, i));
+      }
+    }
+  }
+
+  @Test
+  public void rleRoundTrip() throws IOException {
+    for (long seed = 1; seed <= 3; seed++) assertRoundTrip(board(seed), PatternIO.Format.RLE);
+  }
+
+  @Test
+  public void life106RoundTrip() throws IOException {
+    for (long seed = 1; seed <= 3; seed++) assertRoundTrip(board(seed), PatternIO.Format.LIFE_106);
+  }
+
+  @Test
+  public void life105RoundTrip() throws IOException {
+    for (long seed = 1; seed <= 3; seed++) assertRoundTrip(board(seed), PatternIO.Format.LIFE_105);
+  }
+
+  @Test
+  public void life105KeepsTheRule() throws IOException {
+    Grid grid = board(4);
+    grid.setRule(Rule.parse("B36/S23"));
+    String text = write(grid, PatternIO.Format.LIFE_105);
+    assertEquals(grid.getRule(), PatternIO.measure(new StringReader(text), PatternIO.Format.LIFE_105).getRule());
+  }
+
+  // blocks placed by #P, which may lie left of and above the origin
+  @Test
+  public void readsLife105Blocks() throws IOException {
+    Grid grid = new SparseGrid(10, 10);
+    String text = "#Life 1.05\n#D Two gliders\n#R 23/3\n#P -1 -1\n.*\n..*\n***\n#P 5 4\n***\n*..\n.*.\n";
+    PatternIO.Bounds bounds = PatternIO.measure(new StringReader(text), PatternIO.Format.LIFE_105);
+    assertEquals(Rule.CONWAY, bounds.getRule());
+    assertEquals(10, bounds.getCells());
+    assertEquals(-1, bounds.getMinColumn());
+    assertEquals(-1, bounds.getMinRow());
+    assertEquals(9, bounds.getWidth());
+    assertEquals(8, bounds.getHeight());
+    PatternIO.read(new StringReader(text), PatternIO.Format.LIFE_105, grid, 1, 1);
+    assertEquals(10, grid.getStatistics().getPopulation());
+    assertEquals(true, grid.isAlive(1, 0));
+    assertEquals(true, grid.isAlive(0, 2));
+    assertEquals(true, grid.isAlive(6, 5));
+    assertEquals(true, grid.isAlive(7, 7));
+  }
+
+  // a .lif file is read as Life 1.05 or 1.06 depending on its header
+  @Test
+  public void loadsLifFilesOfBothVersions() throws IOException {
+    File file = File.createTempFile("pattern", ".lif");
+    try {
+      for (PatternIO.Format format : new PatternIO.Format[] {PatternIO.Format.LIFE_105, PatternIO.Format.LIFE_106}) {
+        Grid grid = board(6);
+        try(Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+          PatternIO.write(out, format, grid);
+        }
+        Grid copy = new BitGrid(grid.getColumns(), grid.getRows());
+        PatternIO.Bounds bounds = PatternIO.load(file, copy);
+        assertEquals(format + " cells", grid.getStatistics().getPopulation(), bounds.getCells());
+        assertEquals(format + " population", grid.getStatistics().getPopulation(), copy.getStatistics().getPopulation());
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void plaintextRoundTrip() throws IOException {
+    for (long seed = 1; seed <= 3; seed++) assertRoundTrip(board(seed), PatternIO.Format.PLAINTEXT);
+  }
+
+  @Test
+  public void rleKeepsTheRule() throws IOException {
+    Grid grid = board(4);
+    grid.setRule(Rule.parse("B36/S23"));
+    String text = write(grid, PatternIO.Format.RLE);
+    assertEquals(grid.getRule(), PatternIO.measure(new StringReader(text), PatternIO.Format.RLE).getRule());
+  }
+
+  // lines of an RLE body stay within the length the format asks for
+  @Test
+  public void rleLinesAreShort() throws IOException {
+    for (String line : write(board(5), PatternIO.Format.RLE).split("\n")) {
+      if(!line.startsWith("#") && !line.startsWith("x")) assertEquals(line, true, line.length() <= 70);
+    }
+  }
+
+  @Test
+  public void readsAGlider() throws IOException {
+    Grid grid = new SparseGrid(10, 10);
+    PatternIO.read(new StringReader("#N Glider\nx = 3, y = 3, rule = B3/S23\nbob$2bo$3o!\n"), PatternIO.Format.RLE, grid, 0, 0);
+    assertEquals(5, grid.getStatistics().getPopulation());
+    assertEquals(true, grid.isAlive(1, 0));
+    assertEquals(true, grid.isAlive(2, 1));
+    assertEquals(true, grid.isAlive(0, 2));
+    assertEquals(true, grid.isAlive(1, 2));
+    assertEquals(true, grid.isAlive(2, 2));
+  }
+}
@@ -0,0 +1,140 @@
+package gameoflife;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.util.HashSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+  Runs boards on a host with two threads and checks what comes out: the same cells as stepping them
+  by hand, every result once, and the simulations doing what pause, resume, cancel and the cycle
+  actions ask for, on every engine.
+*/
+public class SimulationHostTest {
+  private static final long TIMEOUT = 30;
+  private SimulationHost host;
+
+  @Before
+  public void startHost() {
+    host = new SimulationHost(2);
+  }
+
+  @After
+  public void stopHost() throws InterruptedException {
+    host.shutdown();
+    host.awaitTermination(TIMEOUT, TimeUnit.SECONDS);
+  }
+
+  private static Grid soup(GridEngine engine, long seed) {
+    Grid grid = engine.create(96, 96);
+    SplittableRandom random = new SplittableRandom(seed);
+    for (int i = 32; i < 64; i++) {
+      for (int j = 32; j < 64; j++) {
+        if(random.nextBoolean()) grid.setAlive(j, i, true);
+      }
+    }
+    return grid;
+  }
+
+  private static Grid blinker(GridEngine engine) {
+    Grid grid = engine.create(16, 16);
+    for (int j = 6; j <= 8; j++) grid.setAlive(j, 7, true);
+    return grid;
+  }
+
+  // a glider never settles, so it runs for as long as it is let
+  private static Grid glider(GridEngine engine) {
+    Grid grid = engine.create(64, 64);
+    int[][] cells = {{1, 0}, {2, 1}, {0, 2}, {1, 2}, {2, 2}};
+    for (int[] cell : cells) grid.setAlive(cell[0], cell[1], true);
+    return grid;
+  }
+
+  @Test
+  public void collectsEveryResult() throws Exception {
+    int boards = 12;
+    HashSet<Long> ids = new HashSet<Long>();
+    for (int seed = 0; seed < boards; seed++) {
+      ids.add(host.submit(soup(GridEngine.values()[seed % GridEngine.values().length], seed), 100).getId());
+    }
+    for (int i = 0; i < boards; i++) {
+      SimulationHost.Result result = host.takeResult(TIMEOUT, TimeUnit.SECONDS);
+      assertNotNull("result " + i, result);
+      assertEquals(SimulationHost.Status.COMPLETED, result.getStatus());
+      assertEquals(100, result.getGenerations());
+      assertTrue("result " + result.getId() + " taken twice", ids.remove(result.getId()));
+    }
+    assertNull(host.pollResult());
+    assertEquals(0, host.getActive());
+  }
+
+  @Test
+  public void computesTheSameCells() throws Exception {
+    Grid expected = soup(GridEngine.CLASSIC, 7);
+    for (int generation = 0; generation < 150; generation++) expected.next();
+    SimulationHost.Result result = host.submit(soup(GridEngine.BITS, 7), 150).getResult().get(TIMEOUT, TimeUnit.SECONDS);
+    assertArrayEquals(GridSnapshot.copyCells(expected), GridSnapshot.copyCells(result.getGrid()));
+  }
+
+  @Test
+  public void pausesResumesAndCancels() throws Exception {
+    SimulationHost.Simulation simulation = host.submit(glider(GridEngine.SPARSE), Long.MAX_VALUE / 2);
+    Thread.sleep(50);
+    simulation.pause();
+    assertTrue(simulation.isPaused());
+    // the slice that runs when pausing comes to an end, then nothing moves anymore
+    Thread.sleep(50);
+    long paused = simulation.getGenerations();
+    Thread.sleep(100);
+    assertEquals(paused, simulation.getGenerations());
+    assertFalse(simulation.isDone());
+    assertEquals(1, host.getActive());
+
+    simulation.resume();
+    Thread.sleep(50);
+    assertTrue(simulation.getGenerations() > paused);
+    simulation.cancel();
+    SimulationHost.Result result = simulation.getResult().get(TIMEOUT, TimeUnit.SECONDS);
+    assertEquals(SimulationHost.Status.CANCELLED, result.getStatus());
+    assertEquals(0, host.getActive());
+  }
+
+  @Test
+  public void cancelsAPausedSimulation() throws Exception {
+    SimulationHost.Simulation simulation = host.submit(glider(GridEngine.BITS), Long.MAX_VALUE / 2);
+    simulation.pause();
+    simulation.cancel();
+    assertEquals(SimulationHost.Status.CANCELLED, simulation.getResult().get(TIMEOUT, TimeUnit.SECONDS).getStatus());
+  }
+
+  // HashLife included, which jumps ahead unless the cycles are looked for
+  @Test
+  public void stopsSettledBoards() throws Exception {
+    for (GridEngine engine : GridEngine.values()) {
+      SimulationHost.Result result = host.submit(blinker(engine), Long.MAX_VALUE / 2, SimulationManager.CycleAction.STOP)
+        .getResult().get(TIMEOUT, TimeUnit.SECONDS);
+      assertEquals(engine + " status", SimulationHost.Status.SETTLED, result.getStatus());
+      assertEquals(engine + " period", 2, result.getPeriod());
+    }
+  }
+
+  @Test
+  public void fastForwardsSettledBoards() throws Exception {
+    long generations = 1000000000001L;
+    for (GridEngine engine : GridEngine.values()) {
+      SimulationHost.Result result = host.submit(blinker(engine), generations, SimulationManager.CycleAction.FAST_FORWARD)
+        .getResult().get(TIMEOUT, TimeUnit.SECONDS);
+      assertEquals(engine + " status", SimulationHost.Status.COMPLETED, result.getStatus());
+      assertEquals(engine + " generations", generations, result.getGenerations());
+      // an odd number of generations leaves the blinker standing upright
+      assertTrue(engine + " phase", result.getGrid().isAlive(7, 6) && !result.getGrid().isAlive(6, 7));
+    }
+  }
+}
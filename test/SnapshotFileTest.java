@@ -0,0 +1,117 @@
+package gameoflife;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.SplittableRandom;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+  Writes boards to snapshot files and reads them back into grids of another size and engine. The
+  BitGrid goes through its row copies, the other grids cell by cell, so both ways are crossed.
+*/
+public class SnapshotFileTest {
+  private File file;
+
+  @Before
+  public void createFile() throws IOException {
+    file = File.createTempFile("snapshot", SnapshotFile.EXTENSION);
+  }
+
+  @After
+  public void deleteFile() {
+    file.delete();
+  }
+
+  // a width that does not fill the last word of a row
+  private static Grid board(GridEngine engine, int col, int row, long seed) {
+    Grid grid = engine.create(col, row);
+    SplittableRandom random = new SplittableRandom(seed);
+    for (int i = 0; i < row; i++) {
+      for (int j = 0; j < col; j++) {
+        if(random.nextBoolean()) grid.setAlive(j, i, true);
+      }
+    }
+    grid.setRule(Rule.parse("B36/S23"));
+    grid.setGenerations(1234567890123L);
+    return grid;
+  }
+
+  private static void assertSameBoard(Grid expected, Grid actual) {
+    assertEquals(expected.getColumns(), actual.getColumns());
+    assertEquals(expected.getRows(), actual.getRows());
+    assertEquals(expected.getGenerations(), actual.getGenerations());
+    assertEquals(expected.getRule(), actual.getRule());
+    for (int i = 0; i < expected.getRows(); i++) {
+      for (int j = 0; j < expected.getColumns(); j++) {
+        assertEquals("cell (" + j + ", " + i + ")", expected.isAlive(j, i), actual.isAlive(j, i));
+      }
+    }
+  }
+
+  @Test
+  public void roundTripBetweenEngines() throws IOException {
+    GridEngine[] engines = {GridEngine.BITS, GridEngine.CLASSIC};
+    for (GridEngine from : engines) {
+      for (GridEngine to : engines) {
+        Grid grid = board(from, 200, 75, 1);
+        SnapshotFile.write(file, grid);
+        Grid copy = to.create(10, 10);
+        copy.setAlive(3, 3, true);
+        SnapshotFile.read(file, copy);
+        assertSameBoard(grid, copy);
+      }
+    }
+  }
+
+  @Test
+  public void headerDescribesTheBoard() throws IOException {
+    SnapshotFile.write(file, board(GridEngine.BITS, 130, 64, 2));
+    SnapshotFile.Header header = SnapshotFile.readHeader(file);
+    assertEquals(130, header.getColumns());
+    assertEquals(64, header.getRows());
+    assertEquals(1234567890123L, header.getGenerations());
+    assertEquals(Rule.parse("B36/S23"), header.getRule());
+    assertEquals(64 + 8L * 3 * 64, file.length());
+  }
+
+  // a larger board is written over a smaller one, and the file must not keep the old length
+  @Test
+  public void overwritesALargerFile() throws IOException {
+    SnapshotFile.write(file, board(GridEngine.BITS, 300, 300, 3));
+    Grid grid = board(GridEngine.BITS, 64, 64, 4);
+    SnapshotFile.write(file, grid);
+    Grid copy = new BitGrid(1, 1);
+    SnapshotFile.read(file, copy);
+    assertSameBoard(grid, copy);
+  }
+
+  @Test
+  public void rejectsOtherFiles() throws IOException {
+    try(RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+      out.setLength(0);
+      out.write(new byte[100]);
+    }
+    try {
+      SnapshotFile.read(file, new BitGrid(8, 8));
+      fail("read a file without the magic number");
+    } catch(IOException expected) {
+    }
+  }
+
+  @Test
+  public void rejectsTruncatedFiles() throws IOException {
+    SnapshotFile.write(file, board(GridEngine.BITS, 128, 128, 5));
+    try(RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+      out.setLength(file.length() - 8);
+    }
+    try {
+      SnapshotFile.readHeader(file);
+      fail("read a truncated file");
+    } catch(IOException expected) {
+    }
+  }
+}